@@ -0,0 +1,90 @@
+package com.example.ordermigratebatchmysql.bench;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批次迴圈：固定 batchSize（HttpLogEltServiceImpl）vs AIMD（AdaptiveHttpLogEltService），
+ * 各種搬法、熱點分佈、鎖衝突機率下，把一天的缺口搬完要多久。
+ * rows 輔助計數器換算成 rows/s；加 -prof gc 看每筆的配置量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchLoopBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Param({"fixed", "adaptive"})
+    public String engine;
+
+    @Param({"limit", "keyset", "pk-range"})
+    public String mode;
+
+    @Param({"0.0", "0.8"})
+    public double skew;
+
+    @Param({"0.0", "0.05"})
+    public double lockProbability;
+
+    @Param({"200000"})
+    public int rowsPerDay;
+
+    @Param({"5000"})
+    public int batchSize;
+
+    private SimulatedHttpLogTable table;
+    private BatchRunner runner;
+
+    @FunctionalInterface
+    interface BatchRunner {
+        WindowCopy run(String kind, LocalDateTime start, LocalDateTime end, String runId);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        table = new SimulatedHttpLogTable(ORIGIN, 1, rowsPerDay, skew,
+                SimulatedHttpLogTable.Latency.standard(), lockProbability, 42);
+
+        EltProperties props = BenchFixtures.props(batchSize);
+        props.setKeysetMode("keyset".equals(mode));
+        props.setPkRangeMode("pk-range".equals(mode));
+        props.setPkRangeChunkSize(batchSize);
+
+        runner = "adaptive".equals(engine)
+                ? BenchFixtures.adaptiveService(table, props)::runJobBatches
+                : BenchFixtures.fixedService(table, props)::runJobBatches;
+    }
+
+    @Benchmark
+    public int copyOneDay(Rows rows) {
+        int moved = runner.run(BenchFixtures.KIND, ORIGIN, ORIGIN.plusDays(1), "bench").moved();
+        rows.rows += moved;
+        return moved;
+    }
+}
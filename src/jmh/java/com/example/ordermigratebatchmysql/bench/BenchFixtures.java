@@ -0,0 +1,94 @@
+package com.example.ordermigratebatchmysql.bench;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.service.AdaptiveHttpLogEltService;
+import com.example.ordermigratebatchmysql.service.AimdBatchController;
+import com.example.ordermigratebatchmysql.service.BatchRetryTemplate;
+import com.example.ordermigratebatchmysql.service.BatchTransactions;
+import com.example.ordermigratebatchmysql.service.BitmapGapScanner;
+import com.example.ordermigratebatchmysql.service.HttpLogEltServiceImpl;
+import com.example.ordermigratebatchmysql.service.RunHistoryRecorder;
+import com.example.ordermigratebatchmysql.service.RunHistoryTuner;
+import com.example.ordermigratebatchmysql.stream.StreamingWindowCopier;
+import com.example.ordermigratebatchmysql.throttle.HealthSample;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * 不起 Spring，手動把 service 組起來：mapper 換成 SimulatedHttpLogTable，交易管理 no-op，節流關閉、不睡
+ */
+final class BenchFixtures {
+
+    static final String KIND = "order";
+
+    private BenchFixtures() {
+    }
+
+    static EltProperties props(int batchSize) {
+        EltProperties props = new EltProperties();
+        props.setBatchSize(batchSize);
+        props.setMaxBatchesPerRun(1_000_000);
+        props.setPauseMs(0);
+        props.setRetryBackoffBaseMs(1);
+        props.setRetryBackoffMaxMs(5);
+        props.setSlowBatchMs(Long.MAX_VALUE);
+        // 模擬延遲是毫秒等級，目標也跟著縮
+        props.getAimd().setTargetP95Ms(10);
+        props.getAimd().setMinBatchSize(200);
+        return props;
+    }
+
+    static MigrationJobRegistry registry(EltProperties props) {
+        MigrationJobRegistry jobs = new MigrationJobRegistry(props);
+        jobs.init();
+        return jobs;
+    }
+
+    static HttpLogEltServiceImpl fixedService(MigrationJobMapper mapper, EltProperties props) {
+        EltMetrics metrics = new EltMetrics(new SimpleMeterRegistry());
+        BatchRetryTemplate retry = new BatchRetryTemplate(props, metrics);
+        LoadAwareThrottle throttle = new LoadAwareThrottle(() -> HealthSample.UNKNOWN, props, new EltRunControl(metrics));
+        return new HttpLogEltServiceImpl(mapper, registry(props), props, new BatchTransactions(NOOP_TX, props),
+                throttle, retry, metrics, noStreaming(props, retry, metrics, throttle), new BitmapGapScanner(mapper, props),
+                new RunHistoryRecorder(null, props), new RunHistoryTuner(null, props));
+    }
+
+    static AdaptiveHttpLogEltService adaptiveService(MigrationJobMapper mapper, EltProperties props) {
+        EltMetrics metrics = new EltMetrics(new SimpleMeterRegistry());
+        AimdBatchController aimd = new AimdBatchController(props, null);
+        aimd.init();
+        BatchRetryTemplate retry = new BatchRetryTemplate(props, metrics);
+        LoadAwareThrottle throttle = new LoadAwareThrottle(() -> HealthSample.UNKNOWN, props, new EltRunControl(metrics));
+        return new AdaptiveHttpLogEltService(mapper, registry(props), props, new BatchTransactions(NOOP_TX, props), aimd,
+                throttle, retry, metrics, noStreaming(props, retry, metrics, throttle), new RunHistoryRecorder(null, props));
+    }
+
+    /** 沒呼叫 init() 的 copier 就是「串流模式關閉」 */
+    private static StreamingWindowCopier noStreaming(EltProperties props, BatchRetryTemplate retry, EltMetrics metrics,
+                                                     LoadAwareThrottle throttle) {
+        return new StreamingWindowCopier(null, props, retry, metrics, throttle);
+    }
+
+    static final PlatformTransactionManager NOOP_TX = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+}
@@ -0,0 +1,80 @@
+package com.example.ordermigratebatchmysql.bench;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.run.GapEstimator;
+import com.example.ordermigratebatchmysql.run.WindowDispatcher;
+import com.example.ordermigratebatchmysql.run.WindowPlanner;
+import com.example.ordermigratebatchmysql.service.GapHistogram;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 規劃開銷：一個月 day / half-day / hour 切窗（窗口本身不做事），
+ * 比較「預先載入直方圖」跟「每次回 DB COUNT」兩種 GapEstimator，以及分佈越偏切出來的窗口數。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlannerBenchmark {
+
+    private static final LocalDate MONTH = LocalDate.of(2024, 1, 1);
+
+    @Param({"true", "false"})
+    public boolean histogram;
+
+    @Param({"0.0", "0.5", "0.9"})
+    public double skew;
+
+    @Param({"31"})
+    public int days;
+
+    @Param({"60000"})
+    public int rowsPerDay;
+
+    private EltProperties props;
+    private SimulatedHttpLogTable table;
+    private GapHistogram preloaded;
+
+    @Setup
+    public void setUp() {
+        props = BenchFixtures.props(5000);
+        // 規劃本身的開銷才是重點：COUNT 不模擬延遲
+        table = new SimulatedHttpLogTable(MONTH.atStartOfDay(), days, rowsPerDay, skew,
+                new SimulatedHttpLogTable.Latency(0, 0, Integer.MAX_VALUE, 0, 0, 0, 0), 0, 7);
+        LocalDateTime start = MONTH.atStartOfDay();
+        LocalDateTime end = start.plusDays(days);
+        preloaded = GapHistogram.of(start, end, table.countMissingByHour(null, start, end));
+    }
+
+    @Benchmark
+    public int planMonth() {
+        GapEstimator gaps = new GapEstimator((kind, start, end) -> table.countMissingForRange(null, start, end));
+        if (histogram) {
+            gaps.preload(BenchFixtures.KIND, preloaded);
+        }
+        WindowDispatcher dispatcher = new WindowDispatcher("BENCH", "bench", null, false, 1, 1);
+        WindowPlanner planner = new WindowPlanner("BENCH", "bench", props, gaps, dispatcher,
+                (kind, start, end, runId) -> WindowCopy.done(0), true);
+        for (int d = 0; d < days; d++) {
+            planner.planDay(BenchFixtures.KIND, MONTH.plusDays(d));
+        }
+        return dispatcher.awaitAll().windowCount();
+    }
+}
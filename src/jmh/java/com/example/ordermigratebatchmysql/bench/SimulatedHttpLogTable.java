@@ -0,0 +1,318 @@
+package com.example.ordermigratebatchmysql.bench;
+
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.model.ChunkChecksum;
+import com.example.ordermigratebatchmysql.model.HourGapCount;
+import com.example.ordermigratebatchmysql.model.HttpLogKey;
+import com.example.ordermigratebatchmysql.model.KeyBounds;
+import com.example.ordermigratebatchmysql.model.RowChecksum;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 假的 MigrationJobMapper：在記憶體裡模擬一張「來源有、目標還沒有」的 http_log 表。
+ * - 每小時筆數依 skew 分佈（白天尖峰 + 隨機爆量小時）
+ * - Id 跟 SubmitTime 同順序遞增；每小時記「已搬的前綴」，LIMIT / keyset / PK 區間三種搬法都能算出 affected
+ * - 每次呼叫依 Latency 曲線真的 park 一段時間，並依 lockProbability 丟出 1213 死鎖
+ * 不是 thread-safe，benchmark 一律用循序派工。
+ */
+public class SimulatedHttpLogTable implements MigrationJobMapper {
+
+    private final LocalDateTime origin;
+    private final int[] rowsPerHour;
+    /** cumulative[h] = 第 h 小時第一筆的 Id；cumulative[hours] = 總筆數 */
+    private final long[] cumulative;
+    private final int[] copied;
+    private final Latency latency;
+    private final double lockProbability;
+
+    public SimulatedHttpLogTable(LocalDateTime origin, int days, int rowsPerDay, double skew,
+                                 Latency latency, double lockProbability, long seed) {
+        this.origin = origin;
+        this.rowsPerHour = skewedHours(days, rowsPerDay, skew, seed);
+        this.cumulative = new long[rowsPerHour.length + 1];
+        for (int h = 0; h < rowsPerHour.length; h++) {
+            cumulative[h + 1] = cumulative[h] + rowsPerHour[h];
+        }
+        this.copied = new int[rowsPerHour.length];
+        this.latency = latency;
+        this.lockProbability = lockProbability;
+    }
+
+    /**
+     * 每小時筆數：skew=0 平均分佈；skew 越大，下午尖峰越尖、爆量小時越多越大
+     */
+    static int[] skewedHours(int days, int rowsPerDay, double skew, long seed) {
+        Random rnd = new Random(seed);
+        int[] out = new int[days * 24];
+        for (int d = 0; d < days; d++) {
+            double[] w = new double[24];
+            double sum = 0;
+            for (int h = 0; h < 24; h++) {
+                double peak = Math.exp(-Math.pow(h - 14, 2) / (2 * 9.0));
+                w[h] = (1 - skew) + skew * peak * 4;
+                if (rnd.nextDouble() < 0.02 + 0.08 * skew) {
+                    w[h] *= 1 + 20 * skew;
+                }
+                sum += w[h];
+            }
+            for (int h = 0; h < 24; h++) {
+                out[d * 24 + h] = (int) Math.round(rowsPerDay * w[h] / sum);
+            }
+        }
+        return out;
+    }
+
+    // ==== MigrationJobMapper ====
+
+    @Override
+    public int insertMissingForRange(MigrationJob job, LocalDateTime start, LocalDateTime end, int batchSize) {
+        failIfDeadlocked();
+        int moved = 0;
+        for (int h = hourIndex(start); h < hourIndex(end) && moved < batchSize; h++) {
+            int take = Math.min(batchSize - moved, rowsPerHour[h] - copied[h]);
+            copied[h] += take;
+            moved += take;
+        }
+        // LIMIT 模式每批都要 anti-join 掃過前面已搬的部分，窗口越大越慢
+        simulateWrite(moved, hourIndex(end) - hourIndex(start));
+        return moved;
+    }
+
+    @Override
+    public int countMissingForRange(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        int missing = 0;
+        for (int h = hourIndex(start); h < hourIndex(end); h++) {
+            missing += rowsPerHour[h] - copied[h];
+        }
+        park(latency.countMillis(hourIndex(end) - hourIndex(start)));
+        return missing;
+    }
+
+    @Override
+    public List<HourGapCount> countMissingByHour(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        List<HourGapCount> out = new ArrayList<>();
+        int from = hourIndex(start);
+        for (int h = from; h < hourIndex(end); h++) {
+            int missing = rowsPerHour[h] - copied[h];
+            if (missing > 0) {
+                HourGapCount c = new HourGapCount();
+                c.setHourOffset(h - from);
+                c.setMissing(missing);
+                out.add(c);
+            }
+        }
+        park(latency.countMillis(hourIndex(end) - from));
+        return out;
+    }
+
+    @Override
+    public HttpLogKey selectBatchUpperKey(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                         LocalDateTime afterTime, Long afterId, int offset) {
+        long next = afterId == null ? cumulative[hourIndex(start)] : afterId + 1;
+        long upper = next + offset;
+        park(latency.lookupMillis());
+        if (upper >= cumulative[hourIndex(end)]) {
+            return null;
+        }
+        return new HttpLogKey(timeOf(upper), upper);
+    }
+
+    @Override
+    public int insertMissingForKeyRange(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                        LocalDateTime afterTime, Long afterId, LocalDateTime upperTime, Long upperId) {
+        failIfDeadlocked();
+        long from = afterId == null ? cumulative[hourIndex(start)] : afterId + 1;
+        long to = upperId == null ? cumulative[hourIndex(end)] - 1 : upperId;
+        int moved = copyIds(from, to);
+        simulateWrite(moved, 0);
+        return moved;
+    }
+
+    @Override
+    public KeyBounds selectKeyBounds(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        KeyBounds b = new KeyBounds();
+        long min = cumulative[hourIndex(start)];
+        long max = cumulative[hourIndex(end)] - 1;
+        if (max >= min) {
+            b.setMinId(min);
+            b.setMaxId(max);
+        }
+        park(latency.lookupMillis());
+        return b;
+    }
+
+    @Override
+    public int copyKeyRange(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                            long fromId, long toId, boolean upsert) {
+        failIfDeadlocked();
+        int moved = copyIds(fromId, toId);
+        simulateWrite(moved, 0);
+        return moved;
+    }
+
+    @Override
+    public int countSourceForRange(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        park(latency.countMillis(hourIndex(end) - hourIndex(start)));
+        return (int) (cumulative[hourIndex(end)] - cumulative[hourIndex(start)]);
+    }
+
+    @Override
+    public List<HourGapCount> countSourceByHour(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        List<HourGapCount> out = new ArrayList<>();
+        int from = hourIndex(start);
+        for (int h = from; h < hourIndex(end); h++) {
+            HourGapCount c = new HourGapCount();
+            c.setHourOffset(h - from);
+            c.setMissing(rowsPerHour[h]);
+            out.add(c);
+        }
+        park(latency.countMillis(hourIndex(end) - from));
+        return out;
+    }
+
+    /** benchmark 不測 bitmap 模式（只有 fixed engine 支援，跟 adaptive 的對照沒有意義） */
+    @Override
+    public void scanTargetIds(MigrationJob job, long fromId, long toId, ResultHandler<Long> handler) {
+    }
+
+    @Override
+    public void scanSourceKeys(MigrationJob job, LocalDateTime start, LocalDateTime end, ResultHandler<HttpLogKey> handler) {
+    }
+
+    @Override
+    public int copyKeys(MigrationJob job, LocalDateTime start, LocalDateTime end, long[] ids) {
+        return 0;
+    }
+
+    /** benchmark 不測常駐同步 */
+    @Override
+    public HttpLogKey selectTargetMaxKey(MigrationJob job, LocalDateTime since) {
+        return null;
+    }
+
+    /** benchmark 不測 purge */
+    @Override
+    public int countPurgeable(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        return 0;
+    }
+
+    @Override
+    public int purgeCopiedKeyRange(MigrationJob job, LocalDateTime start, LocalDateTime end, long fromId, long toId) {
+        return 0;
+    }
+
+    /** benchmark 不測 checksum 比對 */
+    @Override
+    public KeyBounds selectTargetKeyBounds(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        return new KeyBounds();
+    }
+
+    @Override
+    public ChunkChecksum checksumKeyRange(MigrationJob job, boolean target, LocalDateTime start, LocalDateTime end,
+                                          long fromId, long toId) {
+        return new ChunkChecksum();
+    }
+
+    @Override
+    public List<RowChecksum> selectRowChecksums(MigrationJob job, boolean target, LocalDateTime start, LocalDateTime end,
+                                                long fromId, long toId) {
+        return List.of();
+    }
+
+    // ==== 模擬 ====
+
+    /** 把 [from, to] 這段 Id 標成已搬；回傳這次新搬的筆數 */
+    private int copyIds(long from, long to) {
+        int moved = 0;
+        for (int h = hourOf(from); h < rowsPerHour.length && cumulative[h] <= to; h++) {
+            long doneUpTo = cumulative[h] + copied[h];
+            long newUpTo = Math.min(to + 1, cumulative[h + 1]);
+            if (from <= doneUpTo && newUpTo > doneUpTo) {
+                moved += (int) (newUpTo - doneUpTo);
+                copied[h] = (int) (newUpTo - cumulative[h]);
+            }
+        }
+        return moved;
+    }
+
+    /** 死鎖要在「寫入」之前判定：交易被 rollback，這批一筆都不算搬到 */
+    private void failIfDeadlocked() {
+        if (lockProbability > 0 && ThreadLocalRandom.current().nextDouble() < lockProbability) {
+            park(latency.baseMs());
+            throw new CannotAcquireLockException("simulated deadlock",
+                    new SQLException("Deadlock found when trying to get lock", "40001", 1213));
+        }
+    }
+
+    private void simulateWrite(int rows, int hoursScanned) {
+        park(latency.batchMillis(rows, hoursScanned));
+    }
+
+    private int hourIndex(LocalDateTime t) {
+        long h = Duration.between(origin, t).toHours();
+        return (int) Math.max(0, Math.min(rowsPerHour.length, h));
+    }
+
+    private int hourOf(long id) {
+        int idx = Arrays.binarySearch(cumulative, id);
+        int h = idx >= 0 ? idx : -idx - 2;
+        return Math.max(0, Math.min(rowsPerHour.length - 1, h));
+    }
+
+    private LocalDateTime timeOf(long id) {
+        int h = hourOf(id);
+        long offset = id - cumulative[h];
+        long secs = rowsPerHour[h] == 0 ? 0 : offset * 3600 / rowsPerHour[h];
+        return origin.plusHours(h).plusSeconds(secs);
+    }
+
+    private static void park(double millis) {
+        if (millis > 0) {
+            LockSupport.parkNanos((long) (millis * 1_000_000));
+        }
+    }
+
+    /**
+     * 延遲曲線：batch = base + 每千筆 perThousand，超過 knee 之後每千筆再加平方懲罰（模擬 buffer pool / redo 壓力）；
+     * LIMIT 模式每多掃一小時再加 perHourScanned。count = countBase + 每小時 countPerHour。
+     */
+    public record Latency(double baseMs,
+                          double perThousandMs,
+                          int kneeRows,
+                          double penaltyMs,
+                          double perHourScannedMs,
+                          double countBaseMs,
+                          double countPerHourMs) {
+
+        /** 預設：5000 筆左右最划算，再大就開始變貴 */
+        public static Latency standard() {
+            return new Latency(1.0, 0.6, 6000, 0.15, 0.05, 2.0, 0.02);
+        }
+
+        double batchMillis(int rows, int hoursScanned) {
+            double k = rows / 1000.0;
+            double over = Math.max(0, rows - kneeRows) / 1000.0;
+            return baseMs + k * perThousandMs + over * over * penaltyMs + hoursScanned * perHourScannedMs;
+        }
+
+        double countMillis(int hours) {
+            return countBaseMs + hours * countPerHourMs;
+        }
+
+        double lookupMillis() {
+            return baseMs / 2;
+        }
+    }
+}
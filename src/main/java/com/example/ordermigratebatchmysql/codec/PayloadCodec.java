@@ -0,0 +1,182 @@
+package com.example.ordermigratebatchmysql.codec;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 月表 HTTP 內容欄位的壓縮格式：第 1 個 byte 是格式標記，後面接內容。
+ * <pre>
+ * 0x00 NONE        原文（太短不值得壓、或壓完沒比較小）
+ * 0x01 LZ4         4 bytes 原長度（big-endian）+ LZ4 block
+ * 0x02 ZSTD        zstd frame（frame 內含原長度）
+ * 0x03 MYSQL_ZLIB  MySQL COMPRESS() 的輸出：4 bytes 原長度（little-endian）+ zlib
+ *                  （INSERT ... SELECT 路徑在 server 端壓；開 elt.verify 時 JVM 路徑也改用它，checksum 才能在 SQL 裡 UNCOMPRESS）
+ * </pre>
+ * 讀月表的程式用 decode / decodeToString 還原；NULL 進 NULL 出。
+ */
+public final class PayloadCodec {
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    public enum Format {
+        NONE(0x00), LZ4(0x01), ZSTD(0x02), MYSQL_ZLIB(0x03);
+
+        private final byte marker;
+
+        Format(int marker) {
+            this.marker = (byte) marker;
+        }
+
+        public byte marker() {
+            return marker;
+        }
+
+        public static Format of(byte marker) {
+            for (Format f : values()) {
+                if (f.marker == marker) {
+                    return f;
+                }
+            }
+            throw new IllegalArgumentException("unknown payload format marker: " + marker);
+        }
+
+        /** elt.jobs[].compression 的設定值：none / lz4 / zstd */
+        public static Format fromConfig(String name) {
+            if (name == null || name.isBlank() || name.equalsIgnoreCase("none")) {
+                return NONE;
+            }
+            return switch (name.toLowerCase()) {
+                case "lz4" -> LZ4;
+                case "zstd" -> ZSTD;
+                default -> throw new IllegalArgumentException("unsupported compression: " + name + " (none / lz4 / zstd)");
+            };
+        }
+    }
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * 壓縮：raw 短於 minBytes、或壓完沒有變小，就存 NONE（只多 1 byte 標記）
+     */
+    public static byte[] encode(Format format, byte[] raw, int minBytes) {
+        if (raw == null) {
+            return null;
+        }
+        byte[] body = null;
+        if (raw.length >= minBytes) {
+            body = switch (format) {
+                case LZ4 -> lz4(raw);
+                case ZSTD -> Zstd.compress(raw, 3);
+                case MYSQL_ZLIB -> mysqlCompress(raw);
+                case NONE -> null;
+            };
+        }
+        if (body == null || body.length >= raw.length) {
+            return withMarker(Format.NONE, raw);
+        }
+        return withMarker(format, body);
+    }
+
+    /**
+     * 還原；沒有標記的舊資料（壓縮功能開啟前搬的）呼叫端要自己判斷，這裡一律當有標記
+     */
+    public static byte[] decode(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        if (stored.length == 0) {
+            return stored;
+        }
+        byte[] body = Arrays.copyOfRange(stored, 1, stored.length);
+        return switch (Format.of(stored[0])) {
+            case NONE -> body;
+            case LZ4 -> unlz4(body);
+            case ZSTD -> Zstd.decompress(body, (int) Zstd.getFrameContentSize(body));
+            case MYSQL_ZLIB -> unMysqlCompress(body);
+        };
+    }
+
+    public static String decodeToString(byte[] stored) {
+        byte[] raw = decode(stored);
+        return raw == null ? null : new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] lz4(byte[] raw) {
+        byte[] block = LZ4.fastCompressor().compress(raw);
+        return ByteBuffer.allocate(4 + block.length).putInt(raw.length).put(block).array();
+    }
+
+    private static byte[] unlz4(byte[] body) {
+        ByteBuffer buf = ByteBuffer.wrap(body);
+        int length = buf.getInt();
+        return LZ4.fastDecompressor().decompress(body, 4, length);
+    }
+
+    /**
+     * 跟 MySQL COMPRESS() 同格式：空字串 => 空；否則 4 bytes little-endian 原長度 + zlib。
+     * 不補 COMPRESS() 在結尾是空白時加的 '.'（那是給 CHAR / VARCHAR 欄位防截尾用的，月表是 BLOB），UNCOMPRESS 一樣解得開
+     */
+    static byte[] mysqlCompress(byte[] raw) {
+        if (raw.length == 0) {
+            return raw;
+        }
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(raw.length & 0x3FFFFFFF).array());
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** MySQL COMPRESS()：空字串 => 空；否則 4 bytes little-endian 原長度 + zlib */
+    static byte[] unMysqlCompress(byte[] body) {
+        if (body.length == 0) {
+            return body;
+        }
+        int length = ByteBuffer.wrap(body, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0x3FFFFFFF;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body, 4, body.length - 4);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("corrupt MySQL COMPRESS() payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withMarker(Format format, byte[] body) {
+        byte[] out = new byte[body.length + 1];
+        out[0] = format.marker();
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+}
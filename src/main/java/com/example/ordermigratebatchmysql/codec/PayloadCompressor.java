@@ -0,0 +1,76 @@
+package com.example.ordermigratebatchmysql.codec;
+
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JVM 端搬移路徑（串流 / LOAD DATA）的壓縮轉換：一列一列把設定的欄位壓掉，
+ * 只留壓縮後的 bytes，不會整批握著原文；順便累計原始 / 實際寫入的 bytes，每批結束時讀出來再 reset。
+ * 一條讀端執行緒一個 instance（不是 thread-safe）。
+ * 要做 checksum 比對（elt.verify.enabled）時，lz4 / zstd 一律改寫 MYSQL_ZLIB：目標側的 checksum 在 SQL 裡只解得開 COMPRESS() 格式。
+ */
+public class PayloadCompressor {
+
+    private final PayloadCodec.Format format;
+    private final int minBytes;
+    /** 依 job.columns 順序：這一欄要不要壓 */
+    private final boolean[] compressed;
+
+    private long rawBytes;
+    private long storedBytes;
+
+    /**
+     * @param sqlDecodable 寫出的內容要能在 SQL 裡 UNCOMPRESS（checksum 比對要用）
+     */
+    public PayloadCompressor(MigrationJob job, boolean sqlDecodable) {
+        PayloadCodec.Format configured = PayloadCodec.Format.fromConfig(job.getCompression());
+        this.format = sqlDecodable && configured != PayloadCodec.Format.NONE ? PayloadCodec.Format.MYSQL_ZLIB : configured;
+        this.minBytes = job.getCompressMinBytes();
+        this.compressed = new boolean[job.getColumns().size()];
+        for (int i = 0; i < compressed.length; i++) {
+            compressed[i] = job.getCompressedColumns().contains(job.getColumns().get(i));
+        }
+    }
+
+    /** 這個 job 有沒有要壓的欄位 */
+    public boolean isActive() {
+        return format != PayloadCodec.Format.NONE;
+    }
+
+    public PayloadCodec.Format getFormat() {
+        return format;
+    }
+
+    public boolean isCompressed(int column) {
+        return isActive() && compressed[column];
+    }
+
+    /**
+     * 第 column 欄（0 起算）的值；不用壓的欄位原樣回傳，要壓的回傳 byte[]（NULL 照舊 NULL）
+     */
+    public Object apply(int column, Object value) {
+        if (!isCompressed(column) || value == null) {
+            return value;
+        }
+        byte[] raw = value instanceof byte[] b ? b : value.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] stored = PayloadCodec.encode(format, raw, minBytes);
+        rawBytes += raw.length;
+        storedBytes += stored.length;
+        return stored;
+    }
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /** 每批結束：讀完 raw / stored 之後歸零 */
+    public void reset() {
+        rawBytes = 0;
+        storedBytes = 0;
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.ordermigratebatchmysql.config;
 
 import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.sql.DataSource;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -25,4 +27,13 @@ public class EltConfig {
         // 你在 props 裡的 workerThreads 會決定池大小
         return Executors.newFixedThreadPool(props.getWorkerThreads(), tf);
     }
+
+    /**
+     * 取代 Boot 預設的 JdbcTransactionManager：名稱是 "elt:kind" 的 tx 會套上 job 的 session 變數，結束時還原
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(DataSource dataSource, EltProperties props, MigrationJobRegistry jobs) {
+        props.getSession().isolationLevel();
+        return new SessionProfileTransactionManager(dataSource, props, jobs);
+    }
 }
\ No newline at end of file
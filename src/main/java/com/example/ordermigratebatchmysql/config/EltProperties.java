@@ -4,11 +4,37 @@ package com.example.ordermigratebatchmysql.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "elt")
 public class EltProperties {
+
+    /** *_http_log 系列表共用的欄位 */
+    public static final List<String> HTTP_LOG_COLUMNS = List.of(
+            "Id", "OrderId", "Type", "AccountId",
+            "SubmitRequest", "SubmitResponse", "SubmitTime",
+            "QueryRequest", "QueryResponse", "QueryTime",
+            "CallbackRequest", "CallbackTime");
+
     private boolean enabled = true;
 
+    /**
+     * 要搬的表（來源表 → 月表），一張表一段；沒設定就用內建的 order / withdraw 兩組。
+     * 新增一張 *_http_log 只要在 elt.jobs 加一段，不用改程式。
+     */
+    private List<MigrationJob> jobs = new ArrayList<>(List.of(
+            MigrationJob.of("order",
+                    "g_paypay.t_order_http_log",
+                    "g_paypay.t_order_http_log_month",
+                    HTTP_LOG_COLUMNS),
+            MigrationJob.of("withdraw",
+                    "g_paypay.t_withdraw_order_http_log",
+                    "g_paypay.t_withdraw_order_http_log_month",
+                    HTTP_LOG_COLUMNS)
+    ));
+
     /** 每批筆數：先用 1000~3000，若鎖競爭多，先降到 500~1000 試 */
     private int batchSize = 5000;
 
@@ -24,9 +50,12 @@ public class EltProperties {
     /** 死鎖/鎖等待重試上限 */
     private int maxRetry = 5;
 
-    /** 重試退避基準(ms)；實際 backoff = base * attempt（線性，可自行換指數） */
+    /** 重試退避基準(ms)；實際 backoff = base * 2^(attempt-1)，再加 jitter */
     private long retryBackoffBaseMs = 200;
 
+    /** 單次重試退避上限(ms) */
+    private long retryBackoffMaxMs = 10_000;
+
     /** 是否嘗試 SELECT ... FOR UPDATE SKIP LOCKED（MySQL 8.0+ 才有；此情境多為 INSERT…SELECT，不一定適用） */
     private boolean useSkipLocked = false;
 
@@ -54,10 +83,405 @@ public class EltProperties {
      */
     private int maxBatchesBeforeSplit = 3;
 
+    /**
+     * 🚦遞迴二分切窗：不再只有「整天 / 半天 / 每小時」三級，任何窗口預估缺口超過
+     * maxBatchesBeforeSplit × batchSize（adaptive 用 hourSwitchThreshold）就對半切，最細到 bisectMinMinutes；
+     * 切完再把相鄰的安靜窗口合併回去，送出一串大小平均的窗口。
+     */
+    private boolean bisectEnabled = false;
+
+    /** 遞迴二分的最小窗口（分鐘）；一小時以上的切點對齊整點，一小時以內對齊這個格線 */
+    private int bisectMinMinutes = 5;
+
+    /**
+     * 🚦keyset 模式：批與批之間帶著 (SubmitTime, Id) 高水位往前推，每批只讀上一批之後的資料，
+     * 不再每批從窗頭重掃 + 重做 NOT EXISTS；停止條件改成「游標走到窗尾」。
+     */
+    private boolean keysetMode = false;
+
+    /**
+     * 🚦PK 區間模式：每個窗口先查 MIN/MAX(Id)，切成固定長度的 Id 區間，
+     * 每段用 INSERT IGNORE ... WHERE Id BETWEEN ? AND ? 搬；不做 anti-join、不排序，批次成本平均。
+     * 開啟時優先於 keysetMode。
+     */
+    private boolean pkRangeMode = false;
+
+    /** PK 區間模式每段的 Id 跨度（固定模式用；adaptive 模式由 batchSize 自動調） */
+    private int pkRangeChunkSize = 5000;
+
+    /**
+     * 🚦bitmap 模式：每個窗口把目標表在來源 Id 範圍內的 Id 串流讀進記憶體 bitmap（IdBitmap），
+     * 再串流來源 (Id, SubmitTime) 在記憶體裡算出缺口，只搬缺的 Id；不做逐列 NOT EXISTS。
+     * 缺口 COUNT / 直方圖也用同一趟掃描算。開啟時優先於 pkRangeMode / keysetMode。
+     */
+    private boolean bitmapMode = false;
+
+    /** bitmap 模式：窗口 Id 跨度上限（記憶體約 跨度 / 8 bytes × 2 個 bitmap），超過就退回 PK 區間模式 */
+    private long bitmapMaxIdSpan = 200_000_000L;
+
+    /** PK 區間模式遇到目標已存在的列：false = INSERT IGNORE 跳過；true = ON DUPLICATE KEY UPDATE 用來源值覆蓋（affected 會把覆蓋的列算 2 次） */
+    private boolean pkRangeUpsert = false;
+
+    /**
+     * 🚦並行模式：Runner 規劃出來的 day / half-day / hour 窗口丟進 eltExecutor（池大小 = workerThreads）一起跑。
+     * 實際同時跑的窗口數還會被 Hikari maximum-pool-size - 1 壓住（留一條給規劃用的 count）。
+     */
+    private boolean parallelEnabled = false;
+
+    /** 並行模式下，同一張表（kind）同時最多跑幾個窗口；同表窗口太多會互搶鎖 */
+    private int maxConcurrentWindowsPerKind = 2;
+
+    /**
+     * 並行模式下，同時規劃幾個月 shard（--from / --to 跨好幾個月的回補）；每條規劃執行緒各佔 1 條連線做 count，
+     * 窗口本身仍共用同一份連線預算。非並行模式一律一個月一個月依序規劃
+     */
+    private int monthShardParallelism = 2;
+
+    /**
+     * 🚦缺口直方圖：PRECHECK 用一次 GROUP BY 查出整窗每小時缺口，之後 day / half / hour 的切分都查記憶體，
+     * 不再每一層都打一次 COUNT ... NOT EXISTS。關掉就回到逐窗 COUNT。
+     */
+    private boolean gapHistogramEnabled = true;
+
+    /**
+     * 🚦checkpoint：每個窗口搬完記到 elt_checkpoint（kind + 窗口 + 筆數 + runId），
+     * 下次 run 直接跳過已完成的窗口；中途被 kill 也會從最後完成的窗口接著跑。
+     */
+    private boolean checkpointEnabled = false;
+
+    /**
+     * 窗口結束後要再經過多久才算「沉澱」（晚 commit 的資料都進來了）；
+     * 只有在沉澱之後才搬完的窗口，下次 run 才會跳過。
+     */
+    private long checkpointSettleMinutes = 60;
+
+    /** 啟動時自動建 elt_checkpoint 表（DDL 見 resources/sql/elt_tables.sql） */
+    private boolean checkpointAutoCreateTable = true;
+
+    /** adaptive 模式的 AIMD 控制器設定（elt.aimd.*） */
+    private Aimd aimd = new Aimd();
+
+    /** 依 DB 負載節流的設定（elt.throttle.*） */
+    private Throttle throttle = new Throttle();
+
+    /** 跨 instance 串流搬移的設定（elt.stream.*） */
+    private Stream stream = new Stream();
+
+    /** 大窗口改走 LOAD DATA LOCAL INFILE 的設定（elt.bulk-load.*） */
+    private BulkLoad bulkLoad = new BulkLoad();
+
+    /** 批次 tx 的 session 設定（隔離級別 / timeout / session 變數），elt.jobs[].session 可逐欄覆蓋 */
+    private SessionProfile session = new SessionProfile();
+
+    /** 常駐增量同步（elt-sync profile，elt.sync.*） */
+    private Sync sync = new Sync();
+
+    /** job 實際生效的 session 設定：elt.session 為底，elt.jobs[].session 非 null 的欄位覆蓋 */
+    public SessionProfile sessionFor(MigrationJob job) {
+        return session.overlay(job.getSession());
+    }
+
+    /** 目標月表的分區維護（elt.partition.*） */
+    private Partition partition = new Partition();
+
+    /** 搬完之後的 checksum 比對（elt.verify.*） */
+    private Verify verify = new Verify();
+
+    /** 搬完之後刪來源舊資料的設定（elt.purge.*） */
+    private Purge purge = new Purge();
+
+    /** 每批落 elt_run_history，啟動時依歷史學切窗門檻 / 起始 batchSize（elt.history.*） */
+    private History history = new History();
+
+    /** 開跑前 / 定期 EXPLAIN 批次 SQL，計畫不對時警告、拒跑、改 PK 區間或加索引提示（elt.plan-guard.*） */
+    private PlanGuard planGuard = new PlanGuard();
+
 //    /** 一天缺口超過這個值，就不要用「整天」一次搬，改成先切成半天 */
 //    private int halfDaySwitchThreshold = 30000;
 //
 //    /** 半天缺口超過這個值，就不要用「半天」，改成再切成每小時 */
 //    private int hourSwitchThreshold = 20000;
 
+    /**
+     * AIMD 控制器：批次順就「加一點」、超過延遲目標就「砍一半」；
+     * 學到的 batchSize 依 kind + 時段記住（可落表跨 run 沿用），同時也調整並行窗口數。
+     */
+    @Data
+    public static class Aimd {
+
+        /** batchSize 下限 / 上限（上限可以超過 elt.batch-size，起點才用 batch-size） */
+        private int minBatchSize = 500;
+        private int maxBatchSize = 20_000;
+
+        /** 加法增量：每次順利就 +這麼多 */
+        private int additiveStep = 500;
+
+        /** 乘法減量：超標就 × 這個係數 */
+        private double decreaseFactor = 0.5;
+
+        /** p95 批次延遲目標（毫秒）；最近的 p95 超過它就減量 */
+        private long targetP95Ms = 1500;
+
+        /** 算 p95 用的最近批次數 */
+        private int latencyWindow = 20;
+
+        /** rows/s 的 EWMA 平滑係數（0~1，越大越跟最新一批） */
+        private double ewmaAlpha = 0.3;
+
+        /** 並行窗口數範圍；連續 healthyBatchesToGrowParallelism 批都健康才 +1，最小 batchSize 還超標就減半 */
+        private int minParallelism = 1;
+        private int maxParallelism = 4;
+        private int healthyBatchesToGrowParallelism = 20;
+
+        /** 學到的 batchSize 落表（elt_batch_tuning），下次 run 直接從上次的值開始 */
+        private boolean persist = false;
+    }
+
+    /**
+     * DB 負載節流：每批之後看 Threads_running / history list / 鎖等待 / replica 落後，
+     * 閒就全速、忙就拉長間隙縮批次、過臨界就整個退避。門檻 <= 0 代表不看該指標。
+     */
+    @Data
+    public static class Throttle {
+
+        /** 關掉就回到固定 pauseMs */
+        private boolean enabled = false;
+
+        /** 取樣間隔（毫秒）；並行窗口共用同一份取樣 */
+        private long sampleIntervalMs = 1000;
+
+        private long threadsRunningHigh = 32;
+        private long threadsRunningCritical = 64;
+
+        private long historyListHigh = 200_000;
+        private long historyListCritical = 1_000_000;
+
+        private long rowLockWaitsHigh = 5;
+        private long rowLockWaitsCritical = 20;
+
+        private long replicaLagHighSeconds = 5;
+        private long replicaLagCriticalSeconds = 30;
+
+        /** BUSY / BACKOFF 後下一批 batchSize 的倍率 */
+        private double busyBatchScale = 0.5;
+
+        /** BACKOFF 每次睡多久、最多等多久（等滿就以 BUSY 速度繼續） */
+        private long backoffMs = 2000;
+        private long maxBackoffMs = 60_000;
+
+        /** 要看 replica 落後才填；用獨立連線，不佔主庫連線池 */
+        private String replicaUrl;
+        private String replicaUsername;
+        private String replicaPassword;
+    }
+
+    /**
+     * 串流模式：目標表在另一台 MySQL 時，不能 INSERT ... SELECT，
+     * 改成來源逐筆串流讀 → 有界佇列 → 多條 writer 批次寫入目標。
+     */
+    @Data
+    public static class Stream {
+
+        /** 開了以後所有窗口都走串流（不再用 INSERT ... SELECT） */
+        private boolean enabled = false;
+
+        /** 目標 instance；會自動補上 rewriteBatchedStatements=true */
+        private String targetUrl;
+        private String targetUsername;
+        private String targetPassword;
+
+        /** 目標連線池大小（至少 writerThreads） */
+        private int targetPoolSize = 4;
+
+        /**
+         * 來源 fetchSize：Integer.MIN_VALUE = Connector/J 逐筆串流；
+         * 來源 URL 有 useCursorFetch=true 時改成正數（server 端 cursor 每次抓這麼多筆）
+         */
+        private int fetchSize = Integer.MIN_VALUE;
+
+        /** 串流中讀端可能被 backpressure 卡住，拉長 net_write_timeout 免得被 server 斷線 */
+        private int sourceNetWriteTimeoutSeconds = 600;
+
+        /** 一個 chunk（一次 executeBatch、一個 tx）幾筆 */
+        private int chunkRows = 1000;
+
+        /** 佇列最多幾個 chunk；記憶體上限約 chunkRows * (queueCapacity + writerThreads + 1) 筆 */
+        private int queueCapacity = 8;
+
+        /** 每個窗口幾條 writer */
+        private int writerThreads = 2;
+
+        /** true = ON DUPLICATE KEY UPDATE 覆蓋；false = INSERT IGNORE */
+        private boolean upsert = false;
+    }
+
+    /**
+     * LOAD DATA LOCAL INFILE：預估缺口 >= thresholdRows 的窗口改用 bulk loader 搬（同一台 instance 才用得到）。
+     * server 要 local_infile=ON；連線會自動加 allowLoadLocalInfile=true。
+     */
+    @Data
+    public static class BulkLoad {
+
+        private boolean enabled = false;
+
+        /** 窗口預估缺口達到這個量才走 LOAD DATA；小窗口照舊 INSERT ... SELECT */
+        private int thresholdRows = 50_000;
+
+        /** 一個 LOAD（一個 tx）最多幾列，大窗口會拆成多個 LOAD */
+        private int rowsPerLoad = 50_000;
+    }
+
+    /**
+     * purge：搬移跑完（沒有失敗窗口）之後，把來源表超過保留天數、而且確認已在目標的列分批刪掉，
+     * 讓熱表維持小而快。預設 dry-run，只報告會刪多少。
+     */
+    @Data
+    public static class Purge {
+
+        private boolean enabled = false;
+
+        /** true = 只 COUNT、不刪 */
+        private boolean dryRun = true;
+
+        /** 來源表保留最近幾天（以今天 00:00 往回算） */
+        private int retentionDays = 45;
+
+        /** 一批刪的主鍵跨度（一批一個短 tx），DB 忙時會被節流打折 */
+        private int chunkSize = 2000;
+    }
+
+    /**
+     * checksum 比對：搬移跑完之後，把整窗切成主鍵區間，兩邊各算「筆數 + BIT_XOR(CRC32(整列))」；
+     * 不一致的區間才往下二分，到 rowLevelSpan 以下逐列比，可選擇把不一致的列用 upsert 重搬。
+     * 有沒修好的差異時不做 purge。
+     */
+    @Data
+    public static class Verify {
+
+        private boolean enabled = false;
+
+        /** 第一層區間的主鍵跨度 */
+        private int chunkSize = 50000;
+
+        /** 二分到這個跨度以下就逐列比 */
+        private int rowLevelSpan = 500;
+
+        /** 同時比幾個區間（每個區間兩邊各佔一條連線） */
+        private int parallelChunks = 4;
+
+        /** 不一致的列（目標缺 / 內容不同）用 INSERT ... ON DUPLICATE KEY UPDATE 重搬 */
+        private boolean repair = false;
+
+        /** log 裡每個區間最多列出幾個不一致的 Id */
+        private int logIdLimit = 20;
+    }
+
+    /**
+     * 月表分區維護：目標表依 timeColumn RANGE 分區（RANGE COLUMNS / TO_DAYS / UNIX_TIMESTAMP）時，
+     * 開跑前先把接下來幾個月的分區建好；跑完把超過保留月數的分區整個 DROP 或 EXCHANGE 出去，
+     * 取代逐列 DELETE。表沒分區就什麼都不做。
+     */
+    @Data
+    public static class Partition {
+
+        private boolean enabled = false;
+
+        /** 除了本次窗口涵蓋的月份，再往後預建幾個月 */
+        private int monthsAhead = 2;
+
+        /** 月表保留幾個月（含本月）；0 = 永久保留 */
+        private int retentionMonths = 0;
+
+        /** 過期分區的處理：none（只報告）/ drop / exchange（換到 表名_pYYYYMM 再從月表拿掉） */
+        private String expireAction = "none";
+    }
+
+    /**
+     * 常駐增量同步（elt-sync profile）：每個 kind 記一個 (SubmitTime, Id) 高水位，每隔 pollIntervalMs
+     * 把「高水位之後、現在 - safetyLagSeconds 之前」的新資料用小批 keyset 搬過去；
+     * 每 reconcileIntervalSeconds 再對最近 reconcileWindowMinutes 的尾巴做一次 anti-join 補漏（晚 commit 的列）。
+     */
+    @Data
+    public static class Sync {
+
+        /** 沒有新資料時多久看一次 */
+        private long pollIntervalMs = 2000;
+
+        /** 只搬「現在 - safetyLag」之前的資料，給還沒 commit 的交易留時間 */
+        private int safetyLagSeconds = 10;
+
+        /** 一批筆數；追進度時連續跑，追上了就回到輪詢 */
+        private int batchSize = 500;
+
+        /** 啟動時從目標表最近這段時間找高水位；找不到就從「現在 - initialLookbackHours」開始 */
+        private int initialLookbackHours = 24;
+
+        /** 補漏掃描的間隔 */
+        private int reconcileIntervalSeconds = 300;
+
+        /** 補漏掃描往回看多久（相對於高水位） */
+        private int reconcileWindowMinutes = 60;
+    }
+
+    /**
+     * 跑批歷史：每批的 kind / 窗口 / batchSize / 筆數 / 耗時 / 時段寫進 elt_run_history；
+     * 啟動時讀最近 lookbackDays 的紀錄，依 kind + 時段學出「一批剛好 targetBatchMs」的 batchSize，
+     * 再推出切窗門檻（halfDay / hour / maxBatchesBeforeSplit）和 slowBatchMs。樣本不夠就用靜態設定。
+     */
+    @Data
+    public static class History {
+
+        private boolean enabled = false;
+
+        /** 學習時往回看幾天 */
+        private int lookbackDays = 14;
+
+        /** 歷史保留天數，啟動時刪掉更舊的 */
+        private int keepDays = 60;
+
+        /** 一個 kind + 時段至少要有幾批才採用；不夠就退回該 kind 全時段，再不夠就用靜態設定 */
+        private int minSamples = 50;
+
+        /** 一批的目標耗時 */
+        private long targetBatchMs = 1000;
+
+        /** 一個窗口希望在多久內搬完（推 maxBatchesBeforeSplit / 切窗門檻用） */
+        private int targetWindowSeconds = 120;
+
+        /** 學出來的 batchSize 下限 / 上限 */
+        private int minBatchSize = 500;
+        private int maxBatchSize = 50_000;
+
+        /** 累積幾批寫一次表 */
+        private int flushRows = 200;
+    }
+
+    /**
+     * 執行計畫守衛：啟動時（之後每 recheckMinutes）對每個 job 的搬移 / 缺口 COUNT SQL 用一個樣本窗口做
+     * EXPLAIN FORMAT=JSON，看 access type、預估列數、有沒有 filesort。計畫不對時依 onBadPlan：
+     * - warn：只報告（log + run 結束的 summary）
+     * - fail：啟動時直接拒跑；跑到一半的定期檢查發現就暫停 run，等人處理完用 elt endpoint resume
+     * - fallback：該 job 改走 PK 區間模式，切窗門檻再乘上 fallbackWindowScale（窗口更小、鎖更短）
+     * - hint：找來源表開頭是 timeColumn 的索引，加 FORCE INDEX 再 EXPLAIN 一次；還是不行就照 fallback
+     */
+    @Data
+    public static class PlanGuard {
+
+        private boolean enabled = false;
+
+        /** warn / fail / fallback / hint */
+        private String onBadPlan = "warn";
+
+        /** 樣本窗口：今天 00:00 往回幾小時（預設一整天，跟 planner 最大的窗口一樣） */
+        private int sampleHours = 24;
+
+        /** 來源表預估讀取列數超過這個值就算不安全（樣本窗口本身的量級要先估好） */
+        private long maxEstimatedRows = 10_000_000L;
+
+        /** 跑起來之後每隔幾分鐘再檢查一次；0 = 只在啟動時檢查 */
+        private int recheckMinutes = 30;
+
+        /** fallback 時切窗門檻（halfDay / hour / maxBatches）乘上這個比例 */
+        private double fallbackWindowScale = 0.25;
+    }
 }
@@ -0,0 +1,236 @@
+package com.example.ordermigratebatchmysql.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 一組「來源表 → 月表」搬移工作，對應 elt.jobs[]。
+ * SQL 由 MigrationJobMapper.xml 依這裡的表名 / 欄位動態組出來，加一張表只要加一段設定。
+ */
+@Data
+public class MigrationJob {
+
+    /** 只允許 schema.table / 欄位名這種字元，避免 ${} 被塞奇怪的東西 */
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)?");
+
+    /** 工作名稱（log 裡的 kind），例如 order / withdraw */
+    private String name;
+
+    /** 是否參與搬移 */
+    private boolean enabled = true;
+
+    /** 來源表，例如 g_paypay.t_order_http_log */
+    private String sourceTable;
+
+    /** 目標月表，例如 g_paypay.t_order_http_log_month */
+    private String targetTable;
+
+    /** 切時間窗用的欄位（要有索引） */
+    private String timeColumn = "SubmitTime";
+
+    /** 主鍵欄位（anti-join / keyset 用） */
+    private String keyColumn = "Id";
+
+    /** 要搬的欄位（來源與目標同名） */
+    private List<String> columns = new ArrayList<>();
+
+    /**
+     * 寫進月表時要壓縮的欄位（HTTP 內容：SubmitRequest / SubmitResponse ...）；目標欄位要是 BLOB 類型。
+     * 讀取端用 PayloadCodec.decode 還原。
+     */
+    private List<String> compressedColumns = new ArrayList<>();
+
+    /**
+     * 串流 / LOAD DATA 路徑用的壓縮：none / lz4 / zstd（開 elt.verify 時改寫 MYSQL_ZLIB，見 PayloadCompressor）。
+     * INSERT ... SELECT 路徑在 server 端跑，一律用 MySQL COMPRESS()（格式標記 MYSQL_ZLIB）
+     */
+    private String compression = "none";
+
+    /** 短於這個長度就不壓（只加 1 byte 標記） */
+    private int compressMinBytes = 64;
+
+    /**
+     * 目標月表依 timeColumn 做 RANGE 分區：anti-join 的子查詢加上窗口時間條件，
+     * 讓 MySQL 只碰窗口所在的分區。PartitionManager 偵測到分區時會自動打開。
+     */
+    private boolean targetPartitioned = false;
+
+    /** 這個 job 自己的 session 設定（只寫要覆蓋 elt.session 的欄位） */
+    private SessionProfile session;
+
+    /**
+     * 來源表 timeColumn 索引名：有值時依時間範圍讀來源的 SQL 一律 FORCE INDEX。
+     * 可以直接設定；QueryPlanGuard hint 模式發現 optimizer 沒選對索引時也會自動填上
+     */
+    private volatile String sourceTimeIndex;
+
+    /**
+     * QueryPlanGuard fallback：anti-join / ORDER BY LIMIT 的執行計畫不安全時打開，這個 job 改走 PK 區間模式；
+     * 之後的定期檢查計畫恢復正常會再關掉
+     */
+    private volatile boolean planFallback = false;
+
+    public static MigrationJob of(String name, String sourceTable, String targetTable, List<String> columns) {
+        MigrationJob job = new MigrationJob();
+        job.setName(name);
+        job.setSourceTable(sourceTable);
+        job.setTargetTable(targetTable);
+        job.setColumns(new ArrayList<>(columns));
+        return job;
+    }
+
+    /** 同一組設定、換一個 sourceTimeIndex 的副本（QueryPlanGuard 試索引提示用，不動到正在跑的 job） */
+    public MigrationJob withSourceTimeIndex(String index) {
+        MigrationJob copy = of(name, sourceTable, targetTable, columns);
+        copy.setEnabled(enabled);
+        copy.setTimeColumn(timeColumn);
+        copy.setKeyColumn(keyColumn);
+        copy.setCompressedColumns(new ArrayList<>(compressedColumns));
+        copy.setCompression(compression);
+        copy.setCompressMinBytes(compressMinBytes);
+        copy.setTargetPartitioned(targetPartitioned);
+        copy.setSession(session);
+        copy.setSourceTimeIndex(index);
+        return copy;
+    }
+
+    /** INSERT 的欄位清單：Id, OrderId, ... */
+    public String getColumnList() {
+        return String.join(", ", columns);
+    }
+
+    /** SELECT 的欄位清單：src.Id, src.OrderId, ... */
+    public String getSourceColumnList() {
+        StringBuilder sb = new StringBuilder();
+        for (String c : columns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append("src.").append(c);
+        }
+        return sb.toString();
+    }
+
+    /** 有沒有設定要壓縮的欄位 */
+    public boolean isCompressionEnabled() {
+        return !"none".equalsIgnoreCase(compression) && !compressedColumns.isEmpty();
+    }
+
+    /**
+     * INSERT ... SELECT 的 SELECT 清單：跟 getSourceColumnList 一樣，但要壓縮的欄位改成
+     * CONCAT(0x03, COMPRESS(src.x))（0x03 = PayloadCodec.Format.MYSQL_ZLIB；NULL 仍是 NULL）
+     */
+    public String getSourceSelectList() {
+        if (!isCompressionEnabled()) {
+            return getSourceColumnList();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String c : columns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            if (compressedColumns.contains(c)) {
+                sb.append("CONCAT(X'03', COMPRESS(src.").append(c).append("))");
+            } else {
+                sb.append("src.").append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * checksum 比對用的整列 CRC32（別名 t），來源側：CONCAT_WS 會跳過 NULL，所以最後再接一段 ISNULL 旗標，
+     * 讓 NULL 跟空字串算出不同值。
+     */
+    public String getChecksumExpression() {
+        return checksumExpression(false);
+    }
+
+    /**
+     * 同上，目標側：壓縮欄位存的是「1 byte 格式標記 + bytes」，先在 SQL 裡解回原文再算——
+     * MYSQL_ZLIB（0x03，INSERT ... SELECT 寫的，開 verify 時串流 / LOAD DATA 也寫這個）用 UNCOMPRESS，
+     * NONE（0x00，太短沒壓）去掉標記。LZ4 / ZSTD（verify 關著時串流 / LOAD DATA 寫的）SQL 解不開，
+     * 原樣進 CRC、必然跟來源不同，會被算成「內容不同」，比對結果不乾淨、不會 purge；repair 用 COMPRESS() 重寫之後就比得到。
+     */
+    public String getTargetChecksumExpression() {
+        return checksumExpression(true);
+    }
+
+    private String checksumExpression(boolean target) {
+        StringBuilder values = new StringBuilder();
+        StringBuilder nulls = new StringBuilder();
+        for (String c : columns) {
+            if (target && isCompressionEnabled() && compressedColumns.contains(c)) {
+                values.append(", CASE LEFT(t.").append(c).append(", 1)")
+                        .append(" WHEN X'03' THEN UNCOMPRESS(SUBSTRING(t.").append(c).append(", 2))")
+                        .append(" WHEN X'00' THEN SUBSTRING(t.").append(c).append(", 2)")
+                        .append(" ELSE t.").append(c).append(" END");
+            } else {
+                values.append(", t.").append(c);
+            }
+            nulls.append(nulls.length() > 0 ? ", " : "").append("ISNULL(t.").append(c).append(")");
+        }
+        return "CRC32(CONCAT_WS('#'" + values + ", CONCAT(" + nulls + ")))";
+    }
+
+    /** ON DUPLICATE KEY UPDATE 用：主鍵以外的欄位都用來源值覆蓋 */
+    public String getUpdateAssignmentList() {
+        StringBuilder sb = new StringBuilder();
+        for (String c : columns) {
+            if (c.equals(keyColumn)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(c).append(" = VALUES(").append(c).append(")");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 設定檢查：表名 / 欄位都要是合法識別字，欄位清單要包含時間欄位與主鍵
+     */
+    public void validate() {
+        require(name != null && !name.isBlank(), "name is required");
+        requireIdentifier(sourceTable, "sourceTable");
+        requireIdentifier(targetTable, "targetTable");
+        requireIdentifier(timeColumn, "timeColumn");
+        requireIdentifier(keyColumn, "keyColumn");
+        require(!columns.isEmpty(), "columns is required");
+        for (String c : columns) {
+            requireIdentifier(c, "columns");
+        }
+        require(columns.contains(timeColumn), "columns must contain timeColumn " + timeColumn);
+        require(columns.contains(keyColumn), "columns must contain keyColumn " + keyColumn);
+        if (sourceTimeIndex != null) {
+            requireIdentifier(sourceTimeIndex, "sourceTimeIndex");
+        }
+        require(compression != null && List.of("none", "lz4", "zstd").contains(compression.toLowerCase()),
+                "compression must be none / lz4 / zstd: " + compression);
+        if (session != null) {
+            try {
+                session.isolationLevel();
+            } catch (IllegalStateException e) {
+                require(false, e.getMessage());
+            }
+        }
+        for (String c : compressedColumns) {
+            require(columns.contains(c), "compressedColumns must be listed in columns: " + c);
+            require(!c.equals(timeColumn) && !c.equals(keyColumn), "cannot compress time / key column " + c);
+        }
+    }
+
+    private void requireIdentifier(String value, String field) {
+        require(value != null && IDENTIFIER.matcher(value).matches(), field + " is not a valid identifier: " + value);
+    }
+
+    private void require(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException("elt.jobs[" + name + "] " + message);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.ordermigratebatchmysql.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * elt.jobs[] 的索引：依 name（kind）找工作，Runner 也從這裡拿「這次要跑哪些表」
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MigrationJobRegistry {
+
+    private final EltProperties props;
+
+    private final Map<String, MigrationJob> jobs = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (MigrationJob job : props.getJobs()) {
+            job.validate();
+            if (jobs.putIfAbsent(job.getName(), job) != null) {
+                throw new IllegalStateException("duplicate elt.jobs name: " + job.getName());
+            }
+            log.info("[ELT-JOB] {} | {} -> {} | enabled={} | columns={}",
+                    job.getName(), job.getSourceTable(), job.getTargetTable(), job.isEnabled(), job.getColumns().size());
+        }
+    }
+
+    public MigrationJob get(String kind) {
+        MigrationJob job = jobs.get(kind);
+        if (job == null) {
+            throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+        return job;
+    }
+
+    /** 啟用中的工作名稱（設定順序） */
+    public List<String> enabledKinds() {
+        List<String> kinds = new ArrayList<>();
+        for (MigrationJob job : jobs.values()) {
+            if (job.isEnabled()) {
+                kinds.add(job.getName());
+            }
+        }
+        return Collections.unmodifiableList(kinds);
+    }
+}
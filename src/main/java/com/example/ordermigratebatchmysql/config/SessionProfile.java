@@ -0,0 +1,109 @@
+package com.example.ordermigratebatchmysql.config;
+
+import lombok.Data;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 搬移批次的 session 設定（elt.session 是全部 job 的預設，elt.jobs[].session 逐欄覆蓋）：
+ * - isolation / txTimeoutSeconds：交給 TransactionTemplate
+ * - 其他是 MySQL session 變數：每個 tx 借到連線時用一句 SET SESSION 套上，還回去前用一句 SET SESSION ... = DEFAULT 還原
+ * 欄位是 null 就代表「不動」。
+ */
+@Data
+public class SessionProfile {
+
+    /** READ_UNCOMMITTED / READ_COMMITTED / REPEATABLE_READ / SERIALIZABLE；null = 連線預設 */
+    private String isolation;
+
+    /** 單批 tx 的 timeout（秒），MyBatis 會套到每個 statement 的 query timeout */
+    private Integer txTimeoutSeconds;
+
+    /** innodb_lock_wait_timeout（秒）：等不到鎖就早點放棄，交給重試 */
+    private Integer lockWaitTimeoutSeconds;
+
+    /** unique_checks：目標表只有主鍵時關掉可以省二級唯一索引檢查 */
+    private Boolean uniqueChecks;
+
+    /** foreign_key_checks */
+    private Boolean foreignKeyChecks;
+
+    /** sql_log_bin：需要 SUPER / SYSTEM_VARIABLES_ADMIN，沒權限時會自動略過 */
+    private Boolean sqlLogBin;
+
+    /**
+     * 以 this 為底，override 裡非 null 的欄位蓋上去
+     */
+    public SessionProfile overlay(SessionProfile override) {
+        SessionProfile out = new SessionProfile();
+        out.isolation = pick(override == null ? null : override.isolation, isolation);
+        out.txTimeoutSeconds = pick(override == null ? null : override.txTimeoutSeconds, txTimeoutSeconds);
+        out.lockWaitTimeoutSeconds = pick(override == null ? null : override.lockWaitTimeoutSeconds, lockWaitTimeoutSeconds);
+        out.uniqueChecks = pick(override == null ? null : override.uniqueChecks, uniqueChecks);
+        out.foreignKeyChecks = pick(override == null ? null : override.foreignKeyChecks, foreignKeyChecks);
+        out.sqlLogBin = pick(override == null ? null : override.sqlLogBin, sqlLogBin);
+        return out;
+    }
+
+    /** TransactionDefinition 的隔離級別常數 */
+    public int isolationLevel() {
+        if (isolation == null || isolation.isBlank()) {
+            return TransactionDefinition.ISOLATION_DEFAULT;
+        }
+        return switch (isolation.toUpperCase(Locale.ROOT).replace(' ', '_').replace('-', '_')) {
+            case "READ_UNCOMMITTED" -> TransactionDefinition.ISOLATION_READ_UNCOMMITTED;
+            case "READ_COMMITTED" -> TransactionDefinition.ISOLATION_READ_COMMITTED;
+            case "REPEATABLE_READ" -> TransactionDefinition.ISOLATION_REPEATABLE_READ;
+            case "SERIALIZABLE" -> TransactionDefinition.ISOLATION_SERIALIZABLE;
+            case "DEFAULT" -> TransactionDefinition.ISOLATION_DEFAULT;
+            default -> throw new IllegalStateException("unknown session isolation: " + isolation);
+        };
+    }
+
+    /** 有沒有要套的 session 變數 */
+    public boolean hasSessionVariables(boolean withSqlLogBin) {
+        return !assignments(withSqlLogBin, false).isEmpty();
+    }
+
+    /** 借到連線時執行：SET SESSION a = x, b = y；沒有要設的回傳 null */
+    public String applySql(boolean withSqlLogBin) {
+        List<String> parts = assignments(withSqlLogBin, false);
+        return parts.isEmpty() ? null : "SET SESSION " + String.join(", ", parts);
+    }
+
+    /** 還連線前執行：SET SESSION a = DEFAULT, ...（回到 global 值） */
+    public String restoreSql(boolean withSqlLogBin) {
+        List<String> parts = assignments(withSqlLogBin, true);
+        return parts.isEmpty() ? null : "SET SESSION " + String.join(", ", parts);
+    }
+
+    private List<String> assignments(boolean withSqlLogBin, boolean restore) {
+        List<String> parts = new ArrayList<>();
+        if (lockWaitTimeoutSeconds != null) {
+            parts.add("innodb_lock_wait_timeout = " + (restore ? "DEFAULT" : String.valueOf(Math.max(1, lockWaitTimeoutSeconds))));
+        }
+        if (uniqueChecks != null) {
+            parts.add("unique_checks = " + (restore ? "DEFAULT" : uniqueChecks ? "1" : "0"));
+        }
+        if (foreignKeyChecks != null) {
+            parts.add("foreign_key_checks = " + (restore ? "DEFAULT" : foreignKeyChecks ? "1" : "0"));
+        }
+        if (withSqlLogBin && sqlLogBin != null) {
+            parts.add("sql_log_bin = " + (restore ? "DEFAULT" : sqlLogBin ? "1" : "0"));
+        }
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        return "isolation=" + (isolation == null ? "default" : isolation)
+                + " txTimeout=" + txTimeoutSeconds + " | " + (applySql(true) == null ? "no session variables" : applySql(true));
+    }
+
+    private static <T> T pick(T override, T base) {
+        return override != null ? override : base;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ordermigratebatchmysql.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.jdbc.datasource.JdbcTransactionObjectSupport;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在 tx 開始時（連線剛從 Hikari 借出來）套上 job 的 session 變數，tx 結束、連線還回池子前還原。
+ * 哪個 job 由 tx 名稱決定（BatchTransactions 會把名稱設成 "elt:" + kind）；其他 tx 完全不動。
+ * sql_log_bin 沒權限（或 server 不允許在 tx 裡改）時，該 job 之後就不再帶它。
+ * 還原失敗的連線不能帶著 job 的設定回到池子（下一個借到的人會在 unique_checks=0 / sql_log_bin=0 下寫入），直接踢掉。
+ */
+@Slf4j
+public class SessionProfileTransactionManager extends JdbcTransactionManager {
+
+    public static final String TX_NAME_PREFIX = "elt:";
+
+    private final transient EltProperties props;
+    private final transient MigrationJobRegistry jobs;
+
+    private final transient Map<String, SessionProfile> profiles = new ConcurrentHashMap<>();
+    private final transient Set<String> sqlLogBinDenied = ConcurrentHashMap.newKeySet();
+
+    /** 這個執行緒目前的 tx 要執行的還原 SQL */
+    private final transient ThreadLocal<String> pendingRestore = new ThreadLocal<>();
+
+    public SessionProfileTransactionManager(DataSource dataSource, EltProperties props, MigrationJobRegistry jobs) {
+        super(dataSource);
+        this.props = props;
+        this.jobs = jobs;
+    }
+
+    @Override
+    protected void prepareTransactionalConnection(Connection con, TransactionDefinition definition) throws SQLException {
+        super.prepareTransactionalConnection(con, definition);
+        String name = definition.getName();
+        if (name == null || !name.startsWith(TX_NAME_PREFIX)) {
+            return;
+        }
+        String kind = name.substring(TX_NAME_PREFIX.length());
+        SessionProfile profile = profiles.computeIfAbsent(kind, k -> props.sessionFor(jobs.get(k)));
+        boolean withSqlLogBin = !sqlLogBinDenied.contains(kind);
+        String apply = profile.applySql(withSqlLogBin);
+        if (apply == null) {
+            return;
+        }
+        try {
+            execute(con, apply);
+        } catch (SQLException e) {
+            if (!withSqlLogBin || profile.getSqlLogBin() == null) {
+                throw e;
+            }
+            sqlLogBinDenied.add(kind);
+            log.warn("[ELT-SESSION][{}] sql_log_bin cannot be changed here, dropping it from the session profile | {}",
+                    kind, e.getMessage());
+            withSqlLogBin = false;
+            apply = profile.applySql(false);
+            if (apply == null) {
+                return;
+            }
+            execute(con, apply);
+        }
+        pendingRestore.set(profile.restoreSql(withSqlLogBin));
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        String restore = pendingRestore.get();
+        if (restore != null) {
+            pendingRestore.remove();
+            Connection con = ((JdbcTransactionObjectSupport) transaction).getConnectionHolder().getConnection();
+            try {
+                execute(con, restore);
+            } catch (SQLException e) {
+                log.warn("[ELT-SESSION] failed to restore session variables ({}), evicting connection | {}", restore, e.getMessage());
+                evict(con);
+            }
+        }
+        super.doCleanupAfterCompletion(transaction);
+    }
+
+    /**
+     * Hikari：標記踢除，還回去時直接關掉實體連線；其他連線池：abort 掉實體連線，讓池子自己丟棄
+     */
+    private void evict(Connection con) {
+        if (obtainDataSource() instanceof HikariDataSource hikari) {
+            hikari.evictConnection(con);
+            return;
+        }
+        try {
+            con.abort(Runnable::run);
+        } catch (SQLException e) {
+            log.warn("[ELT-SESSION] failed to abort connection | {}", e.getMessage());
+        }
+    }
+
+    private static void execute(Connection con, String sql) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ordermigratebatchmysql.control;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * 執行中 run 的控制端點（actuator，HTTP 與 JMX 都可以開）：
+ * <pre>
+ * GET  /actuator/elt                                     目前窗口、進度、ETA、覆蓋值
+ * POST /actuator/elt {"action":"pause"}                  pause / resume / cancel / reset（清掉覆蓋）
+ * POST /actuator/elt {"batchSize":1000,"pauseMs":2000}   即時改 batchSize / pauseMs / parallelism（負數 / 0 = 回到設定檔，pauseMs 只有負數）
+ * </pre>
+ * pause / cancel 對每種搬法都有效（INSERT ... SELECT 每批、LOAD DATA 每個 LOAD、串流每個 chunk 之後），細節見 EltRunControl。
+ * HTTP 要開 elt-metrics profile（exposure 已含 elt）；JMX 要 spring.jmx.enabled=true 並把 elt 加進
+ * management.endpoints.jmx.exposure.include。
+ */
+@Component
+@Endpoint(id = "elt")
+@RequiredArgsConstructor
+public class EltControlEndpoint {
+
+    private final EltRunControl control;
+
+    @ReadOperation
+    public EltRunControl.Status status() {
+        return control.status();
+    }
+
+    @WriteOperation
+    public EltRunControl.Status update(@Nullable String action,
+                                       @Nullable Integer batchSize,
+                                       @Nullable Long pauseMs,
+                                       @Nullable Integer parallelism) {
+        if (action != null) {
+            switch (action.toLowerCase(Locale.ROOT)) {
+                case "pause" -> control.pause();
+                case "resume" -> control.resume();
+                case "cancel" -> control.cancel();
+                case "reset" -> control.resetOverrides();
+                default -> throw new IllegalArgumentException("unknown action: " + action
+                        + " (expected pause / resume / cancel / reset)");
+            }
+        }
+        if (batchSize != null || pauseMs != null || parallelism != null) {
+            control.tune(batchSize, pauseMs, parallelism);
+        }
+        return control.status();
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.ordermigratebatchmysql.control;
+
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 執行中 run 的控制面（EltControlEndpoint 改、LoadAwareThrottle / WindowDispatcher 讀）：
+ * - pause / resume：每批 commit 之後、每個窗口開始之前停在這裡等
+ *   （LOAD DATA 是每個 LOAD 之後，串流模式是讀端每送出一個 chunk 之後；都經過 LoadAwareThrottle.pauseAfterBatch）
+ * - cancel：目前這批 commit 完就停，還沒開始的窗口全部跳過，被中斷的窗口不記 DONE checkpoint
+ *   （串流模式會 cancel 來源串流，佇列裡已送出的 chunk 照樣寫完）
+ * - batchSize / pauseMs / parallelism：覆蓋 elt.* 的值，null = 用設定檔；
+ *   batchSize 只管 INSERT ... SELECT 的批次，LOAD 列數和串流 chunk 大小只吃節流的忙碌倍率
+ * 也記著目前的 run、正在跑的窗口，配合 EltMetrics 的剩餘缺口算進度和 ETA。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EltRunControl {
+
+    private static final long PAUSE_POLL_MS = 500;
+
+    private final EltMetrics metrics;
+
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+    private volatile Integer batchSize;
+    private volatile Long pauseMs;
+    private volatile Integer parallelism;
+
+    private volatile String runId;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private final Map<String, Long> expected = new ConcurrentHashMap<>();
+    private final Set<String> activeWindows = ConcurrentHashMap.newKeySet();
+
+    // ==== Runner / Dispatcher 回報 ====
+
+    /** PRECHECK 之後呼叫：記下 run 與每個 kind 的預估缺口（ETA 的分母） */
+    public void runStarted(String runId, Map<String, Integer> missingByKind) {
+        this.runId = runId;
+        this.startedAt = LocalDateTime.now();
+        this.finishedAt = null;
+        expected.clear();
+        missingByKind.forEach((kind, missing) -> expected.put(kind, (long) missing));
+    }
+
+    public void runFinished() {
+        finishedAt = LocalDateTime.now();
+    }
+
+    public void windowStarted(String kind, LocalDateTime start, LocalDateTime end) {
+        activeWindows.add(window(kind, start, end));
+    }
+
+    public void windowFinished(String kind, LocalDateTime start, LocalDateTime end) {
+        activeWindows.remove(window(kind, start, end));
+    }
+
+    /**
+     * 暫停中就等到 resume；回傳 false 代表已經 cancel（或等的時候被 interrupt），呼叫端應該停下來
+     */
+    public boolean awaitIfPaused(String kind, String runId) {
+        if (paused && !cancelled) {
+            log.info("[ELT-CONTROL][{}][runId={}] PAUSED, waiting for resume", kind, runId);
+            long t0 = System.currentTimeMillis();
+            while (paused && !cancelled) {
+                try {
+                    Thread.sleep(PAUSE_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            log.info("[ELT-CONTROL][{}][runId={}] RESUMED after {} ms", kind, runId, System.currentTimeMillis() - t0);
+        }
+        return !cancelled;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** 批次間隔：有覆蓋就用覆蓋值 */
+    public long pauseMs(long configured) {
+        Long v = pauseMs;
+        return v != null ? v : configured;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    // ==== 控制端 ====
+
+    public void pause() {
+        paused = true;
+        log.warn("[ELT-CONTROL][runId={}] PAUSE requested", runId);
+    }
+
+    public void resume() {
+        paused = false;
+        log.warn("[ELT-CONTROL][runId={}] RESUME requested", runId);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        log.warn("[ELT-CONTROL][runId={}] CANCEL requested, stopping after the current batches commit", runId);
+    }
+
+    /**
+     * 改 batchSize / pauseMs / parallelism；參數 null 代表不動；batchSize / parallelism <= 0、pauseMs < 0 代表拿掉覆蓋、回到設定檔
+     */
+    public void tune(Integer batchSize, Long pauseMs, Integer parallelism) {
+        if (batchSize != null) {
+            this.batchSize = batchSize > 0 ? batchSize : null;
+        }
+        if (pauseMs != null) {
+            this.pauseMs = pauseMs >= 0 ? pauseMs : null;
+        }
+        if (parallelism != null) {
+            this.parallelism = parallelism > 0 ? parallelism : null;
+        }
+        log.warn("[ELT-CONTROL][runId={}] TUNE | batchSize={} | pauseMs={} | parallelism={}",
+                runId, this.batchSize, this.pauseMs, this.parallelism);
+    }
+
+    public void resetOverrides() {
+        batchSize = null;
+        pauseMs = null;
+        parallelism = null;
+        log.warn("[ELT-CONTROL][runId={}] overrides cleared, back to elt.* settings", runId);
+    }
+
+    public Status status() {
+        LocalDateTime now = finishedAt != null ? finishedAt : LocalDateTime.now();
+        long elapsed = startedAt == null ? 0 : Math.max(0, Duration.between(startedAt, now).getSeconds());
+
+        Map<String, Long> remaining = new LinkedHashMap<>();
+        long expectedTotal = 0;
+        long remainingTotal = 0;
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            long left = metrics.remainingGap(e.getKey());
+            left = left < 0 ? e.getValue() : left;
+            remaining.put(e.getKey(), left);
+            expectedTotal += e.getValue();
+            remainingTotal += left;
+        }
+        long moved = Math.max(0, expectedTotal - remainingTotal);
+        double rowsPerSec = elapsed > 0 ? moved / (double) elapsed : 0;
+        Long etaSeconds = finishedAt != null ? Long.valueOf(0)
+                : rowsPerSec > 0 ? Long.valueOf((long) Math.ceil(remainingTotal / rowsPerSec)) : null;
+
+        List<String> windows = new ArrayList<>(activeWindows);
+        windows.sort(null);
+        return new Status(runId, state(), startedAt, elapsed, windows,
+                new LinkedHashMap<>(expected), remaining, moved, Math.round(rowsPerSec),
+                etaSeconds, etaSeconds == null ? null : now.plusSeconds(etaSeconds),
+                batchSize, pauseMs, parallelism);
+    }
+
+    private String state() {
+        if (runId == null) {
+            return "IDLE";
+        }
+        if (finishedAt != null) {
+            return cancelled ? "CANCELLED" : "FINISHED";
+        }
+        return cancelled ? "CANCELLING" : paused ? "PAUSED" : "RUNNING";
+    }
+
+    private static String window(String kind, LocalDateTime start, LocalDateTime end) {
+        return kind + " [" + start + ", " + end + ")";
+    }
+
+    /**
+     * GET /actuator/elt 的內容；batchSize / pauseMs / parallelism 是目前的覆蓋值（null = 用設定檔）
+     */
+    public record Status(String runId,
+                         String state,
+                         LocalDateTime startedAt,
+                         long elapsedSeconds,
+                         List<String> activeWindows,
+                         Map<String, Long> expected,
+                         Map<String, Long> remaining,
+                         long moved,
+                         long rowsPerSec,
+                         Long etaSeconds,
+                         LocalDateTime eta,
+                         Integer batchSize,
+                         Long pauseMs,
+                         Integer parallelism) {
+    }
+}
@@ -1,6 +1,6 @@
 package com.example.ordermigratebatchmysql.diag;
 
-import com.example.ordermigratebatchmysql.mapper.HttpLogEltMapper;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,7 +10,7 @@ import org.springframework.stereotype.Component;
 @Component
 @RequiredArgsConstructor
 public class MapperProbe {
-    private final HttpLogEltMapper mapper;
+    private final MigrationJobMapper mapper;
 
     @PostConstruct
     public void print() {
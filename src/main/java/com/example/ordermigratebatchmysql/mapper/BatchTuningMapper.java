@@ -0,0 +1,21 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import com.example.ordermigratebatchmysql.model.BatchTuning;
+
+import java.util.List;
+
+public interface BatchTuningMapper {
+
+    /** 啟動時建表（已存在就略過） */
+    void createTableIfAbsent();
+
+    /** 舊版表沒有 Mode 欄位時回 0 */
+    int countModeColumn();
+
+    /** 舊版表升級：加 Mode 欄位、主鍵改成 (Kind, Mode, HourOfDay) */
+    void addModeColumn();
+
+    List<BatchTuning> selectAll();
+
+    int upsert(BatchTuning tuning);
+}
@@ -0,0 +1,21 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import com.example.ordermigratebatchmysql.model.EltCheckpoint;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface CheckpointMapper {
+
+    /** 啟動時建表（已存在就略過） */
+    void createTableIfAbsent();
+
+    /** 與 [start, end) 有交集、且已完成的窗口 */
+    List<EltCheckpoint> selectDone(@Param("kind") String kind,
+                                   @Param("start") LocalDateTime start,
+                                   @Param("end") LocalDateTime end);
+
+    /** 寫入或覆蓋一個窗口的狀態 */
+    int upsert(EltCheckpoint checkpoint);
+}
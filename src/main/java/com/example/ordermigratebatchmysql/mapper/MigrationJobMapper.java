@@ -0,0 +1,133 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.model.ChunkChecksum;
+import com.example.ordermigratebatchmysql.model.HourGapCount;
+import com.example.ordermigratebatchmysql.model.HttpLogKey;
+import com.example.ordermigratebatchmysql.model.KeyBounds;
+import com.example.ordermigratebatchmysql.model.RowChecksum;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 所有 elt.jobs 共用的 mapper：表名 / 欄位都從 job 帶進 XML
+ */
+public interface MigrationJobMapper {
+
+    /** 單批搬移：回傳受影響筆數 */
+    int insertMissingForRange(@Param("job") MigrationJob job,
+                              @Param("start") LocalDateTime start,
+                              @Param("end") LocalDateTime end,
+                              @Param("batchSize") int batchSize);
+
+    /** 可選：查估計數（只做觀察用） */
+    int countMissingForRange(@Param("job") MigrationJob job,
+                             @Param("start") LocalDateTime start,
+                             @Param("end") LocalDateTime end);
+
+    /** 缺口直方圖：整窗每小時缺口，一次 GROUP BY 查完 */
+    List<HourGapCount> countMissingByHour(@Param("job") MigrationJob job,
+                                          @Param("start") LocalDateTime start,
+                                          @Param("end") LocalDateTime end);
+
+    /** keyset：游標之後第 offset+1 筆的鍵，當本批上界；回傳 null 代表剩下不足一批 */
+    HttpLogKey selectBatchUpperKey(@Param("job") MigrationJob job,
+                                   @Param("start") LocalDateTime start,
+                                   @Param("end") LocalDateTime end,
+                                   @Param("afterTime") LocalDateTime afterTime,
+                                   @Param("afterId") Long afterId,
+                                   @Param("offset") int offset);
+
+    /** keyset 單批搬移：只搬 (after, upper] 鍵區間內缺少的資料；upper 為 null 時搬到窗尾 */
+    int insertMissingForKeyRange(@Param("job") MigrationJob job,
+                                 @Param("start") LocalDateTime start,
+                                 @Param("end") LocalDateTime end,
+                                 @Param("afterTime") LocalDateTime afterTime,
+                                 @Param("afterId") Long afterId,
+                                 @Param("upperTime") LocalDateTime upperTime,
+                                 @Param("upperId") Long upperId);
+
+    /** PK 區間模式：窗口內主鍵的 MIN / MAX（走時間索引，索引本身就帶主鍵） */
+    KeyBounds selectKeyBounds(@Param("job") MigrationJob job,
+                              @Param("start") LocalDateTime start,
+                              @Param("end") LocalDateTime end);
+
+    /**
+     * PK 區間模式單批：INSERT IGNORE（或 ON DUPLICATE KEY UPDATE）搬 [fromId, toId] 這段，
+     * 不做 anti-join、不排序；重跑安全
+     */
+    int copyKeyRange(@Param("job") MigrationJob job,
+                     @Param("start") LocalDateTime start,
+                     @Param("end") LocalDateTime end,
+                     @Param("fromId") long fromId,
+                     @Param("toId") long toId,
+                     @Param("upsert") boolean upsert);
+
+    /** 串流模式：來源筆數（目標在另一台，無法 anti-join） */
+    int countSourceForRange(@Param("job") MigrationJob job,
+                            @Param("start") LocalDateTime start,
+                            @Param("end") LocalDateTime end);
+
+    /** 串流模式：來源每小時筆數 */
+    List<HourGapCount> countSourceByHour(@Param("job") MigrationJob job,
+                                         @Param("start") LocalDateTime start,
+                                         @Param("end") LocalDateTime end);
+
+    /** bitmap 模式：串流讀目標表 [fromId, toId] 的 Id */
+    void scanTargetIds(@Param("job") MigrationJob job,
+                       @Param("fromId") long fromId,
+                       @Param("toId") long toId,
+                       ResultHandler<Long> handler);
+
+    /** bitmap 模式：串流讀來源窗口的 (time, key) */
+    void scanSourceKeys(@Param("job") MigrationJob job,
+                        @Param("start") LocalDateTime start,
+                        @Param("end") LocalDateTime end,
+                        ResultHandler<HttpLogKey> handler);
+
+    /** bitmap 模式單批：搬指定 Id（INSERT IGNORE） */
+    int copyKeys(@Param("job") MigrationJob job,
+                 @Param("start") LocalDateTime start,
+                 @Param("end") LocalDateTime end,
+                 @Param("ids") long[] ids);
+
+    /** 常駐同步：目標表 since 之後最新的 (time, key)；沒有回傳 null */
+    HttpLogKey selectTargetMaxKey(@Param("job") MigrationJob job,
+                                  @Param("since") LocalDateTime since);
+
+    /** purge dry-run：窗口內已在目標、可以刪的來源筆數 */
+    int countPurgeable(@Param("job") MigrationJob job,
+                       @Param("start") LocalDateTime start,
+                       @Param("end") LocalDateTime end);
+
+    /** purge 單批：刪掉 [fromId, toId] 內已確認在目標的來源列 */
+    int purgeCopiedKeyRange(@Param("job") MigrationJob job,
+                            @Param("start") LocalDateTime start,
+                            @Param("end") LocalDateTime end,
+                            @Param("fromId") long fromId,
+                            @Param("toId") long toId);
+
+    /** checksum 比對：目標表窗口內主鍵 MIN / MAX */
+    KeyBounds selectTargetKeyBounds(@Param("job") MigrationJob job,
+                                    @Param("start") LocalDateTime start,
+                                    @Param("end") LocalDateTime end);
+
+    /** checksum 比對：[fromId, toId] 的筆數 + BIT_XOR(CRC32)；target=true 算目標表 */
+    ChunkChecksum checksumKeyRange(@Param("job") MigrationJob job,
+                                   @Param("target") boolean target,
+                                   @Param("start") LocalDateTime start,
+                                   @Param("end") LocalDateTime end,
+                                   @Param("fromId") long fromId,
+                                   @Param("toId") long toId);
+
+    /** checksum 比對：[fromId, toId] 逐列 CRC32（依主鍵排序） */
+    List<RowChecksum> selectRowChecksums(@Param("job") MigrationJob job,
+                                         @Param("target") boolean target,
+                                         @Param("start") LocalDateTime start,
+                                         @Param("end") LocalDateTime end,
+                                         @Param("fromId") long fromId,
+                                         @Param("toId") long toId);
+}
\ No newline at end of file
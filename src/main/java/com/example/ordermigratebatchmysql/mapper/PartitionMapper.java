@@ -0,0 +1,34 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import com.example.ordermigratebatchmysql.model.TablePartition;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 月表分區維護；table 一律是 MigrationJob 驗證過的 targetTable，partition 名稱由 PartitionManager 產生
+ */
+public interface PartitionMapper {
+
+    /** 分區清單（依順序）；沒分區的表回傳一列 partitionName = null */
+    List<TablePartition> selectPartitions(@Param("schema") String schema, @Param("table") String table);
+
+    int countTable(@Param("schema") String schema, @Param("table") String table);
+
+    /** 沒有 MAXVALUE 分區時直接加在最後 */
+    void addPartition(@Param("table") String table, @Param("name") String name, @Param("lessThan") String lessThan);
+
+    /** 有 MAXVALUE 分區時，從它前面切一個出來 */
+    void splitMaxValuePartition(@Param("table") String table, @Param("maxPartition") String maxPartition,
+                                @Param("name") String name, @Param("lessThan") String lessThan);
+
+    void dropPartition(@Param("table") String table, @Param("name") String name);
+
+    /** EXCHANGE 用的空表：跟月表同結構、不分區 */
+    void createExchangeTable(@Param("archiveTable") String archiveTable, @Param("table") String table);
+
+    void removePartitioning(@Param("archiveTable") String archiveTable);
+
+    void exchangePartition(@Param("table") String table, @Param("name") String name,
+                           @Param("archiveTable") String archiveTable);
+}
@@ -0,0 +1,16 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * QueryPlanGuard 用的 metadata 查詢；EXPLAIN 本身是直接拿 MigrationJobMapper 的 mapped statement 組出來跑
+ */
+public interface QueryPlanMapper {
+
+    /** 第一個欄位是 column 的索引（PRIMARY / UNIQUE 排前面）；schema = null 時用 DATABASE() */
+    List<String> selectIndexesLeadingWith(@Param("schema") String schema,
+                                          @Param("table") String table,
+                                          @Param("column") String column);
+}
@@ -0,0 +1,23 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import com.example.ordermigratebatchmysql.model.BatchHistoryStats;
+import com.example.ordermigratebatchmysql.model.BatchRecord;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RunHistoryMapper {
+
+    /** 啟動時建表（已存在就略過） */
+    void createTableIfAbsent();
+
+    /** 多筆一次 INSERT */
+    int insertBatch(@Param("records") List<BatchRecord> records);
+
+    /** since 之後、有搬到資料的批次，依 kind + 模式 + 時段彙總（常駐同步 sync* 的小批不算） */
+    List<BatchHistoryStats> selectStats(@Param("since") LocalDateTime since);
+
+    /** 刪掉 before 之前的紀錄，一次最多 limit 筆 */
+    int deleteOlderThan(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
@@ -0,0 +1,12 @@
+package com.example.ordermigratebatchmysql.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+public interface ServerHealthMapper {
+
+    /** performance_schema.global_status 的某個數值（Threads_running / Innodb_row_lock_current_waits ...） */
+    Long selectGlobalStatus(@Param("name") String name);
+
+    /** InnoDB history list length */
+    Long selectHistoryListLength();
+}
@@ -0,0 +1,184 @@
+package com.example.ordermigratebatchmysql.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 搬移指標（Micrometer）：原本只寫在 log 裡的數字，改成可以被 Prometheus 抓、可以設告警。
+ * <pre>
+ * elt_rows_moved_total{kind}              累計搬了幾筆
+ * elt_batch_latency_seconds{kind,mode}    單批耗時（含 p50/p95/p99 + histogram）
+ * elt_batch_slow_total{kind}              超過 slowBatchMs 的批次數
+ * elt_batch_retries_total{kind,failure}   鎖衝突 / 連線錯誤重試次數
+ * elt_count_latency_seconds{kind,query}   缺口 COUNT / 直方圖查詢耗時
+ * elt_batch_size{kind}                    目前的 batchSize（adaptive 模式會一直變）
+ * elt_windows_active{kind}                正在跑的窗口數
+ * elt_gap_remaining{kind}                 PRECHECK 預估缺口扣掉已搬筆數
+ * elt_sync_lag_seconds{kind}              常駐同步的高水位落後現在幾秒
+ * elt_rows_purged_total{kind}             purge 刪掉的來源筆數
+ * elt_verify_rows_total{kind,outcome}     checksum 比對找到的不一致列（outcome=missing|diff|repaired）
+ * elt_payload_bytes_total{kind,stage}     壓縮欄位的原始 / 實際寫入 bytes（stage=raw|stored）
+ * </pre>
+ */
+@Component
+@RequiredArgsConstructor
+public class EltMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, AtomicInteger> batchSizes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeWindows = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> remainingGaps = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> syncLags = new ConcurrentHashMap<>();
+
+    /**
+     * 一批結束（成功）之後呼叫
+     */
+    public void recordBatch(String kind, String mode, int affected, long costMs, int batchSize, boolean slow) {
+        Counter.builder("elt.rows.moved")
+                .description("Rows copied into the target table")
+                .tag("kind", kind)
+                .register(registry)
+                .increment(Math.max(0, affected));
+        Timer.builder("elt.batch.latency")
+                .description("Wall time of one batch transaction")
+                .tag("kind", kind)
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry)
+                .record(costMs, TimeUnit.MILLISECONDS);
+        if (slow) {
+            Counter.builder("elt.batch.slow")
+                    .description("Batches slower than elt.slow-batch-ms")
+                    .tag("kind", kind)
+                    .register(registry)
+                    .increment();
+        }
+        gaugeOf(batchSizes, "elt.batch.size", "Current batch size", kind).set(batchSize);
+        AtomicLong remaining = remainingGaps.get(kind);
+        if (remaining != null && affected > 0) {
+            remaining.accumulateAndGet(affected, (left, moved) -> Math.max(0, left - moved));
+        }
+    }
+
+    /**
+     * 壓縮欄位一批的原始 / 寫入 bytes（只有串流 / LOAD DATA 路徑量得到）
+     */
+    public void recordPayload(String kind, long rawBytes, long storedBytes) {
+        if (rawBytes <= 0) {
+            return;
+        }
+        Counter.builder("elt.payload.bytes").description("Compressed payload column bytes")
+                .tag("kind", kind).tag("stage", "raw").register(registry).increment(rawBytes);
+        Counter.builder("elt.payload.bytes").description("Compressed payload column bytes")
+                .tag("kind", kind).tag("stage", "stored").register(registry).increment(storedBytes);
+    }
+
+    public void recordPurge(String kind, int deleted) {
+        Counter.builder("elt.rows.purged")
+                .description("Source rows deleted after being verified in the target table")
+                .tag("kind", kind)
+                .register(registry)
+                .increment(Math.max(0, deleted));
+    }
+
+    public void recordVerify(String kind, String outcome, long rows) {
+        Counter.builder("elt.verify.rows")
+                .description("Rows found divergent (or repaired) by checksum verification")
+                .tag("kind", kind)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment(Math.max(0, rows));
+    }
+
+    public void recordRetry(String kind, String failure) {
+        Counter.builder("elt.batch.retries")
+                .description("Batch retries after a transient failure")
+                .tag("kind", kind)
+                .tag("failure", failure)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 量缺口查詢（COUNT / 每小時直方圖）的耗時
+     */
+    public <T> T timeCount(String kind, String query, Supplier<T> call) {
+        return Timer.builder("elt.count.latency")
+                .description("Latency of gap counting queries")
+                .tag("kind", kind)
+                .tag("query", query)
+                .publishPercentiles(0.5, 0.95)
+                .register(registry)
+                .record(call);
+    }
+
+    public void windowStarted(String kind) {
+        gaugeOf(activeWindows, "elt.windows.active", "Windows currently being copied", kind).incrementAndGet();
+    }
+
+    public void windowFinished(String kind) {
+        gaugeOf(activeWindows, "elt.windows.active", "Windows currently being copied", kind).decrementAndGet();
+    }
+
+    /**
+     * PRECHECK 之後設定預估缺口，之後每批搬完自動扣
+     */
+    public void expectGap(String kind, long missing) {
+        remainingGaps.computeIfAbsent(kind, k -> {
+            AtomicLong holder = new AtomicLong();
+            Gauge.builder("elt.gap.remaining", holder, AtomicLong::get)
+                    .description("Estimated rows still missing from the target table")
+                    .tag("kind", k)
+                    .register(registry);
+            return holder;
+        }).set(missing);
+    }
+
+    /** 目前剩餘缺口；沒有 expectGap 過回傳 -1 */
+    public long remainingGap(String kind) {
+        AtomicLong remaining = remainingGaps.get(kind);
+        return remaining != null ? remaining.get() : -1;
+    }
+
+    /**
+     * 常駐同步：高水位落後現在多少秒
+     */
+    public void recordSyncLag(String kind, long lagSeconds) {
+        syncLags.computeIfAbsent(kind, k -> {
+            AtomicLong holder = new AtomicLong();
+            Gauge.builder("elt.sync.lag", holder, AtomicLong::get)
+                    .description("Seconds between now and the incremental sync watermark")
+                    .baseUnit("seconds")
+                    .tag("kind", k)
+                    .register(registry);
+            return holder;
+        }).set(Math.max(0, lagSeconds));
+    }
+
+    private AtomicInteger gaugeOf(Map<String, AtomicInteger> holders, String name, String description, String kind) {
+        return holders.computeIfAbsent(kind, k -> {
+            AtomicInteger holder = new AtomicInteger();
+            Gauge.builder(name, holder, AtomicInteger::get)
+                    .description(description)
+                    .tag("kind", k)
+                    .register(registry);
+            return holder;
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * elt_run_history 依 kind + 模式 + 時段彙總（x = Affected、y = CostMs 的一次、二次和），給 RunHistoryTuner 做線性迴歸
+ */
+@Data
+public class BatchHistoryStats {
+    private String kind;
+    private String mode;
+    private int hourOfDay;
+    private long samples;
+    private double sumRows;
+    private double sumMs;
+    private double sumRowsSq;
+    private double sumRowsMs;
+    private double sumMsSq;
+
+    /** 併進另一組（算 kind + 模式全時段用） */
+    public void add(BatchHistoryStats o) {
+        samples += o.samples;
+        sumRows += o.sumRows;
+        sumMs += o.sumMs;
+        sumRowsSq += o.sumRowsSq;
+        sumRowsMs += o.sumRowsMs;
+        sumMsSq += o.sumMsSq;
+    }
+}
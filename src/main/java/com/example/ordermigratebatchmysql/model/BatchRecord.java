@@ -0,0 +1,26 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * elt_run_history 的一筆：一批搬移的窗口、batchSize、實際筆數、耗時；hourOfDay 是這批「執行當下」的時段
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRecord {
+    private String kind;
+    private String mode;
+    private String runId;
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    private int hourOfDay;
+    private int batchSize;
+    private int affected;
+    private long costMs;
+    private LocalDateTime createdAt;
+}
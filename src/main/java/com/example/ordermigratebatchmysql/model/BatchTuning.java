@@ -0,0 +1,19 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * elt_batch_tuning 的一筆：某個 kind 用某個模式在某個時段學到的 batchSize
+ */
+@Data
+public class BatchTuning {
+    private String kind;
+    private String mode;
+    private int hourOfDay;
+    private int batchSize;
+    private double ewmaRowsPerSec;
+    private long p95Ms;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,16 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * 一段主鍵區間的彙總 checksum：筆數 + BIT_XOR(CRC32(整列))，跟列的順序無關
+ */
+@Data
+public class ChunkChecksum {
+    private long rowCount;
+    private long checksum;
+
+    public boolean matches(ChunkChecksum other) {
+        return other != null && rowCount == other.rowCount && checksum == other.checksum;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * elt_checkpoint 的一筆：某個 kind 的某個窗口搬到哪了
+ */
+@Data
+public class EltCheckpoint {
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+
+    private String kind;
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    /** RUNNING / DONE */
+    private String status;
+    private int moved;
+    private long costMs;
+    private String runId;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
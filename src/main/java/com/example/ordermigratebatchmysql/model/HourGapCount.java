@@ -0,0 +1,12 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * 每小時缺口直方圖的一格：hourOffset = 距離窗頭幾小時，missing = 該小時還沒搬的筆數
+ */
+@Data
+public class HourGapCount {
+    private int hourOffset;
+    private int missing;
+}
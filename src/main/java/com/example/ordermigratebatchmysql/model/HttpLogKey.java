@@ -0,0 +1,18 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * http_log 的排序鍵 (SubmitTime, Id)，keyset 模式用來當批與批之間的高水位
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HttpLogKey {
+    private LocalDateTime submitTime;
+    private Long id;
+}
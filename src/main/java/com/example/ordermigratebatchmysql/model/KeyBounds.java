@@ -0,0 +1,16 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * 某個時間窗內主鍵的 MIN / MAX（窗口沒資料時兩個都是 null）
+ */
+@Data
+public class KeyBounds {
+    private Long minId;
+    private Long maxId;
+
+    public boolean isEmpty() {
+        return minId == null || maxId == null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * 單列的 CRC32（checksum 二分到最底層時逐列比對用）
+ */
+@Data
+public class RowChecksum {
+    private long id;
+    private long checksum;
+}
@@ -0,0 +1,19 @@
+package com.example.ordermigratebatchmysql.model;
+
+import lombok.Data;
+
+/**
+ * information_schema.PARTITIONS 的一列：description 是 VALUES LESS THAN 的值（MAXVALUE / 數字 / 'yyyy-MM-dd ...'）
+ */
+@Data
+public class TablePartition {
+    private String partitionName;
+    private String partitionMethod;
+    private String partitionExpression;
+    private String partitionDescription;
+    private long tableRows;
+
+    public boolean isMaxValue() {
+        return "MAXVALUE".equalsIgnoreCase(partitionDescription);
+    }
+}
@@ -1,182 +1,147 @@
 package com.example.ordermigratebatchmysql.run;
 
 import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
 import com.example.ordermigratebatchmysql.service.AdaptiveHttpLogEltService;
+import com.example.ordermigratebatchmysql.service.AimdBatchController;
+import com.example.ordermigratebatchmysql.service.CheckpointJournal;
+import com.example.ordermigratebatchmysql.service.ChecksumVerifier;
+import com.example.ordermigratebatchmysql.service.PartitionManager;
+import com.example.ordermigratebatchmysql.service.QueryPlanGuard;
+import com.example.ordermigratebatchmysql.service.RunHistoryTuner;
+import com.example.ordermigratebatchmysql.service.SourcePurger;
+import com.example.ordermigratebatchmysql.stream.BulkLoadWindowWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Component
 @Profile("elt-run-adaptive")
+@Order(1)
 @RequiredArgsConstructor
 public class AdaptiveHttpLogEltRunner implements CommandLineRunner {
 
     private final AdaptiveHttpLogEltService adaptiveService;
     private final EltProperties props;
+    private final ExecutorService eltExecutor;
+    private final DataSource dataSource;
+    private final CheckpointJournal checkpointJournal;
+    private final MigrationJobRegistry jobs;
+    private final EltMetrics metrics;
+    private final BulkLoadWindowWriter bulkLoader;
+    private final PartitionManager partitions;
+    private final ChecksumVerifier verifier;
+    private final SourcePurger purger;
+    private final RunHistoryTuner historyTuner;
+    private final QueryPlanGuard planGuard;
+    private final EltRunControl control;
+    private final AimdBatchController aimd;
 
     @Override
     public void run(String... args) {
         String runId = UUID.randomUUID().toString().substring(0, 8);
         ZoneId zone = ZoneId.of(props.getZoneId());
 
+        // 搬移範圍：預設「上一個月 1 號」到今天（今天還沒過完，不規劃），--from / --to / --kinds / --direction 可以改
         LocalDate today = LocalDate.now(zone);
-        LocalDate monthStart = today.withDayOfMonth(1).minusMonths(1);
-
-        LocalDateTime windowStart = monthStart.atStartOfDay();
-        LocalDateTime windowEnd = LocalDateTime.now(zone);
-
-        log.info("=== [ELT-ADAPT] START | window=[{}, {}) | runId={} ===",
-                windowStart, windowEnd, runId);
-
-        int orderMissing = adaptiveService.countMissing("order", windowStart, windowEnd);
-        int withdrawMissing = adaptiveService.countMissing("withdraw", windowStart, windowEnd);
-        log.info("[ELT-ADAPT][runId={}] PRECHECK | orderMissing={} | withdrawMissing={}",
-                runId, orderMissing, withdrawMissing);
-
-        int orderMovedTotal = 0;
-        int withdrawMovedTotal = 0;
-
-        int halfDayThreshold = props.getHalfDaySwitchThreshold();
-        int hourThreshold = props.getHourSwitchThreshold();
-
-        // 一天一天往前掃
-        for (LocalDate d = monthStart; d.isBefore(today); d = d.plusDays(1)) {
-            LocalDateTime dayStart = d.atStartOfDay();
-            LocalDateTime dayEnd = d.plusDays(1).atStartOfDay();
-
-            int dayOrderMissing = adaptiveService.countMissing("order", dayStart, dayEnd);
-            int dayWithdrawMissing = adaptiveService.countMissing("withdraw", dayStart, dayEnd);
-
-            log.info("[ELT-ADAPT][runId={}] === DAY {} | window=[{}, {}) | dayOrderMissing={} | dayWithdrawMissing={} ===",
-                    runId, d, dayStart, dayEnd, dayOrderMissing, dayWithdrawMissing);
-
-            boolean useHalfDay =
-                    dayOrderMissing > halfDayThreshold
-                            || dayWithdrawMissing > halfDayThreshold;
-
-            if (!useHalfDay) {
-                // ✅ 正常：整天一個 window 搬
-                log.info("[ELT-ADAPT][runId={}] DAY {} use FULL-DAY window", runId, d);
-                orderMovedTotal += adaptiveService.runOrderBatches(dayStart, dayEnd, runId);
-                withdrawMovedTotal += adaptiveService.runWithdrawBatches(dayStart, dayEnd, runId);
-            } else {
-                // 🚨 資料量偏大：先拆成「半天」，再看要不要拆到「每小時」
-                LocalDateTime half1Start = dayStart;
-                LocalDateTime half1End = dayStart.plusHours(12);
-                LocalDateTime half2Start = half1End;
-                LocalDateTime half2End = dayEnd;
-
-                log.warn("[ELT-ADAPT][runId={}] DAY {} LARGE volume, use HALF-DAY windows | threshold={} | orderMissing={} | withdrawMissing={}",
-                        runId, d, halfDayThreshold, dayOrderMissing, dayWithdrawMissing);
-
-                // 上半天
-                orderMovedTotal += processHalfWindow(runId, d, "H1",
-                        half1Start, half1End, hourThreshold);
-
-                withdrawMovedTotal += processHalfWindowWithdraw(runId, d, "H1",
-                        half1Start, half1End, hourThreshold);
-
-                // 下半天
-                orderMovedTotal += processHalfWindow(runId, d, "H2",
-                        half2Start, half2End, hourThreshold);
-
-                withdrawMovedTotal += processHalfWindowWithdraw(runId, d, "H2",
-                        half2Start, half2End, hourThreshold);
+        RunRange range = RunRange.parse(args, jobs.enabledKinds(), today);
+
+        LocalDateTime windowStart = range.from().atStartOfDay();
+        LocalDateTime windowEnd = range.to().atStartOfDay();
+
+        List<String> kinds = range.kinds();
+
+        log.info("=== [ELT-ADAPT] START | window=[{}, {}) | jobs={} | {} | runId={} ===",
+                windowStart, windowEnd, kinds, range.direction(), runId);
+
+        // 月表有分區：先把窗口涵蓋的月份（再多幾個月）建好，anti-join 改成只碰窗口所在分區
+        partitions.prepare(kinds, today, runId);
+
+        // checkpoint：讀回已完成的窗口；每個月 shard 開頭連續已完成的天直接跳過，PRECHECK / 直方圖也從第一個沒完成的天開始
+        CheckpointJournal.Snapshot checkpoints = checkpointJournal.snapshot(kinds, windowStart, windowEnd);
+        MonthShardPlanner shards = new MonthShardPlanner("ELT-ADAPT", runId, range, checkpoints);
+        int shardParallelism = props.isParallelEnabled() ? props.getMonthShardParallelism() : 1;
+
+        // 整體預估缺口（每個 job 全範圍）
+        // 直方圖模式：每個 shard 每小時缺口一次查完，後面 day / half / hour 的切分都查記憶體
+        Map<String, Integer> missingByKind = shards.precheck(adaptiveService::countMissing,
+                props.isGapHistogramEnabled() ? adaptiveService::loadGapHistogram : null);
+        log.info("[ELT-ADAPT][runId={}] PRECHECK | shards={} | missing={}", runId, shards.shardCount(), missingByKind);
+        missingByKind.forEach(metrics::expectGap);
+        control.runStarted(runId, missingByKind);
+
+        WindowDispatcher dispatcher = new WindowDispatcher("ELT-ADAPT", runId, eltExecutor,
+                props.isParallelEnabled(),
+                props.getMaxConcurrentWindowsPerKind(),
+                WindowDispatcher.connectionBudget(dataSource, props.getWorkerThreads(), shardParallelism))
+                .withCheckpoints(checkpointJournal, checkpoints)
+                .withControl(control)
+                .withParallelismHint(aimd::recommendedParallelism);
+
+        // 🔹範圍依自然月切成 shard，每個 shard 一天一天規劃（同一天的各個 job 依序送出）；
+        // 並行模式下幾個 shard 同時規劃，窗口全部進同一個 dispatcher，同時跑的窗口數仍受連線預算限制
+        // adaptive 只看缺口量切窗（批次大小本身會自動調）
+        shards.planAll(gaps -> {
+            WindowPlanner planner = new WindowPlanner("ELT-ADAPT", runId, props, gaps, dispatcher,
+                    adaptiveService::runJobBatches, false)
+                    .withThresholds(kind -> planGuard.adjust(kind, historyTuner.thresholds(kind, adaptiveService.batchMode(kind))));
+            if (bulkLoader.isEnabled()) {
+                // 預估缺口夠大的窗口改走 LOAD DATA LOCAL INFILE
+                planner.withBulkLoad((kind, start, end, id) -> bulkLoader.loadWindow(jobs.get(kind), start, end, id),
+                        props.getBulkLoad().getThresholdRows());
             }
-        }
-
-        log.info("=== [ELT-ADAPT] DONE | runId={} | orderMoved={} / {} | withdrawMoved={} / {} ===",
-                runId, orderMovedTotal, orderMissing, withdrawMovedTotal, withdrawMissing);
-    }
-
-    /**
-     * 半天 window for order：
-     * - 如果半天缺口 <= hourThreshold => 直接半天 window 搬
-     * - 否則 => 再拆成每小時 window 搬
-     */
-    private int processHalfWindow(String runId,
-                                  LocalDate day,
-                                  String label,
-                                  LocalDateTime halfStart,
-                                  LocalDateTime halfEnd,
-                                  int hourThreshold) {
-
-        int halfOrderMissing = adaptiveService.countMissing("order", halfStart, halfEnd);
-
-        log.info("[ELT-ADAPT][runId={}] DAY {} {} | ORDER | window=[{}, {}) | halfOrderMissing={}",
-                runId, day, label, halfStart, halfEnd, halfOrderMissing);
-
-        if (halfOrderMissing <= hourThreshold) {
-            log.info("[ELT-ADAPT][runId={}] DAY {} {} | ORDER use HALF-DAY window", runId, day, label);
-            return adaptiveService.runOrderBatches(halfStart, halfEnd, runId);
-        }
-
-        // 半天還是太多 => 切成每小時
-        log.warn("[ELT-ADAPT][runId={}] DAY {} {} | ORDER too large, split into HOURLY windows | threshold={} | missing={}",
-                runId, day, label, hourThreshold, halfOrderMissing);
-
-        int moved = 0;
-        LocalDateTime cursor = halfStart;
-        while (cursor.isBefore(halfEnd)) {
-            LocalDateTime next = cursor.plusHours(1);
-            if (next.isAfter(halfEnd)) {
-                next = halfEnd;
+            if (props.isBisectEnabled()) {
+                // 不再固定三級：遞迴對半切到每個窗口的缺口都放得下，再把安靜的窗口併回去
+                planner.withBisect(props.getBisectMinMinutes());
             }
+            return planner;
+        }, shardParallelism, control::isCancelled);
 
-            log.info("[ELT-ADAPT][runId={}] DAY {} {} | ORDER HOUR window=[{}, {})",
-                    runId, day, label, cursor, next);
+        WindowDispatcher.Summary summary = dispatcher.awaitAll();
+        control.runFinished();
 
-            moved += adaptiveService.runOrderBatches(cursor, next, runId);
-            cursor = next;
-        }
-        return moved;
-    }
+        log.info("=== [ELT-ADAPT] DONE | runId={} | moved/missing={} | windows={} | skipped={} | failed={} | slowestWindow={} ms | parallel={} ===",
+                runId, summary.movedVersus(missingByKind),
+                summary.windowCount(), summary.getSkippedCount(), summary.getFailures().size(), summary.getSlowestWindowMs(),
+                dispatcher.isParallel());
 
-    /**
-     * 半天 window for withdraw（邏輯跟 order 一樣，獨立統計）
-     */
-    private int processHalfWindowWithdraw(String runId,
-                                          LocalDate day,
-                                          String label,
-                                          LocalDateTime halfStart,
-                                          LocalDateTime halfEnd,
-                                          int hourThreshold) {
+        log.info("[ELT-ADAPT][runId={}] AIMD | learnedBatchSizes={} | parallelism={} | adjustments={}",
+                runId, aimd.learnedBatchSizes(), aimd.recommendedParallelism(), aimd.recentAdjustments().size());
 
-        int halfWithdrawMissing = adaptiveService.countMissing("withdraw", halfStart, halfEnd);
+        planGuard.logSummary("ELT-ADAPT", runId);
 
-        log.info("[ELT-ADAPT][runId={}] DAY {} {} | WITHDRAW | window=[{}, {}) | halfWithdrawMissing={}",
-                runId, day, label, halfStart, halfEnd, halfWithdrawMissing);
+        summary.throwIfFailed("ELT-ADAPT", runId);
 
-        if (halfWithdrawMissing <= hourThreshold) {
-            log.info("[ELT-ADAPT][runId={}] DAY {} {} | WITHDRAW use HALF-DAY window", runId, day, label);
-            return adaptiveService.runWithdrawBatches(halfStart, halfEnd, runId);
+        if (control.isCancelled()) {
+            // 手動取消：資料還沒搬齊，比對 / 分區過期 / purge 都不做
+            log.warn("=== [ELT-ADAPT] CANCELLED | runId={} | verify / partition expire / purge skipped ===", runId);
+            return;
         }
 
-        log.warn("[ELT-ADAPT][runId={}] DAY {} {} | WITHDRAW too large, split into HOURLY windows | threshold={} | missing={}",
-                runId, day, label, hourThreshold, halfWithdrawMissing);
-
-        int moved = 0;
-        LocalDateTime cursor = halfStart;
-        while (cursor.isBefore(halfEnd)) {
-            LocalDateTime next = cursor.plusHours(1);
-            if (next.isAfter(halfEnd)) {
-                next = halfEnd;
-            }
+        // 內容比對：有沒修好的差異就停在這裡，不 purge
+        if (!verifier.verify(kinds, range.from(), range.to(), runId)) {
+            throw new IllegalStateException("ELT-ADAPT run " + runId + " verification found unresolved mismatches");
+        }
 
-            log.info("[ELT-ADAPT][runId={}] DAY {} {} | WITHDRAW HOUR window=[{}, {})",
-                    runId, day, label, cursor, next);
+        // 月表過期分區整個 DROP / EXCHANGE，不逐列刪
+        partitions.expire(kinds, range.from(), runId);
 
-            moved += adaptiveService.runWithdrawBatches(cursor, next, runId);
-            cursor = next;
-        }
-        return moved;
+        // 搬移全部成功才 purge（刪的時候每段還會再確認一次「已在目標」）
+        purger.purge(kinds, range.from(), range.to(), runId);
     }
-}
\ No newline at end of file
+}
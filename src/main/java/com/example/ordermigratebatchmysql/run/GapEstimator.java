@@ -0,0 +1,49 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.service.GapHistogram;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runner 規劃切窗時查缺口的地方：
+ * 有預先載入直方圖的 kind 就直接查記憶體；沒有（或窗口超出直方圖範圍）才回 DB 做一次 COUNT。
+ */
+public class GapEstimator {
+
+    private final MissingCounter liveCounter;
+    private final Map<String, GapHistogram> histograms = new HashMap<>();
+
+    public GapEstimator(MissingCounter liveCounter) {
+        this.liveCounter = liveCounter;
+    }
+
+    public void preload(String kind, GapHistogram histogram) {
+        histograms.put(kind, histogram);
+    }
+
+    public int missing(String kind, LocalDateTime start, LocalDateTime end) {
+        GapHistogram h = histograms.get(kind);
+        if (h != null && h.covers(start, end)) {
+            return h.missing(start, end);
+        }
+        return liveCounter.countMissing(kind, start, end);
+    }
+
+    /**
+     * 同 missing，但邊界不在整點時不用直方圖（它會把整小時算進來），改回 DB COUNT；遞迴二分切到一小時以內時用
+     */
+    public int missingExact(String kind, LocalDateTime start, LocalDateTime end) {
+        GapHistogram h = histograms.get(kind);
+        if (h != null && h.covers(start, end) && h.isExact(start, end)) {
+            return h.missing(start, end);
+        }
+        return liveCounter.countMissing(kind, start, end);
+    }
+
+    @FunctionalInterface
+    public interface MissingCounter {
+        int countMissing(String kind, LocalDateTime start, LocalDateTime end);
+    }
+}
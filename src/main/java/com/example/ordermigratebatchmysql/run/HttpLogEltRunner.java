@@ -1,225 +1,138 @@
 package com.example.ordermigratebatchmysql.run;
 
 import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.service.CheckpointJournal;
+import com.example.ordermigratebatchmysql.service.ChecksumVerifier;
+import com.example.ordermigratebatchmysql.service.PartitionManager;
+import com.example.ordermigratebatchmysql.service.QueryPlanGuard;
+import com.example.ordermigratebatchmysql.service.RunHistoryTuner;
+import com.example.ordermigratebatchmysql.service.SourcePurger;
+import com.example.ordermigratebatchmysql.stream.BulkLoadWindowWriter;
 import com.example.ordermigratebatchmysql.service.HttpLogEltService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
-import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Component
+@Order(0)
 @RequiredArgsConstructor
 public class HttpLogEltRunner implements CommandLineRunner {
 
     private final HttpLogEltService service;
     private final EltProperties props;
+    private final ExecutorService eltExecutor;
+    private final DataSource dataSource;
+    private final CheckpointJournal checkpointJournal;
+    private final MigrationJobRegistry jobs;
+    private final EltMetrics metrics;
+    private final BulkLoadWindowWriter bulkLoader;
+    private final PartitionManager partitions;
+    private final ChecksumVerifier verifier;
+    private final SourcePurger purger;
+    private final RunHistoryTuner historyTuner;
+    private final QueryPlanGuard planGuard;
+    private final EltRunControl control;
 
     @Override
     public void run(String... args) {
         String runId = UUID.randomUUID().toString().substring(0, 8);
         ZoneId zone = ZoneId.of(props.getZoneId());
 
-        // 整體窗口：從「上一個月 1 號 00:00」到「現在」
+        // 搬移範圍：預設「上一個月 1 號」到今天（今天還沒過完，不規劃），--from / --to / --kinds / --direction 可以改
         LocalDate today = LocalDate.now(zone);
-        LocalDate monthStart = today.withDayOfMonth(1).minusMonths(1);
-
-        LocalDateTime windowStart = monthStart.atStartOfDay();
-        LocalDateTime windowEnd = LocalDateTime.now(zone);
-
-        log.info("=== [ELT] START | window=[{}, {}) | batchSize={} maxBatches={} | runId={} ===",
-                windowStart, windowEnd, props.getBatchSize(), props.getMaxBatchesPerRun(), runId);
-
-        // 整體預估缺口（只看 order / withdraw 全窗）
-        int orderMissing = service.countMissing("order", windowStart, windowEnd);
-        int withdrawMissing = service.countMissing("withdraw", windowStart, windowEnd);
-        log.info("[ELT][runId={}] PRECHECK | orderMissing={} | withdrawMissing={}",
-                runId, orderMissing, withdrawMissing);
-
-        int orderMovedTotal = 0;
-        int withdrawMovedTotal = 0;
-
-        // 🔹把「一個月」拆成「一天一天」跑
-        for (LocalDate d = monthStart; d.isBefore(today); d = d.plusDays(1)) {
-            LocalDateTime dayStart = d.atStartOfDay();
-            LocalDateTime dayEnd = d.plusDays(1).atStartOfDay();
-
-            // 先看這一天的缺口大小
-            int dayOrderMissing = service.countMissing("order", dayStart, dayEnd);
-            int dayWithdrawMissing = service.countMissing("withdraw", dayStart, dayEnd);
-
-            // 🔍 預估這一天會需要幾個 batch
-            int estOrderBatches = (int) Math.ceil(dayOrderMissing / (double) props.getBatchSize());
-            int estWithdrawBatches = (int) Math.ceil(dayWithdrawMissing / (double) props.getBatchSize());
-
-            log.info("[ELT][runId={}] === DAY {} | window=[{}, {}) | dayOrderMissing={} (estBatches={}) | dayWithdrawMissing={} (estBatches={}) ===",
-                    runId, d, dayStart, dayEnd,
-                    dayOrderMissing, estOrderBatches,
-                    dayWithdrawMissing, estWithdrawBatches);
-
-            boolean useHalfDayByVolume =
-                    dayOrderMissing > props.getHalfDaySwitchThreshold()
-                            || dayWithdrawMissing > props.getHalfDaySwitchThreshold();
-
-            boolean useHalfDayByBatchCount =
-                    estOrderBatches > props.getMaxBatchesBeforeSplit()
-                            || estWithdrawBatches > props.getMaxBatchesBeforeSplit();
-
-            boolean useHalfDay = useHalfDayByVolume || useHalfDayByBatchCount;
-
-            if (!useHalfDay) {
-                // ✅ 正常情況：整天搬一次
-                log.info("[ELT][runId={}] DAY {} use FULL-DAY window (useHalfDayByVolume={} useHalfDayByBatchCount={})",
-                        runId, d, useHalfDayByVolume, useHalfDayByBatchCount);
-
-                int movedOrder = service.runOrderBatches(dayStart, dayEnd, runId);
-                orderMovedTotal += movedOrder;
-
-                int movedWithdraw = service.runWithdrawBatches(dayStart, dayEnd, runId);
-                withdrawMovedTotal += movedWithdraw;
-            } else {
-                // 🚨 資料量太大或預估 batch 過多：切成「半天半天」搬，降低一次查詢/交易壓力
-                LocalDateTime half1Start = dayStart;
-                LocalDateTime half1End = dayStart.plusHours(12);
-                LocalDateTime half2Start = half1End;
-                LocalDateTime half2End = dayEnd;
-
-                log.warn("[ELT][runId={}] DAY {} LARGE or MANY-BATCH day, use HALF-DAY windows | "
-                                + "threshold={} | maxBatchesBeforeSplit={} | orderMissing={} (estBatches={}) | withdrawMissing={} (estBatches={})",
-                        runId, d,
-                        props.getHalfDaySwitchThreshold(),
-                        props.getMaxBatchesBeforeSplit(),
-                        dayOrderMissing, estOrderBatches,
-                        dayWithdrawMissing, estWithdrawBatches);
-
-                // 🔹 上半天
-                int movedOrderH1 = processWindowWithHourFallback(
-                        "H1", runId, d, half1Start, half1End);
-                int movedWithdrawH1 = processWindowWithHourFallbackForWithdraw(
-                        "H1", runId, d, half1Start, half1End);
-
-                // 🔹 下半天
-                int movedOrderH2 = processWindowWithHourFallback(
-                        "H2", runId, d, half2Start, half2End);
-                int movedWithdrawH2 = processWindowWithHourFallbackForWithdraw(
-                        "H2", runId, d, half2Start, half2End);
-
-                orderMovedTotal += (movedOrderH1 + movedOrderH2);
-                withdrawMovedTotal += (movedWithdrawH1 + movedWithdrawH2);
+        RunRange range = RunRange.parse(args, jobs.enabledKinds(), today);
+
+        LocalDateTime windowStart = range.from().atStartOfDay();
+        LocalDateTime windowEnd = range.to().atStartOfDay();
+
+        List<String> kinds = range.kinds();
+
+        log.info("=== [ELT] START | window=[{}, {}) | jobs={} | {} | batchSize={} maxBatches={} | runId={} ===",
+                windowStart, windowEnd, kinds, range.direction(), props.getBatchSize(), props.getMaxBatchesPerRun(), runId);
+
+        // 月表有分區：先把窗口涵蓋的月份（再多幾個月）建好，anti-join 改成只碰窗口所在分區
+        partitions.prepare(kinds, today, runId);
+
+        // checkpoint：讀回已完成的窗口；每個月 shard 開頭連續已完成的天直接跳過，PRECHECK / 直方圖也從第一個沒完成的天開始
+        CheckpointJournal.Snapshot checkpoints = checkpointJournal.snapshot(kinds, windowStart, windowEnd);
+        MonthShardPlanner shards = new MonthShardPlanner("ELT", runId, range, checkpoints);
+        int shardParallelism = props.isParallelEnabled() ? props.getMonthShardParallelism() : 1;
+
+        // 整體預估缺口（每個 job 全範圍）
+        // 直方圖模式：每個 shard 每小時缺口一次查完，後面 day / half / hour 的切分都查記憶體
+        Map<String, Integer> missingByKind = shards.precheck(service::countMissing,
+                props.isGapHistogramEnabled() ? service::loadGapHistogram : null);
+        log.info("[ELT][runId={}] PRECHECK | shards={} | missing={}", runId, shards.shardCount(), missingByKind);
+        missingByKind.forEach(metrics::expectGap);
+        control.runStarted(runId, missingByKind);
+
+        WindowDispatcher dispatcher = new WindowDispatcher("ELT", runId, eltExecutor,
+                props.isParallelEnabled(),
+                props.getMaxConcurrentWindowsPerKind(),
+                WindowDispatcher.connectionBudget(dataSource, props.getWorkerThreads(), shardParallelism))
+                .withCheckpoints(checkpointJournal, checkpoints)
+                .withControl(control);
+
+        // 🔹範圍依自然月切成 shard，每個 shard 一天一天規劃（同一天的各個 job 依序送出）；
+        // 並行模式下幾個 shard 同時規劃，窗口全部進同一個 dispatcher，同時跑的窗口數仍受連線預算限制
+        shards.planAll(gaps -> {
+            WindowPlanner planner = new WindowPlanner("ELT", runId, props, gaps, dispatcher,
+                    service::runJobBatches, true)
+                    .withThresholds(kind -> planGuard.adjust(kind, historyTuner.thresholds(kind, service.batchMode(kind))));
+            if (bulkLoader.isEnabled()) {
+                // 預估缺口夠大的窗口改走 LOAD DATA LOCAL INFILE
+                planner.withBulkLoad((kind, start, end, id) -> bulkLoader.loadWindow(jobs.get(kind), start, end, id),
+                        props.getBulkLoad().getThresholdRows());
             }
-        }
+            if (props.isBisectEnabled()) {
+                // 不再固定三級：遞迴對半切到每個窗口的缺口都放得下，再把安靜的窗口併回去
+                planner.withBisect(props.getBisectMinMinutes());
+            }
+            return planner;
+        }, shardParallelism, control::isCancelled);
 
-        log.info("=== [ELT] DONE | runId={} | orderMoved={} / {} | withdrawMoved={} / {} ===",
-                runId, orderMovedTotal, orderMissing, withdrawMovedTotal, withdrawMissing);
-    }
+        WindowDispatcher.Summary summary = dispatcher.awaitAll();
+        control.runFinished();
 
-    /**
-     * 半天窗口（order）：「如果這半天缺口太大」或「預估批次數太多」就切成一小時一小時搬，否則整個半天一次搬完。
-     */
-    private int processWindowWithHourFallback(String label,
-                                              String runId,
-                                              LocalDate day,
-                                              LocalDateTime winStart,
-                                              LocalDateTime winEnd) {
-
-        int missing = service.countMissing("order", winStart, winEnd);
-        int estBatches = (int) Math.ceil(missing / (double) props.getBatchSize());
-
-        log.info("[ELT][order][runId={}] DAY {} {} | window=[{}, {}) | missing={} (estBatches={})",
-                runId, day, label, winStart, winEnd, missing, estBatches);
-
-        boolean useHourlyByVolume = missing > props.getHourSwitchThreshold();
-        boolean useHourlyByBatchCount = estBatches > props.getMaxBatchesBeforeSplit();
-        boolean useHourly = useHourlyByVolume || useHourlyByBatchCount;
-
-        if (!useHourly) {
-            // ✅ 半天一次就好
-            log.info("[ELT][order][runId={}] DAY {} {} use HALF-DAY window directly "
-                            + "(useHourlyByVolume={} useHourlyByBatchCount={})",
-                    runId, day, label, useHourlyByVolume, useHourlyByBatchCount);
-            return service.runOrderBatches(winStart, winEnd, runId);
-        }
+        log.info("=== [ELT] DONE | runId={} | moved/missing={} | windows={} | skipped={} | failed={} | slowestWindow={} ms | parallel={} ===",
+                runId, summary.movedVersus(missingByKind),
+                summary.windowCount(), summary.getSkippedCount(), summary.getFailures().size(), summary.getSlowestWindowMs(),
+                dispatcher.isParallel());
 
-        // 🚨 半天還是太大或預估批次過多：切成一小時一小時搬
-        log.warn("[ELT][order][runId={}] DAY {} {} VERY LARGE or MANY-BATCH half-day, use HOURLY windows | "
-                        + "hourThreshold={} | maxBatchesBeforeSplit={} | missing={} (estBatches={})",
-                runId, day, label,
-                props.getHourSwitchThreshold(),
-                props.getMaxBatchesBeforeSplit(),
-                missing, estBatches);
-
-        int totalMoved = 0;
-        for (LocalDateTime t = winStart; t.isBefore(winEnd); t = t.plusHours(1)) {
-            LocalDateTime hourStart = t;
-            LocalDateTime hourEnd = t.plusHours(1);
-            if (hourEnd.isAfter(winEnd)) {
-                hourEnd = winEnd;
-            }
+        planGuard.logSummary("ELT", runId);
 
-            log.info("[ELT][order][runId={}] DAY {} {} HOUR | window=[{}, {})",
-                    runId, day, label, hourStart, hourEnd);
+        summary.throwIfFailed("ELT", runId);
 
-            int moved = service.runOrderBatches(hourStart, hourEnd, runId);
-            totalMoved += moved;
+        if (control.isCancelled()) {
+            // 手動取消：資料還沒搬齊，比對 / 分區過期 / purge 都不做
+            log.warn("=== [ELT] CANCELLED | runId={} | verify / partition expire / purge skipped ===", runId);
+            return;
         }
-        return totalMoved;
-    }
 
-    /**
-     * 半天窗口（withdraw）：「如果這半天缺口太大」或「預估批次數太多」就切成一小時一小時搬，否則整個半天一次搬完。
-     */
-    private int processWindowWithHourFallbackForWithdraw(String label,
-                                                         String runId,
-                                                         LocalDate day,
-                                                         LocalDateTime winStart,
-                                                         LocalDateTime winEnd) {
-
-        int missing = service.countMissing("withdraw", winStart, winEnd);
-        int estBatches = (int) Math.ceil(missing / (double) props.getBatchSize());
-
-        log.info("[ELT][withdraw][runId={}] DAY {} {} | window=[{}, {}) | missing={} (estBatches={})",
-                runId, day, label, winStart, winEnd, missing, estBatches);
-
-        boolean useHourlyByVolume = missing > props.getHourSwitchThreshold();
-        boolean useHourlyByBatchCount = estBatches > props.getMaxBatchesBeforeSplit();
-        boolean useHourly = useHourlyByVolume || useHourlyByBatchCount;
-
-        if (!useHourly) {
-            // ✅ 半天一次就好
-            log.info("[ELT][withdraw][runId={}] DAY {} {} use HALF-DAY window directly "
-                            + "(useHourlyByVolume={} useHourlyByBatchCount={})",
-                    runId, day, label, useHourlyByVolume, useHourlyByBatchCount);
-            return service.runWithdrawBatches(winStart, winEnd, runId);
+        // 內容比對：有沒修好的差異就停在這裡，不 purge
+        if (!verifier.verify(kinds, range.from(), range.to(), runId)) {
+            throw new IllegalStateException("ELT run " + runId + " verification found unresolved mismatches");
         }
 
-        // 🚨 半天還是太大或預估批次過多：切成一小時一小時搬
-        log.warn("[ELT][withdraw][runId={}] DAY {} {} VERY LARGE or MANY-BATCH half-day, use HOURLY windows | "
-                        + "hourThreshold={} | maxBatchesBeforeSplit={} | missing={} (estBatches={})",
-                runId, day, label,
-                props.getHourSwitchThreshold(),
-                props.getMaxBatchesBeforeSplit(),
-                missing, estBatches);
-
-        int totalMoved = 0;
-        for (LocalDateTime t = winStart; t.isBefore(winEnd); t = t.plusHours(1)) {
-            LocalDateTime hourStart = t;
-            LocalDateTime hourEnd = t.plusHours(1);
-            if (hourEnd.isAfter(winEnd)) {
-                hourEnd = winEnd;
-            }
-
-            log.info("[ELT][withdraw][runId={}] DAY {} {} HOUR | window=[{}, {})",
-                    runId, day, label, hourStart, hourEnd);
+        // 月表過期分區整個 DROP / EXCHANGE，不逐列刪
+        partitions.expire(kinds, range.from(), runId);
 
-            int moved = service.runWithdrawBatches(hourStart, hourEnd, runId);
-            totalMoved += moved;
-        }
-        return totalMoved;
+        // 搬移全部成功才 purge（刪的時候每段還會再確認一次「已在目標」）
+        purger.purge(kinds, range.from(), range.to(), runId);
     }
-}
\ No newline at end of file
+}
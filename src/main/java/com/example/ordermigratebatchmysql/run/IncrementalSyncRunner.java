@@ -0,0 +1,139 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.model.HttpLogKey;
+import com.example.ordermigratebatchmysql.service.IncrementalSyncService;
+import com.example.ordermigratebatchmysql.service.PartitionManager;
+import com.example.ordermigratebatchmysql.service.QueryPlanGuard;
+import com.example.ordermigratebatchmysql.service.RetryStats;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 常駐增量同步（elt-sync profile）：排在一次性的 HttpLogEltRunner（@Order(0)）/ AdaptiveHttpLogEltRunner（@Order(1)）之後
+ * （它們先把上個月到現在的缺口補齊），之後不結束，每個 kind 從高水位往後小批搬新資料，讓月表只落後幾秒。
+ * - 有一批是滿的（還在追）就不睡，直接下一輪，只看負載節流
+ * - 每 reconcileIntervalSeconds 對高水位前 reconcileWindowMinutes 做一次 anti-join 補漏
+ * - 換日時再跑一次 PartitionManager.prepare，跨月前分區就建好
+ * 收到 SIGTERM（context 關閉）或控制端點 cancel 時在下一輪開頭停下來；pause 時停在輪與輪之間。
+ */
+@Slf4j
+@Component
+@Profile("elt-sync")
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class IncrementalSyncRunner implements CommandLineRunner {
+
+    private final IncrementalSyncService syncService;
+    private final EltProperties props;
+    private final MigrationJobRegistry jobs;
+    private final PartitionManager partitions;
+    private final LoadAwareThrottle throttle;
+    private final EltMetrics metrics;
+    private final EltRunControl control;
+    private final QueryPlanGuard planGuard;
+
+    private volatile boolean running = true;
+
+    @Override
+    public void run(String... args) {
+        if (props.getStream().isEnabled()) {
+            throw new IllegalStateException("elt-sync needs the target table on the same instance (elt.stream.enabled=true)");
+        }
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        ZoneId zone = ZoneId.of(props.getZoneId());
+        EltProperties.Sync cfg = props.getSync();
+        List<String> kinds = jobs.enabledKinds();
+
+        LocalDate preparedFor = LocalDate.now(zone);
+        partitions.prepare(kinds, preparedFor, runId);
+
+        Map<String, HttpLogKey> watermarks = new LinkedHashMap<>();
+        for (String kind : kinds) {
+            watermarks.put(kind, syncService.initialWatermark(kind, LocalDateTime.now(zone)));
+        }
+        log.info("=== [ELT-SYNC] START | jobs={} | watermarks={} | poll={} ms | safetyLag={} s | batchSize={} | reconcile every {} s over {} min | runId={} ===",
+                kinds, watermarks, cfg.getPollIntervalMs(), cfg.getSafetyLagSeconds(), cfg.getBatchSize(),
+                cfg.getReconcileIntervalSeconds(), cfg.getReconcileWindowMinutes(), runId);
+
+        RetryStats retryStats = new RetryStats();
+        Map<String, Long> movedByKind = new LinkedHashMap<>();
+        LocalDateTime nextReconcile = LocalDateTime.now(zone).plusSeconds(cfg.getReconcileIntervalSeconds());
+
+        while (running && control.awaitIfPaused("sync", runId)) {
+            LocalDateTime now = LocalDateTime.now(zone);
+            LocalDateTime until = now.minusSeconds(cfg.getSafetyLagSeconds());
+
+            boolean behind = false;
+            for (String kind : kinds) {
+                IncrementalSyncService.SyncStep step =
+                        syncService.copyDelta(kind, watermarks.get(kind), until, runId, retryStats);
+                watermarks.put(kind, step.watermark());
+                movedByKind.merge(kind, (long) step.moved(), Long::sum);
+                behind |= !step.caughtUp();
+                metrics.recordSyncLag(kind, Duration.between(step.watermark().getSubmitTime(), now).getSeconds());
+            }
+
+            if (!now.isBefore(nextReconcile)) {
+                for (String kind : kinds) {
+                    LocalDateTime to = watermarks.get(kind).getSubmitTime();
+                    int fixed = syncService.reconcile(kind, to.minusMinutes(cfg.getReconcileWindowMinutes()), to, runId, retryStats);
+                    log.info("[ELT-SYNC][{}][runId={}] RECONCILE | tail=[{}, {}) | fixed={} | watermark={} | moved={} | {}",
+                            kind, runId, to.minusMinutes(cfg.getReconcileWindowMinutes()), to, fixed,
+                            watermarks.get(kind), movedByKind.get(kind), retryStats);
+                }
+                nextReconcile = now.plusSeconds(cfg.getReconcileIntervalSeconds());
+            }
+
+            if (!now.toLocalDate().equals(preparedFor)) {
+                preparedFor = now.toLocalDate();
+                partitions.prepare(kinds, preparedFor, runId);
+            }
+
+            if (behind) {
+                if (throttle.pauseAfterBatch("sync", runId) == null) {
+                    break;
+                }
+            } else if (!sleep(cfg.getPollIntervalMs())) {
+                break;
+            }
+        }
+
+        log.info("=== [ELT-SYNC] STOP | runId={} | watermarks={} | moved={} | {} ===", runId, watermarks, movedByKind, retryStats);
+        planGuard.logSummary("ELT-SYNC", runId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    private static boolean sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.service.CheckpointJournal;
+import com.example.ordermigratebatchmysql.service.GapHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * 月 shard 規劃：RunRange 每個自然月一個 shard，各自一份 GapEstimator（直方圖只載該月）和 WindowPlanner，
+ * 全部送進同一個 WindowDispatcher，所以實際同時跑的窗口數仍受全域連線預算限制。
+ * 並行時每個 shard 一條規劃執行緒（最多 parallelism 條），卡在 dispatcher 額度上就等於 backpressure。
+ */
+@Slf4j
+public class MonthShardPlanner {
+
+    private final String tag;
+    private final String runId;
+    private final RunRange range;
+    private final CheckpointJournal.Snapshot checkpoints;
+    private final List<ShardPlan> shards = new ArrayList<>();
+
+    public MonthShardPlanner(String tag, String runId, RunRange range, CheckpointJournal.Snapshot checkpoints) {
+        this.tag = tag;
+        this.runId = runId;
+        this.range = range;
+        this.checkpoints = checkpoints;
+        for (RunRange.Shard shard : range.monthShards()) {
+            shards.add(new ShardPlan(shard, firstUnsettled(shard)));
+        }
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * PRECHECK：每個 shard 建自己的 GapEstimator（histograms != null 就預載該 shard 的每小時直方圖），
+     * 回傳各 kind 整個範圍的預估缺口
+     */
+    public Map<String, Integer> precheck(GapEstimator.MissingCounter counter, HistogramLoader histograms) {
+        Map<String, Integer> missingByKind = new LinkedHashMap<>();
+        range.kinds().forEach(kind -> missingByKind.put(kind, 0));
+        for (ShardPlan plan : shards) {
+            plan.gaps = new GapEstimator(counter);
+            if (plan.planFrom == null) {
+                continue;
+            }
+            LocalDateTime start = plan.planFrom.atStartOfDay();
+            LocalDateTime end = plan.shard.to().atStartOfDay();
+            for (String kind : range.kinds()) {
+                if (histograms != null) {
+                    plan.gaps.preload(kind, histograms.load(kind, start, end));
+                }
+                missingByKind.merge(kind, plan.gaps.missing(kind, start, end),
+                        (a, b) -> (int) Math.min(Integer.MAX_VALUE, (long) a + b));
+            }
+        }
+        return missingByKind;
+    }
+
+    /**
+     * 規劃並送出所有 shard；parallelism <= 1（或 dispatcher 不是並行模式）就依序一個一個規劃
+     *
+     * @param plannerFactory 用 shard 的 GapEstimator 組一個 WindowPlanner
+     */
+    public void planAll(Function<GapEstimator, WindowPlanner> plannerFactory, int parallelism, BooleanSupplier cancelled) {
+        if (parallelism <= 1 || shards.size() <= 1) {
+            for (ShardPlan plan : shards) {
+                planShard(plan, plannerFactory.apply(plan.gaps), cancelled);
+            }
+            return;
+        }
+
+        ThreadFactory tf = r -> {
+            Thread t = new Thread(r);
+            t.setName("elt-shard-" + t.getId());
+            t.setDaemon(true);
+            return t;
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, shards.size()), tf);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ShardPlan plan : shards) {
+                futures.add(pool.submit(() -> planShard(plan, plannerFactory.apply(plan.gaps), cancelled)));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while planning month shards", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void planShard(ShardPlan plan, WindowPlanner planner, BooleanSupplier cancelled) {
+        if (plan.planFrom == null) {
+            log.info("[{}][runId={}] SHARD {} SKIP | already DONE in checkpoint", tag, runId, plan.shard);
+            return;
+        }
+        log.info("[{}][runId={}] SHARD {} START | planFrom={} | {} | thread={}",
+                tag, runId, plan.shard, plan.planFrom, range.direction(), Thread.currentThread().getName());
+
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate d = plan.planFrom; d.isBefore(plan.shard.to()); d = d.plusDays(1)) {
+            days.add(d);
+        }
+        if (range.newestFirst()) {
+            Collections.reverse(days);
+        }
+
+        for (LocalDate d : days) {
+            if (cancelled.getAsBoolean()) {
+                log.warn("[{}][runId={}] SHARD {} stopped at {} | run cancelled", tag, runId, plan.shard, d);
+                return;
+            }
+            if (checkpoints.isSettledForAll(range.kinds(), d.atStartOfDay(), d.plusDays(1).atStartOfDay())) {
+                log.info("[{}][runId={}] DAY {} SKIP | already DONE in checkpoint", tag, runId, d);
+                continue;
+            }
+            for (String kind : range.kinds()) {
+                planner.planDay(kind, d);
+            }
+        }
+    }
+
+    /**
+     * shard 開頭連續已完成的天直接跳過，PRECHECK / 直方圖也從第一個沒完成的天開始；整個 shard 都完成回傳 null
+     */
+    private LocalDate firstUnsettled(RunRange.Shard shard) {
+        LocalDate d = shard.from();
+        while (d.isBefore(shard.to())
+                && checkpoints.isSettledForAll(range.kinds(), d.atStartOfDay(), d.plusDays(1).atStartOfDay())) {
+            d = d.plusDays(1);
+        }
+        if (d.isAfter(shard.from())) {
+            log.info("[{}][runId={}] SHARD {} RESUME from {} | days [{}, {}) already DONE in checkpoint",
+                    tag, runId, shard, d, shard.from(), d);
+        }
+        return d.isBefore(shard.to()) ? d : null;
+    }
+
+    private static class ShardPlan {
+        final RunRange.Shard shard;
+        final LocalDate planFrom;
+        GapEstimator gaps;
+
+        ShardPlan(RunRange.Shard shard, LocalDate planFrom) {
+            this.shard = shard;
+            this.planFrom = planFrom;
+        }
+    }
+
+    /**
+     * 兩個 service 的 loadGapHistogram
+     */
+    @FunctionalInterface
+    public interface HistogramLoader {
+        GapHistogram load(String kind, LocalDateTime start, LocalDateTime end);
+    }
+}
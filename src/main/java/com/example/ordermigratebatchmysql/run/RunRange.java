@@ -0,0 +1,112 @@
+package com.example.ordermigratebatchmysql.run;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 一次 run 要搬的範圍（Runner 的命令列參數）：
+ * <pre>
+ * --from=2024-01-01          起日（含），預設上個月 1 號
+ * --to=2025-01-01            迄日（不含），預設今天；今天還在寫入，最多只到今天
+ * --kinds=order,withdraw     只跑這幾個 job，預設全部 enabled 的
+ * --direction=oldest-first   oldest-first（預設）/ newest-first：shard 與 shard 內每天的順序
+ * </pre>
+ * 範圍依自然月切成 shard，交給 MonthShardPlanner。
+ */
+public record RunRange(LocalDate from, LocalDate to, List<String> kinds, boolean newestFirst) {
+
+    public static RunRange parse(String[] args, List<String> enabledKinds, LocalDate today) {
+        LocalDate from = today.withDayOfMonth(1).minusMonths(1);
+        LocalDate to = today;
+        List<String> kinds = enabledKinds;
+        boolean newestFirst = false;
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                continue;
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1).trim();
+            switch (key) {
+                case "from" -> from = date(key, value);
+                case "to" -> to = date(key, value);
+                case "kinds" -> kinds = kinds(value, enabledKinds);
+                case "direction" -> newestFirst = switch (value.toLowerCase(Locale.ROOT)) {
+                    case "newest-first" -> true;
+                    case "oldest-first" -> false;
+                    default -> throw new IllegalArgumentException(
+                            "--direction must be newest-first or oldest-first, got: " + value);
+                };
+                default -> {
+                    // 其他參數（spring.* 之類）不歸這裡管
+                }
+            }
+        }
+
+        if (to.isAfter(today)) {
+            throw new IllegalArgumentException("--to=" + to + " is after today (" + today + ")");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("--from=" + from + " must be before --to=" + to);
+        }
+        return new RunRange(from, to, kinds, newestFirst);
+    }
+
+    /**
+     * 依自然月切 shard（頭尾可能不滿一個月），順序依 direction
+     */
+    public List<Shard> monthShards() {
+        List<Shard> shards = new ArrayList<>();
+        for (LocalDate start = from; start.isBefore(to); ) {
+            LocalDate next = start.withDayOfMonth(1).plusMonths(1);
+            LocalDate end = next.isAfter(to) ? to : next;
+            shards.add(new Shard(start, end));
+            start = end;
+        }
+        if (newestFirst) {
+            Collections.reverse(shards);
+        }
+        return shards;
+    }
+
+    public String direction() {
+        return newestFirst ? "newest-first" : "oldest-first";
+    }
+
+    private static LocalDate date(String key, String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("--" + key + " must be yyyy-MM-dd, got: " + value, e);
+        }
+    }
+
+    private static List<String> kinds(String value, List<String> enabledKinds) {
+        List<String> kinds = Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        for (String kind : kinds) {
+            if (!enabledKinds.contains(kind)) {
+                throw new IllegalArgumentException("--kinds: " + kind + " is not an enabled job " + enabledKinds);
+            }
+        }
+        if (kinds.isEmpty()) {
+            throw new IllegalArgumentException("--kinds is empty");
+        }
+        return kinds;
+    }
+
+    /**
+     * 一個月（或頭尾不滿一個月）的 [from, to)
+     */
+    public record Shard(LocalDate from, LocalDate to) {
+
+        @Override
+        public String toString() {
+            return "[" + from + ", " + to + ")";
+        }
+    }
+}
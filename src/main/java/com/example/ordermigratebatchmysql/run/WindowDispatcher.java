@@ -0,0 +1,335 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.service.CheckpointJournal;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 窗口派工：Runner 規劃出來的 day / half-day / hour 窗口都從這裡送出去。
+ * - parallel=false：直接在呼叫端執行，行為跟以前一樣（出錯就整個 run 中斷）
+ * - parallel=true ：丟進 eltExecutor 並行跑；同一個 kind 同時最多 perKindLimit 個窗口，
+ *   全部加總不超過 connectionBudget（避免把 Hikari 連線池吃光）；單一窗口失敗只記錄，不影響其他窗口
+ * 有掛 checkpoint 時：已沉澱完成的窗口直接跳過，其他窗口開始記 RUNNING、搬完記 DONE
+ * 有掛 EltRunControl 時：暫停中的窗口等到 resume 才開始，cancel 之後不再開新窗口、被中斷的窗口不記 DONE
+ */
+@Slf4j
+public class WindowDispatcher {
+
+    private final String tag;
+    private final String runId;
+    private final ExecutorService executor;
+    private final boolean parallel;
+    private final int perKindLimit;
+    private final int connectionBudget;
+    private final Object globalGate = new Object();
+    private int inFlight;
+    private IntSupplier parallelismHint;
+    private final Map<String, Semaphore> kindPermits = new ConcurrentHashMap<>();
+    private final List<Future<?>> futures = Collections.synchronizedList(new ArrayList<>());
+    private final List<WindowResult> results = Collections.synchronizedList(new ArrayList<>());
+
+    private CheckpointJournal journal;
+    private CheckpointJournal.Snapshot checkpoints;
+    private EltRunControl control;
+
+    public WindowDispatcher(String tag,
+                            String runId,
+                            ExecutorService executor,
+                            boolean parallel,
+                            int perKindLimit,
+                            int connectionBudget) {
+        this.tag = tag;
+        this.runId = runId;
+        this.executor = executor;
+        this.parallel = parallel;
+        this.perKindLimit = Math.max(1, perKindLimit);
+        this.connectionBudget = Math.max(1, connectionBudget);
+        this.parallelismHint = () -> this.connectionBudget;
+    }
+
+    /**
+     * 並行數改成動態：每次派工前讀 hint（例如 AIMD 控制器的建議值），實際上限仍不超過 connectionBudget
+     */
+    public WindowDispatcher withParallelismHint(IntSupplier hint) {
+        this.parallelismHint = hint;
+        return this;
+    }
+
+    /**
+     * 掛上 checkpoint：submit 時跳過已完成窗口，執行時寫 RUNNING / DONE
+     */
+    public WindowDispatcher withCheckpoints(CheckpointJournal journal, CheckpointJournal.Snapshot snapshot) {
+        this.journal = journal;
+        this.checkpoints = snapshot;
+        return this;
+    }
+
+    /**
+     * 掛上控制端點：pause / cancel，parallelism 覆蓋值優先於 hint
+     */
+    public WindowDispatcher withControl(EltRunControl control) {
+        this.control = control;
+        return this;
+    }
+
+    /**
+     * 送出一個窗口；並行模式下若該 kind 或全域額度已滿，會卡在這裡等（順便對規劃端做 backpressure）
+     */
+    public void submit(String kind, LocalDateTime start, LocalDateTime end, Supplier<WindowCopy> work) {
+        if (control != null && control.isCancelled()) {
+            log.info("[{}][{}][runId={}] SKIP window=[{}, {}) | run cancelled", tag, kind, runId, start, end);
+            results.add(new WindowResult(kind, start, end, 0, 0, true, null));
+            return;
+        }
+        if (checkpoints != null && checkpoints.isSettled(kind, start, end)) {
+            log.info("[{}][{}][runId={}] SKIP window=[{}, {}) | already DONE in checkpoint", tag, kind, runId, start, end);
+            results.add(new WindowResult(kind, start, end, 0, 0, true, null));
+            return;
+        }
+
+        if (!parallel) {
+            results.add(execute(kind, start, end, work));
+            return;
+        }
+
+        Semaphore kindSem = kindPermits.computeIfAbsent(kind, k -> new Semaphore(perKindLimit));
+        kindSem.acquireUninterruptibly();
+        acquireGlobal();
+        try {
+            futures.add(executor.submit(() -> {
+                try {
+                    results.add(execute(kind, start, end, work));
+                } catch (Throwable t) {
+                    // execute() 只把 RuntimeException 收成結果；Error（OOM / StackOverflow ...）也要記成失敗窗口，
+                    // 不然 throwIfFailed 看不到，run 會繼續往 verify / expire / purge 走
+                    results.add(new WindowResult(kind, start, end, 0, 0, false, t));
+                    throw t;
+                } finally {
+                    releaseGlobal();
+                    kindSem.release();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            releaseGlobal();
+            kindSem.release();
+            throw e;
+        }
+    }
+
+    /** 目前允許同時跑的窗口數 */
+    public int currentLimit() {
+        Integer override = control != null ? control.getParallelism() : null;
+        return Math.max(1, Math.min(connectionBudget, override != null ? override : parallelismHint.getAsInt()));
+    }
+
+    private void acquireGlobal() {
+        boolean interrupted = false;
+        synchronized (globalGate) {
+            // 上限可能隨時被調整，所以定時醒來重看一次
+            while (inFlight >= currentLimit()) {
+                try {
+                    globalGate.wait(200);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            inFlight++;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void releaseGlobal() {
+        synchronized (globalGate) {
+            inFlight--;
+            globalGate.notifyAll();
+        }
+    }
+
+    /**
+     * 等所有已送出的窗口跑完，彙總結果
+     */
+    public Summary awaitAll() {
+        List<Future<?>> pending;
+        synchronized (futures) {
+            pending = new ArrayList<>(futures);
+        }
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for ELT windows", e);
+            } catch (ExecutionException e) {
+                // 失敗已經在 task 裡記成 WindowResult，這裡只留 log
+                log.error("[{}][runId={}] window task crashed", tag, runId, e.getCause());
+            }
+        }
+        futures.clear();
+        synchronized (results) {
+            return new Summary(new ArrayList<>(results));
+        }
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    private WindowResult execute(String kind, LocalDateTime start, LocalDateTime end, Supplier<WindowCopy> work) {
+        if (control != null && !control.awaitIfPaused(kind, runId)) {
+            log.info("[{}][{}][runId={}] SKIP window=[{}, {}) | run cancelled", tag, kind, runId, start, end);
+            return new WindowResult(kind, start, end, 0, 0, true, null);
+        }
+        long t0 = System.currentTimeMillis();
+        if (control != null) {
+            control.windowStarted(kind, start, end);
+        }
+        try {
+            if (journal != null) {
+                journal.markRunning(kind, start, end, runId);
+            }
+            WindowCopy copy = work.get();
+            int moved = copy.moved();
+            long cost = System.currentTimeMillis() - t0;
+            if (control != null && control.isCancelled()) {
+                // 可能只搬了一部分：不記 DONE，下次 run 重新搬這個窗口（搬移本身是冪等的）
+                log.warn("[{}][{}][runId={}] WINDOW CANCELLED | window=[{}, {}) | moved={} | cost={} ms | not checkpointed",
+                        tag, kind, runId, start, end, moved, cost);
+                return new WindowResult(kind, start, end, moved, cost, false, null);
+            }
+            if (!copy.complete()) {
+                // 撞到 maxBatchesPerRun 或被節流喊停：窗口還有缺口，留著 RUNNING，下次 run 從頭再補
+                log.warn("[{}][{}][runId={}] WINDOW PARTIAL | window=[{}, {}) | moved={} | cost={} ms | left RUNNING, next run redoes it",
+                        tag, kind, runId, start, end, moved, cost);
+                return new WindowResult(kind, start, end, moved, cost, false, null);
+            }
+            if (journal != null) {
+                journal.markDone(kind, start, end, runId, moved, cost);
+            }
+            if (parallel) {
+                log.info("[{}][{}][runId={}] WINDOW DONE | window=[{}, {}) | moved={} | cost={} ms | thread={}",
+                        tag, kind, runId, start, end, moved, cost, Thread.currentThread().getName());
+            }
+            return new WindowResult(kind, start, end, moved, cost, false, null);
+        } catch (RuntimeException e) {
+            if (!parallel) {
+                throw e;
+            }
+            long cost = System.currentTimeMillis() - t0;
+            log.error("[{}][{}][runId={}] WINDOW FAILED | window=[{}, {}) | cost={} ms | error={}",
+                    tag, kind, runId, start, end, cost, e.toString(), e);
+            return new WindowResult(kind, start, end, 0, cost, false, e);
+        } finally {
+            if (control != null) {
+                control.windowFinished(kind, start, end);
+            }
+        }
+    }
+
+    /**
+     * 並行窗口數的連線上限：連線池大小扣掉 1 條留給 Runner 做規劃（countMissing），
+     * 再跟 workerThreads 取小；非 Hikari 的 DataSource 就只看 workerThreads
+     */
+    public static int connectionBudget(DataSource dataSource, int workerThreads) {
+        return connectionBudget(dataSource, workerThreads, 1);
+    }
+
+    /**
+     * 同上，但多條規劃執行緒（月 shard 並行）各留 1 條連線
+     */
+    public static int connectionBudget(DataSource dataSource, int workerThreads, int plannerThreads) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            return Math.max(1, Math.min(workerThreads, hikari.getMaximumPoolSize() - Math.max(1, plannerThreads)));
+        }
+        return Math.max(1, workerThreads);
+    }
+
+    /**
+     * 單一窗口的結果
+     */
+    public record WindowResult(String kind,
+                               LocalDateTime start,
+                               LocalDateTime end,
+                               int moved,
+                               long costMs,
+                               boolean skipped,
+                               Throwable error) {
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * 一次 run 的彙總（給 DONE log 用）
+     */
+    @Getter
+    public static class Summary {
+        private final List<WindowResult> results;
+        private final Map<String, Integer> movedByKind = new LinkedHashMap<>();
+        private final List<WindowResult> failures = new ArrayList<>();
+        private long slowestWindowMs;
+        private int skippedCount;
+
+        Summary(List<WindowResult> results) {
+            this.results = results;
+            for (WindowResult r : results) {
+                movedByKind.merge(r.kind(), r.moved(), Integer::sum);
+                if (r.failed()) {
+                    failures.add(r);
+                }
+                if (r.skipped()) {
+                    skippedCount++;
+                }
+                slowestWindowMs = Math.max(slowestWindowMs, r.costMs());
+            }
+        }
+
+        public int movedOf(String kind) {
+            return movedByKind.getOrDefault(kind, 0);
+        }
+
+        public int windowCount() {
+            return results.size();
+        }
+
+        /** DONE log 用：{order=搬了/缺口, withdraw=...} */
+        public Map<String, String> movedVersus(Map<String, Integer> missingByKind) {
+            Map<String, String> out = new LinkedHashMap<>();
+            missingByKind.forEach((kind, missing) -> out.put(kind, movedOf(kind) + "/" + missing));
+            return out;
+        }
+
+        /** 有失敗窗口就逐一列出，並讓整個 run 以失敗結束 */
+        public void throwIfFailed(String tag, String runId) {
+            if (failures.isEmpty()) {
+                return;
+            }
+            for (WindowResult f : failures) {
+                log.error("[{}][{}][runId={}] FAILED window=[{}, {}) | error={}",
+                        tag, f.kind(), runId, f.start(), f.end(), f.error().toString());
+            }
+            throw new IllegalStateException(tag + " run " + runId + " finished with "
+                    + failures.size() + " failed window(s)");
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.service.SplitThresholds;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 切窗規劃（兩個 Runner 共用）：一天一天看每個 job 的缺口，決定「整天 / 半天 / 每小時」，
+ * 規劃出來的窗口都送到 WindowDispatcher。每個 job 各自判斷，大表切細不會拖著小表一起切。
+ */
+@Slf4j
+public class WindowPlanner {
+
+    private final String tag;
+    private final String runId;
+    private final GapEstimator gaps;
+    private final WindowDispatcher dispatcher;
+    private final WindowWork work;
+
+    /** 大窗口改走的搬法（LOAD DATA）；null = 不用 */
+    private WindowWork bulkWork;
+    private int bulkThresholdRows;
+
+    /** 遞迴二分的最小窗口（分鐘）；0 = 用「整天 / 半天 / 每小時」三級 */
+    private int bisectMinMinutes;
+
+    /** 每個 kind 的切窗門檻；預設是 elt.* 的靜態值 */
+    private Function<String, SplitThresholds> thresholds;
+
+    /** 除了缺口量，也看「預估批次數」是否超過 maxBatchesBeforeSplit（HttpLogEltRunner 的規則） */
+    private final boolean splitByBatchCount;
+
+    public WindowPlanner(String tag,
+                         String runId,
+                         EltProperties props,
+                         GapEstimator gaps,
+                         WindowDispatcher dispatcher,
+                         WindowWork work,
+                         boolean splitByBatchCount) {
+        this.tag = tag;
+        this.runId = runId;
+        this.gaps = gaps;
+        this.dispatcher = dispatcher;
+        this.work = work;
+        this.splitByBatchCount = splitByBatchCount;
+        SplitThresholds fixed = SplitThresholds.of(props);
+        this.thresholds = kind -> fixed;
+    }
+
+    /**
+     * 切窗門檻改用 RunHistoryTuner 依歷史學到的值（學不到的 kind 由 tuner 自己退回靜態值）
+     */
+    public WindowPlanner withThresholds(Function<String, SplitThresholds> thresholds) {
+        this.thresholds = thresholds;
+        return this;
+    }
+
+    /**
+     * 預估缺口 >= thresholdRows 的窗口改用 bulkWork 搬（例如 LOAD DATA LOCAL INFILE）
+     */
+    public WindowPlanner withBulkLoad(WindowWork bulkWork, int thresholdRows) {
+        this.bulkWork = bulkWork;
+        this.bulkThresholdRows = thresholdRows;
+        return this;
+    }
+
+    /**
+     * 改用遞迴二分切窗（elt.bisect-enabled），最細切到 minMinutes 分鐘
+     */
+    public WindowPlanner withBisect(int minMinutes) {
+        this.bisectMinMinutes = Math.max(1, minMinutes);
+        return this;
+    }
+
+    /**
+     * 規劃某個 job 的某一天：缺口不大 => 整天一個窗口；太大或預估批次太多 => 切半天再看要不要切每小時
+     */
+    public void planDay(String kind, LocalDate day) {
+        if (bisectMinMinutes > 0) {
+            planBisect(kind, day);
+            return;
+        }
+        LocalDateTime dayStart = day.atStartOfDay();
+        LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+
+        SplitThresholds limits = thresholds.apply(kind);
+        int missing = gaps.missing(kind, dayStart, dayEnd);
+        int estBatches = estBatches(missing, limits);
+
+        boolean useHalfDayByVolume = missing > limits.halfDaySwitchThreshold();
+        boolean useHalfDayByBatchCount = splitByBatchCount && estBatches > limits.maxBatchesBeforeSplit();
+
+        log.info("[{}][{}][runId={}] === DAY {} | window=[{}, {}) | missing={} (estBatches={}) ===",
+                tag, kind, runId, day, dayStart, dayEnd, missing, estBatches);
+
+        if (!useHalfDayByVolume && !useHalfDayByBatchCount) {
+            // ✅ 正常情況：整天搬一次
+            log.info("[{}][{}][runId={}] DAY {} use FULL-DAY window (useHalfDayByVolume={} useHalfDayByBatchCount={})",
+                    tag, kind, runId, day, useHalfDayByVolume, useHalfDayByBatchCount);
+            submit(kind, dayStart, dayEnd, missing);
+            return;
+        }
+
+        // 🚨 資料量太大或預估 batch 過多：切成「半天半天」搬，降低一次查詢/交易壓力
+        log.warn("[{}][{}][runId={}] DAY {} LARGE or MANY-BATCH day, use HALF-DAY windows | "
+                        + "threshold={} | maxBatchesBeforeSplit={} | missing={} (estBatches={})",
+                tag, kind, runId, day,
+                limits.halfDaySwitchThreshold(), limits.maxBatchesBeforeSplit(), missing, estBatches);
+
+        LocalDateTime mid = dayStart.plusHours(12);
+        planHalf(kind, day, "H1", dayStart, mid, limits);
+        planHalf(kind, day, "H2", mid, dayEnd, limits);
+    }
+
+    /**
+     * 半天窗口：「如果這半天缺口太大」或「預估批次數太多」就切成一小時一小時搬，否則整個半天一次搬完。
+     */
+    private void planHalf(String kind, LocalDate day, String label, LocalDateTime winStart, LocalDateTime winEnd,
+                          SplitThresholds limits) {
+        int missing = gaps.missing(kind, winStart, winEnd);
+        int estBatches = estBatches(missing, limits);
+
+        log.info("[{}][{}][runId={}] DAY {} {} | window=[{}, {}) | missing={} (estBatches={})",
+                tag, kind, runId, day, label, winStart, winEnd, missing, estBatches);
+
+        boolean useHourlyByVolume = missing > limits.hourSwitchThreshold();
+        boolean useHourlyByBatchCount = splitByBatchCount && estBatches > limits.maxBatchesBeforeSplit();
+
+        if (!useHourlyByVolume && !useHourlyByBatchCount) {
+            // ✅ 半天一次就好
+            log.info("[{}][{}][runId={}] DAY {} {} use HALF-DAY window directly "
+                            + "(useHourlyByVolume={} useHourlyByBatchCount={})",
+                    tag, kind, runId, day, label, useHourlyByVolume, useHourlyByBatchCount);
+            submit(kind, winStart, winEnd, missing);
+            return;
+        }
+
+        // 🚨 半天還是太大或預估批次過多：切成一小時一小時搬
+        log.warn("[{}][{}][runId={}] DAY {} {} VERY LARGE or MANY-BATCH half-day, use HOURLY windows | "
+                        + "hourThreshold={} | maxBatchesBeforeSplit={} | missing={} (estBatches={})",
+                tag, kind, runId, day, label,
+                limits.hourSwitchThreshold(), limits.maxBatchesBeforeSplit(), missing, estBatches);
+
+        for (LocalDateTime t = winStart; t.isBefore(winEnd); t = t.plusHours(1)) {
+            LocalDateTime hourStart = t;
+            LocalDateTime hourEnd = t.plusHours(1).isAfter(winEnd) ? winEnd : t.plusHours(1);
+
+            log.info("[{}][{}][runId={}] DAY {} {} HOUR | window=[{}, {})",
+                    tag, kind, runId, day, label, hourStart, hourEnd);
+
+            submit(kind, hourStart, hourEnd, bulkWork != null ? gaps.missing(kind, hourStart, hourEnd) : 0);
+        }
+    }
+
+    /**
+     * 遞迴二分：一天從整窗開始，預估缺口超過 leafRows 就對半切，直到每片都放得下或已經切到最細；
+     * 再把相鄰、加起來還放得下的片合併，每個窗口的缺口都接近 leafRows，不會有一個熱門小時獨大。
+     */
+    private void planBisect(String kind, LocalDate day) {
+        SplitThresholds limits = thresholds.apply(kind);
+        long leafRows = Math.max(1, splitByBatchCount
+                ? (long) limits.maxBatchesBeforeSplit() * limits.batchSize()
+                : limits.hourSwitchThreshold());
+        LocalDateTime dayStart = day.atStartOfDay();
+        LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+        int missing = gaps.missing(kind, dayStart, dayEnd);
+
+        List<Leaf> leaves = new ArrayList<>();
+        bisect(kind, dayStart, dayEnd, missing, leafRows, leaves);
+        List<Leaf> windows = merge(leaves, leafRows);
+
+        log.info("[{}][{}][runId={}] === DAY {} BISECT | missing={} | leafRows={} | leaves={} -> windows={} | maxWindowMissing={} ===",
+                tag, kind, runId, day, missing, leafRows, leaves.size(), windows.size(),
+                windows.stream().mapToInt(Leaf::missing).max().orElse(0));
+
+        for (Leaf w : windows) {
+            log.info("[{}][{}][runId={}] DAY {} BISECT | window=[{}, {}) | {} min | missing={}",
+                    tag, kind, runId, day, w.start(), w.end(), Duration.between(w.start(), w.end()).toMinutes(), w.missing());
+            submit(kind, w.start(), w.end(), w.missing());
+        }
+    }
+
+    private void bisect(String kind, LocalDateTime start, LocalDateTime end, int missing, long leafRows, List<Leaf> out) {
+        LocalDateTime mid = missing > leafRows ? splitPoint(start, end) : null;
+        if (mid == null) {
+            out.add(new Leaf(start, end, missing));
+            return;
+        }
+        // 一小時以內直方圖只會把整小時算進來，改回 DB 精確 COUNT
+        bisect(kind, start, mid, gaps.missingExact(kind, start, mid), leafRows, out);
+        bisect(kind, mid, end, gaps.missingExact(kind, mid, end), leafRows, out);
+    }
+
+    /**
+     * 切點：兩小時以上取中間的整點（直方圖查得到），以內取中間的 bisectMinMinutes 格線；已經切不動回傳 null
+     */
+    private LocalDateTime splitPoint(LocalDateTime start, LocalDateTime end) {
+        long minutes = Duration.between(start, end).toMinutes();
+        if (minutes >= 120 && start.getMinute() == 0 && start.getSecond() == 0 && start.getNano() == 0) {
+            return start.plusHours(minutes / 60 / 2);
+        }
+        long steps = minutes / bisectMinMinutes;
+        return steps < 2 ? null : start.plusMinutes(steps / 2 * bisectMinMinutes);
+    }
+
+    /** 依時間順序把相鄰的片併起來，合計不超過 leafRows 就併 */
+    private static List<Leaf> merge(List<Leaf> leaves, long leafRows) {
+        List<Leaf> out = new ArrayList<>();
+        Leaf cur = null;
+        for (Leaf leaf : leaves) {
+            if (cur != null && (long) cur.missing() + leaf.missing() <= leafRows) {
+                cur = new Leaf(cur.start(), leaf.end(), cur.missing() + leaf.missing());
+                continue;
+            }
+            if (cur != null) {
+                out.add(cur);
+            }
+            cur = leaf;
+        }
+        if (cur != null) {
+            out.add(cur);
+        }
+        return out;
+    }
+
+    private record Leaf(LocalDateTime start, LocalDateTime end, int missing) {
+    }
+
+    private void submit(String kind, LocalDateTime start, LocalDateTime end, int missing) {
+        if (bulkWork != null && missing >= bulkThresholdRows) {
+            log.info("[{}][{}][runId={}] window=[{}, {}) missing={} >= {} => BULK-LOAD",
+                    tag, kind, runId, start, end, missing, bulkThresholdRows);
+            dispatcher.submit(kind, start, end, () -> bulkWork.run(kind, start, end, runId));
+            return;
+        }
+        dispatcher.submit(kind, start, end, () -> work.run(kind, start, end, runId));
+    }
+
+    private static int estBatches(int missing, SplitThresholds limits) {
+        return (int) Math.ceil(missing / (double) limits.batchSize());
+    }
+
+    /**
+     * 真正搬一個窗口的動作（兩個 service 的 runJobBatches）；回傳的 complete=false 時窗口不記 DONE
+     */
+    @FunctionalInterface
+    public interface WindowWork {
+        WindowCopy run(String kind, LocalDateTime start, LocalDateTime end, String runId);
+    }
+}
@@ -1,13 +1,16 @@
 package com.example.ordermigratebatchmysql.service;
 
 import com.example.ordermigratebatchmysql.config.EltProperties;
-import com.example.ordermigratebatchmysql.mapper.HttpLogEltMapper;
-import com.example.ordermigratebatchmysql.mapper.WithdrawHttpLogEltMapper;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.stream.StreamingWindowCopier;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import com.example.ordermigratebatchmysql.throttle.ThrottleDecision;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 
@@ -16,125 +19,208 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class AdaptiveHttpLogEltService {
 
-    private final HttpLogEltMapper orderMapper;
-    private final WithdrawHttpLogEltMapper withdrawMapper;
+    private final MigrationJobMapper jobMapper;
+    private final MigrationJobRegistry jobs;
     private final EltProperties props;
-    private final PlatformTransactionManager txManager;
+    private final BatchTransactions batchTx;
+    private final AimdBatchController aimd;
+    private final LoadAwareThrottle throttle;
+    private final BatchRetryTemplate retry;
+    private final EltMetrics metrics;
+    private final StreamingWindowCopier streamCopier;
+    private final RunHistoryRecorder history;
 
     // ==== 給 Runner 用的 API ====
 
     public int countMissing(String kind, LocalDateTime start, LocalDateTime end) {
-        if ("order".equals(kind)) {
-            return orderMapper.countMissingForRange(start, end);
-        } else if ("withdraw".equals(kind)) {
-            return withdrawMapper.countMissingForRange(start, end);
-        } else {
-            throw new IllegalArgumentException("unknown kind: " + kind);
+        if (streamCopier.isEnabled()) {
+            // 目標在另一台：只能拿來源筆數當缺口上限
+            return metrics.timeCount(kind, "range", () -> jobMapper.countSourceForRange(jobs.get(kind), start, end));
         }
+        return metrics.timeCount(kind, "range", () -> jobMapper.countMissingForRange(jobs.get(kind), start, end));
     }
 
-    public int runOrderBatches(LocalDateTime start, LocalDateTime end, String runId) {
-        return runBatchesAdaptive(
-                "order",
-                start,
-                end,
-                runId,
-                batchSize -> orderMapper.insertMissingForRange(start, end, batchSize)
-        );
+    public GapHistogram loadGapHistogram(String kind, LocalDateTime start, LocalDateTime end) {
+        MigrationJob job = jobs.get(kind);
+        return GapHistogram.of(start, end, metrics.timeCount(kind, "histogram", () -> streamCopier.isEnabled()
+                ? jobMapper.countSourceByHour(job, start, end)
+                : jobMapper.countMissingByHour(job, start, end)));
+    }
+
+    /**
+     * 搬移某個 job（elt.jobs[].name）的一個時間窗
+     */
+    public WindowCopy runJobBatches(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        metrics.windowStarted(kind);
+        try {
+            return runJob(kind, start, end, runId);
+        } finally {
+            metrics.windowFinished(kind);
+        }
     }
 
-    public int runWithdrawBatches(LocalDateTime start, LocalDateTime end, String runId) {
+    /** 同 HttpLogEltService.batchMode；adaptive 沒有 bitmap 模式 */
+    public String batchMode(String kind) {
+        if (streamCopier.isEnabled()) {
+            return "stream";
+        }
+        if (props.isPkRangeMode() || jobs.get(kind).isPlanFallback()) {
+            return "pk-range";
+        }
+        return props.isKeysetMode() ? "keyset" : "limit";
+    }
+
+    private WindowCopy runJob(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        MigrationJob job = jobs.get(kind);
+        if (streamCopier.isEnabled()) {
+            // 串流模式自己有 backpressure，不走 AIMD
+            return streamCopier.copyWindow(job, start, end, runId);
+        }
+        if (props.isPkRangeMode() || job.isPlanFallback()) {
+            // PK 區間（或 QueryPlanGuard fallback）：batchSize 在這裡代表「一段的 Id 跨度」，一樣由下面的迴圈自動調
+            PkRangeCursor cursor = new PkRangeCursor(jobMapper.selectKeyBounds(job, start, end));
+            return runBatchesAdaptive(
+                    kind,
+                    start,
+                    end,
+                    runId,
+                    cursor,
+                    batchSize -> jobMapper.copyKeyRange(job, start, end,
+                            cursor.getFrom(), cursor.stage(batchSize), props.isPkRangeUpsert())
+            );
+        }
+        if (props.isKeysetMode()) {
+            KeysetCursor cursor = new KeysetCursor();
+            return runBatchesAdaptive(
+                    kind,
+                    start,
+                    end,
+                    runId,
+                    cursor,
+                    batchSize -> {
+                        cursor.stage(jobMapper.selectBatchUpperKey(job,
+                                start, end, cursor.getLastTime(), cursor.getLastId(), batchSize - 1));
+                        return jobMapper.insertMissingForKeyRange(job, start, end,
+                                cursor.getLastTime(), cursor.getLastId(),
+                                cursor.getStagedTime(), cursor.getStagedId());
+                    }
+            );
+        }
         return runBatchesAdaptive(
-                "withdraw",
+                kind,
                 start,
                 end,
                 runId,
-                batchSize -> withdrawMapper.insertMissingForRange(start, end, batchSize)
+                null,
+                batchSize -> jobMapper.insertMissingForRange(job, start, end, batchSize)
         );
     }
 
     // ==== 共用：自動調整 batchSize 的主程式 ====
 
-    private int runBatchesAdaptive(
+    /**
+     * @param cursor keyset / PK 區間模式的游標；null 代表舊的「每批重掃整窗 + LIMIT」模式
+     */
+    private WindowCopy runBatchesAdaptive(
             String kind,
             LocalDateTime start,
             LocalDateTime end,
             String runId,
+            BatchCursor cursor,
             BatchExecutor executor
     ) {
+        MigrationJob job = jobs.get(kind);
         int totalMoved = 0;
+        // 窗口是否確定搬完：游標走到窗尾，或 LIMIT 模式已經搬不到東西；重試會把 size 砍半，所以「搬不滿」不算數
+        boolean complete = false;
 
-        // 動態 batch size，起點先用設定值
-        int dynamicBatchSize = props.getBatchSize();  // ex: 10000
-        final int minBatchSize = 2000;                // 下限：你可以調
-        final int maxBatchSize = props.getBatchSize();// 上限：不超過設定值
+        String mode = cursor instanceof PkRangeCursor ? "pk-range" : cursor instanceof KeysetCursor ? "keyset" : "limit";
+        // 動態 batch size：起點用 AIMD 在這個 kind + 模式 + 現在這個小時學到的值（第一次就是 elt.batch-size）
+        AimdBatchController.Session tuning = aimd.open(kind, mode, runId);
+        int dynamicBatchSize = tuning.batchSize();
+        // DB 忙時節流會把下一批再打折；AIMD 自己學到的值不受影響
+        int runBatchSize = dynamicBatchSize;
+        RetryStats retryStats = new RetryStats();
 
         Long slowMsCfg = props.getSlowBatchMs();
         long targetSlowMs = (slowMsCfg != null ? slowMsCfg : 5000L); // 沒設定就用 5 秒
-        long targetFastMs = targetSlowMs / 2;                        // 例如 slow=6s => fast=3s
-
-        for (int batch = 1; batch <= props.getMaxBatchesPerRun(); batch++) {
-            long t0 = System.currentTimeMillis();
 
-            int affected = doOneBatchTransactional(executor, dynamicBatchSize);
-            long cost = System.currentTimeMillis() - t0;
-
-            if (affected <= 0) {
-                log.info("[ELT-ADAPT][{}][runId={}] no more rows | totalMoved={} | batch#={} | finalBatchSize={}",
-                        kind, runId, totalMoved, batch, dynamicBatchSize);
-                break;
-            }
+        if (cursor != null && cursor.isReachedEnd()) {
+            log.info("[ELT-ADAPT][{}][runId={}] window=[{}, {}) has no rows", kind, runId, start, end);
+            return WindowCopy.done(0);
+        }
 
-            totalMoved += affected;
-            double qps = (affected * 1000.0) / Math.max(1, cost);
+        try {
+            // 游標模式一批是固定一段來源列 / Id 跨度，早就搬過的段（affected=0）不算進 maxBatchesPerRun，
+            // 否則大窗口永遠走不到窗尾、永遠記不到 DONE；LIMIT 模式 affected=0 就是搬完了，照舊每批都算
+            int counted = 0;
+            for (int batch = 1; counted < props.getMaxBatchesPerRun(); batch++) {
+                long t0 = System.currentTimeMillis();
+
+                int affected = retry.execute(kind, runId, runBatchSize, retryStats,
+                        size -> doOneBatchTransactional(job, executor, size));
+                if (cursor == null || affected > 0) {
+                    counted++;
+                }
+                long cost = System.currentTimeMillis() - t0;
+                metrics.recordBatch(kind, mode, affected, cost, runBatchSize, cost >= targetSlowMs);
+                history.record(kind, mode, start, end, runBatchSize, affected, cost, runId);
+
+                if (cursor != null) {
+                    // 游標模式：這批已 commit，游標往前推；affected=0 只代表這段早搬過，不代表搬完
+                    cursor.commit();
+                    if (cursor.isReachedEnd()) {
+                        totalMoved += affected;
+                        complete = true;
+                        log.info("[ELT-ADAPT][{}][runId={}] cursor reached window end | affected={} | totalMoved={} | batch#={} | finalBatchSize={}",
+                                kind, runId, affected, totalMoved, batch, dynamicBatchSize);
+                        break;
+                    }
+                } else if (affected <= 0) {
+                    log.info("[ELT-ADAPT][{}][runId={}] no more rows | totalMoved={} | batch#={} | finalBatchSize={}",
+                            kind, runId, totalMoved, batch, dynamicBatchSize);
+                    complete = true;
+                    break;
+                }
 
-            log.info("[ELT-ADAPT][{}][runId={}] batch#{} END | affected={} | cost={} ms | ~{}/s | totalMoved={} | batchSize={}",
-                    kind, runId, batch, affected, cost, String.format("%.0f", qps), totalMoved, dynamicBatchSize);
+                totalMoved += affected;
+                double qps = (affected * 1000.0) / Math.max(1, cost);
 
-            if (cost >= targetSlowMs) {
-                log.warn("[ELT-ADAPT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={} | batchSize={}",
-                        kind, runId, batch, cost, targetSlowMs, affected, dynamicBatchSize);
-            }
+                log.info("[ELT-ADAPT][{}][runId={}] batch#{} END | affected={} | cost={} ms | ~{}/s | totalMoved={} | batchSize={}{}",
+                        kind, runId, batch, affected, cost, String.format("%.0f", qps), totalMoved, runBatchSize,
+                        cursor != null ? " | cursor=" + cursor : "");
 
-            // === 核心：根據耗時調整下一批 batchSize ===
-            if (cost > targetSlowMs) {
-                // 太慢 => 對半砍，但不能小於 minBatchSize
-                int old = dynamicBatchSize;
-                dynamicBatchSize = Math.max(minBatchSize, dynamicBatchSize / 2);
-                if (dynamicBatchSize != old) {
-                    log.info("[ELT-ADAPT][{}][runId={}] batch#{} SLOW -> shrink batchSize {} -> {}",
-                            kind, runId, batch, old, dynamicBatchSize);
-                }
-            } else if (cost < targetFastMs && affected == dynamicBatchSize) {
-                // 很快 且 有塞滿 => 放大 batchSize（最多到 maxBatchSize）
-                int old = dynamicBatchSize;
-                dynamicBatchSize = Math.min(maxBatchSize, dynamicBatchSize * 2);
-                if (dynamicBatchSize != old) {
-                    log.info("[ELT-ADAPT][{}][runId={}] batch#{} FAST -> grow batchSize {} -> {}",
-                            kind, runId, batch, old, dynamicBatchSize);
+                if (cost >= targetSlowMs) {
+                    log.warn("[ELT-ADAPT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={} | batchSize={}",
+                            kind, runId, batch, cost, targetSlowMs, affected, runBatchSize);
                 }
-            }
 
-            // 每批之間喘一下
-            if (props.getPauseMs() > 0) {
-                try {
-                    Thread.sleep(props.getPauseMs());
-                } catch (InterruptedException ignored) {
-                    Thread.currentThread().interrupt();
+                // === 核心：AIMD 依 p95 延遲 / rows/s 決定下一批 batchSize（游標模式每批範圍固定，一律算塞滿） ===
+                dynamicBatchSize = tuning.onBatch(affected, cost, cursor != null || affected == runBatchSize);
+
+                // 每批之間依 DB 負載喘一下（取代固定 pauseMs）
+                ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+                if (decision == null) {
                     break;
                 }
+                runBatchSize = decision.nextBatchSize(dynamicBatchSize);
             }
+        } finally {
+            // 窗口中途失敗也要把學到的值落表
+            tuning.close();
         }
 
-        log.info("[ELT-ADAPT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={}",
-                kind, runId, start, end, totalMoved);
-        return totalMoved;
+        if (!complete) {
+            log.warn("[ELT-ADAPT][{}][runId={}] window=[{}, {}) stopped before it was fully copied | maxBatchesPerRun={}{}",
+                    kind, runId, start, end, props.getMaxBatchesPerRun(), cursor != null ? " | cursor=" + cursor : "");
+        }
+        log.info("[ELT-ADAPT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | learnedBatchSize={} | {}",
+                kind, runId, start, end, totalMoved, tuning.batchSize(), retryStats);
+        return new WindowCopy(totalMoved, complete);
     }
 
-    private int doOneBatchTransactional(BatchExecutor executor, int batchSize) {
-        TransactionTemplate tt = new TransactionTemplate(txManager);
-        tt.setReadOnly(false);
-        return tt.execute(status -> executor.execute(batchSize));
+    private int doOneBatchTransactional(MigrationJob job, BatchExecutor executor, int batchSize) {
+        return batchTx.execute(job, status -> executor.execute(batchSize));
     }
 
     @FunctionalInterface
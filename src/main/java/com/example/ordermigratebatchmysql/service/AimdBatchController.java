@@ -0,0 +1,292 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.mapper.BatchTuningMapper;
+import com.example.ordermigratebatchmysql.model.BatchTuning;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD 批次控制器（adaptive 模式用）：
+ * - batchSize：最近 p95 延遲在目標內、throughput 沒掉 => 加 additiveStep；超標 => × decreaseFactor
+ * - 學到的 batchSize 依 kind + 模式 + 時段（執行當下的小時）記住，同一 run 的後續窗口、以及下次 run（persist=true）都從這裡起跳；
+ *   模式要分開學：pk-range 的 batchSize 是 Id 跨度，拿去當 LIMIT 列數會差好幾倍
+ *   主庫忙不忙跟著牆上時鐘走，跟窗口是哪個小時的資料無關（backfill 一天內會掃過 0~23 點的窗口）
+ * - 並行窗口數：連續健康就 +1；batchSize 已經到下限還超標 => 減半
+ * 每次調整都寫 log（[ELT-AIMD]），也留在 recentAdjustments() 供觀察。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AimdBatchController {
+
+    private static final int MAX_RECENT_ADJUSTMENTS = 200;
+    private static final int MIN_SAMPLES_FOR_P95 = 5;
+
+    private final EltProperties props;
+    private final BatchTuningMapper tuningMapper;
+
+    private final Map<String, TuningState> states = new ConcurrentHashMap<>();
+    private final AtomicInteger parallelism = new AtomicInteger(1);
+    private final AtomicInteger healthyStreak = new AtomicInteger();
+    private final Deque<Adjustment> recentAdjustments = new ArrayDeque<>();
+
+    @PostConstruct
+    public void init() {
+        EltProperties.Aimd cfg = props.getAimd();
+        parallelism.set(clamp(props.getWorkerThreads(), cfg.getMinParallelism(), cfg.getMaxParallelism()));
+
+        if (cfg.isPersist()) {
+            tuningMapper.createTableIfAbsent();
+            if (tuningMapper.countModeColumn() == 0) {
+                // 舊表只有 (Kind, HourOfDay)：補上 Mode 進主鍵；舊列 Mode='' 不知道是哪個模式學的，不載入
+                tuningMapper.addModeColumn();
+                log.warn("[ELT-AIMD] elt_batch_tuning upgraded to (Kind, Mode, HourOfDay); rows learned before are ignored");
+            }
+            for (BatchTuning t : tuningMapper.selectAll()) {
+                if (t.getMode() == null || t.getMode().isEmpty()) {
+                    continue;
+                }
+                TuningState st = new TuningState(t.getKind(), t.getMode(), t.getHourOfDay(),
+                        clamp(t.getBatchSize(), cfg.getMinBatchSize(), cfg.getMaxBatchSize()), cfg.getLatencyWindow());
+                st.ewmaRowsPerSec = t.getEwmaRowsPerSec();
+                states.put(key(t.getKind(), t.getMode(), t.getHourOfDay()), st);
+            }
+            log.info("[ELT-AIMD] loaded {} learned batch sizes from elt_batch_tuning", states.size());
+        }
+    }
+
+    /**
+     * 開一個窗口的調整 session：起點 batchSize 用這個 kind + 模式 + 現在這個小時學到的值（沒有就用 elt.batch-size）
+     * @param mode limit / keyset / pk-range（跟 elt_run_history.Mode 同一組值）
+     */
+    public Session open(String kind, String mode, String runId) {
+        EltProperties.Aimd cfg = props.getAimd();
+        int hour = now().getHour();
+        TuningState st = states.computeIfAbsent(key(kind, mode, hour), k -> new TuningState(kind, mode, hour,
+                clamp(props.getBatchSize(), cfg.getMinBatchSize(), cfg.getMaxBatchSize()), cfg.getLatencyWindow()));
+        return new Session(st, runId);
+    }
+
+    /** 建議的並行窗口數（WindowDispatcher 每次派工前讀） */
+    public int recommendedParallelism() {
+        return parallelism.get();
+    }
+
+    /** 目前學到的 batchSize：kind/mode@hour -> size */
+    public Map<String, Integer> learnedBatchSizes() {
+        Map<String, Integer> out = new TreeMap<>();
+        states.forEach((k, st) -> out.put(k, st.batchSize));
+        return out;
+    }
+
+    /** 最近的調整紀錄（新到舊） */
+    public List<Adjustment> recentAdjustments() {
+        synchronized (recentAdjustments) {
+            return new ArrayList<>(recentAdjustments);
+        }
+    }
+
+    private void adjustParallelism(boolean grow, String reason) {
+        EltProperties.Aimd cfg = props.getAimd();
+        int old = parallelism.get();
+        int next = grow
+                ? Math.min(cfg.getMaxParallelism(), old + 1)
+                : Math.max(cfg.getMinParallelism(), old / 2);
+        if (next != old && parallelism.compareAndSet(old, next)) {
+            record(new Adjustment(now(), "*", "*", -1, "parallelism", old, next, reason));
+        }
+    }
+
+    private void record(Adjustment a) {
+        log.info("[ELT-AIMD][{}/{}@{}] {} {} -> {} | {}", a.kind(), a.mode(), a.hourOfDay(), a.what(), a.from(), a.to(), a.reason());
+        synchronized (recentAdjustments) {
+            recentAdjustments.addFirst(a);
+            while (recentAdjustments.size() > MAX_RECENT_ADJUSTMENTS) {
+                recentAdjustments.removeLast();
+            }
+        }
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of(props.getZoneId()));
+    }
+
+    private static String key(String kind, String mode, int hour) {
+        return kind + "/" + mode + "@" + hour;
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /**
+     * 一個 kind + 模式 + 時段共用的狀態；同 kind 同模式同時段的窗口並行時一起學
+     */
+    private static class TuningState {
+        private final String kind;
+        private final String mode;
+        private final int hourOfDay;
+        private final long[] latencies;
+        private int samples;
+        private int next;
+
+        private int batchSize;
+        private double ewmaRowsPerSec;
+        /** 上一次加量時的 throughput；加完反而掉太多就當作壅塞 */
+        private double ewmaAtLastIncrease;
+
+        TuningState(String kind, String mode, int hourOfDay, int batchSize, int latencyWindow) {
+            this.kind = kind;
+            this.mode = mode;
+            this.hourOfDay = hourOfDay;
+            this.batchSize = batchSize;
+            this.latencies = new long[Math.max(MIN_SAMPLES_FOR_P95, latencyWindow)];
+        }
+
+        void sample(long costMs, double rowsPerSec, double alpha) {
+            latencies[next] = costMs;
+            next = (next + 1) % latencies.length;
+            samples = Math.min(samples + 1, latencies.length);
+            ewmaRowsPerSec = (ewmaRowsPerSec == 0) ? rowsPerSec : alpha * rowsPerSec + (1 - alpha) * ewmaRowsPerSec;
+        }
+
+        long p95() {
+            if (samples == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            return sorted[Math.min(samples - 1, (int) Math.ceil(samples * 0.95) - 1)];
+        }
+
+        void resetLatencies() {
+            samples = 0;
+            next = 0;
+        }
+    }
+
+    /**
+     * 一個窗口的調整 session
+     */
+    public class Session {
+        private final TuningState st;
+        private final String runId;
+
+        private Session(TuningState st, String runId) {
+            this.st = st;
+            this.runId = runId;
+        }
+
+        public int batchSize() {
+            synchronized (st) {
+                return st.batchSize;
+            }
+        }
+
+        /**
+         * 回報一批的結果，回傳下一批該用的 batchSize
+         * @param fullBatch 這批是否「塞滿」（沒塞滿的尾批不拿來加量）
+         */
+        public int onBatch(int affected, long costMs, boolean fullBatch) {
+            EltProperties.Aimd cfg = props.getAimd();
+            double rowsPerSec = (affected * 1000.0) / Math.max(1, costMs);
+            Adjustment adj = null;
+            boolean congestedAtFloor = false;
+            boolean healthy = false;
+
+            synchronized (st) {
+                st.sample(costMs, rowsPerSec, cfg.getEwmaAlpha());
+                long target = cfg.getTargetP95Ms();
+                long p95 = st.p95();
+                boolean enoughSamples = st.samples >= MIN_SAMPLES_FOR_P95;
+
+                boolean overLatency = costMs > target * 2 || (enoughSamples && p95 > target);
+                boolean throughputCollapsed = st.ewmaAtLastIncrease > 0
+                        && st.ewmaRowsPerSec < st.ewmaAtLastIncrease * 0.85;
+
+                int old = st.batchSize;
+                if (overLatency || throughputCollapsed) {
+                    st.batchSize = Math.max(cfg.getMinBatchSize(), (int) (st.batchSize * cfg.getDecreaseFactor()));
+                    st.ewmaAtLastIncrease = 0;
+                    st.resetLatencies();
+                    congestedAtFloor = (old == cfg.getMinBatchSize());
+                    if (st.batchSize != old) {
+                        adj = new Adjustment(now(), st.kind, st.mode, st.hourOfDay, "batchSize", old, st.batchSize,
+                                (overLatency ? "p95=" + p95 + "ms cost=" + costMs + "ms > target=" + target + "ms"
+                                        : String.format("rows/s %.0f < 85%% of %.0f", st.ewmaRowsPerSec, st.ewmaAtLastIncrease))
+                                        + " | runId=" + runId);
+                    }
+                } else {
+                    healthy = true;
+                    long ref = enoughSamples ? p95 : costMs;
+                    if (fullBatch && ref <= target * 0.8 && st.batchSize < cfg.getMaxBatchSize()) {
+                        st.batchSize = Math.min(cfg.getMaxBatchSize(), st.batchSize + cfg.getAdditiveStep());
+                        st.ewmaAtLastIncrease = st.ewmaRowsPerSec;
+                        adj = new Adjustment(now(), st.kind, st.mode, st.hourOfDay, "batchSize", old, st.batchSize,
+                                String.format("p95=%dms <= 80%% target, ~%.0f rows/s | runId=%s", ref, st.ewmaRowsPerSec, runId));
+                    }
+                }
+            }
+
+            if (adj != null) {
+                record(adj);
+            }
+            if (congestedAtFloor) {
+                healthyStreak.set(0);
+                adjustParallelism(false, "batchSize already at floor and still over target | kind=" + st.kind);
+            } else if (healthy && healthyStreak.incrementAndGet() >= cfg.getHealthyBatchesToGrowParallelism()) {
+                healthyStreak.set(0);
+                adjustParallelism(true, cfg.getHealthyBatchesToGrowParallelism() + " healthy batches in a row");
+            } else if (!healthy) {
+                healthyStreak.set(0);
+            }
+            return batchSize();
+        }
+
+        /** 窗口結束：把學到的值落表（persist=true 時） */
+        public void close() {
+            if (!props.getAimd().isPersist()) {
+                return;
+            }
+            BatchTuning t = new BatchTuning();
+            synchronized (st) {
+                t.setKind(st.kind);
+                t.setMode(st.mode);
+                t.setHourOfDay(st.hourOfDay);
+                t.setBatchSize(st.batchSize);
+                t.setEwmaRowsPerSec(st.ewmaRowsPerSec);
+                t.setP95Ms(st.p95());
+            }
+            t.setUpdatedAt(now());
+            tuningMapper.upsert(t);
+        }
+    }
+
+    /**
+     * 一次調整紀錄；hourOfDay = -1 代表全域（並行數）
+     */
+    public record Adjustment(LocalDateTime at,
+                             String kind,
+                             String mode,
+                             int hourOfDay,
+                             String what,
+                             int from,
+                             int to,
+                             String reason) {
+    }
+}
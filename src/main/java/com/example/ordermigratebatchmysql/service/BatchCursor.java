@@ -0,0 +1,14 @@
+package com.example.ordermigratebatchmysql.service;
+
+/**
+ * 批次游標：每批先 stage 本批範圍，commit 之後才往前推；走到窗尾就停。
+ * keyset（SubmitTime, Id）與 PK 區間兩種模式共用這個介面，批次迴圈不用管是哪一種。
+ */
+public interface BatchCursor {
+
+    /** 本批 commit 之後，把游標推到剛剛 stage 的上界 */
+    void commit();
+
+    /** 游標是否已走到窗尾 */
+    boolean isReachedEnd();
+}
@@ -0,0 +1,132 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 包在「一批一個 tx」外面的重試：
+ * - 1213 死鎖 / 1205 鎖等待逾時 => 退避後重試；連續第二次起 batchSize 砍半（鎖範圍變小比較容易過）
+ * - 連線斷掉 / 拿不到連線 => 退避後用同樣的 batchSize 重試
+ * - 其他錯誤直接往外丟
+ * 退避 = retryBackoffBaseMs * 2^(attempt-1)，上限 retryBackoffMaxMs，取 [一半, 全部] 之間的亂數避免多個窗口同時撞回來。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BatchRetryTemplate {
+
+    /** MySQL ER_LOCK_DEADLOCK */
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    /** MySQL ER_LOCK_WAIT_TIMEOUT */
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    /** CR_SERVER_GONE_ERROR / CR_SERVER_LOST */
+    private static final int CR_SERVER_GONE = 2006;
+    private static final int CR_SERVER_LOST = 2013;
+
+    public enum Failure {
+        LOCK, CONNECTION
+    }
+
+    private final EltProperties props;
+    private final EltMetrics metrics;
+
+    /**
+     * @param batchSize 這一批原本的 batchSize（砍半就從這裡開始砍）
+     * @param batch     收到實際 batchSize、跑一批（自己開 tx）並回傳 affected
+     * @param stats     這個窗口的統計，會被累加
+     */
+    public int execute(String kind, String runId, int batchSize, RetryStats stats, IntUnaryOperator batch) {
+        int size = batchSize;
+        int lockFailures = 0;
+        for (int attempt = 1; ; attempt++) {
+            long t0 = System.currentTimeMillis();
+            try {
+                return batch.applyAsInt(size);
+            } catch (RuntimeException e) {
+                Failure failure = classify(e);
+                if (failure == null || attempt > props.getMaxRetry()) {
+                    if (failure != null) {
+                        log.error("[ELT-RETRY][{}][runId={}] giving up after {} attempts | batchSize={} | {}",
+                                kind, runId, attempt, size, stats);
+                    }
+                    throw e;
+                }
+
+                boolean halved = false;
+                if (failure == Failure.LOCK && ++lockFailures >= 2 && size > 1) {
+                    size = Math.max(1, size / 2);
+                    halved = true;
+                }
+                long backoff = backoffMs(attempt);
+                log.warn("[ELT-RETRY][{}][runId={}] {} failure, retry {}/{} in {} ms | nextBatchSize={} | cause={}",
+                        kind, runId, failure, attempt, props.getMaxRetry(), backoff, size, rootMessage(e));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                stats.onRetry(failure, halved, System.currentTimeMillis() - t0);
+                metrics.recordRetry(kind, failure.name().toLowerCase());
+            }
+        }
+    }
+
+    long backoffMs(int attempt) {
+        long base = Math.max(1, props.getRetryBackoffBaseMs());
+        long exp = base << Math.min(20, attempt - 1);
+        long cap = Math.min(exp, Math.max(base, props.getRetryBackoffMaxMs()));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * 判斷是不是值得重試的錯誤；null = 不重試
+     */
+    static Failure classify(Throwable e) {
+        for (Throwable t = e; t != null; t = (t.getCause() == t ? null : t.getCause())) {
+            if (t instanceof PessimisticLockingFailureException) {
+                return Failure.LOCK;
+            }
+            if (t instanceof CannotGetJdbcConnectionException
+                    || t instanceof TransientDataAccessResourceException
+                    || t instanceof RecoverableDataAccessException) {
+                return Failure.CONNECTION;
+            }
+            if (t instanceof SQLException sql) {
+                int code = sql.getErrorCode();
+                if (code == ER_LOCK_DEADLOCK || code == ER_LOCK_WAIT_TIMEOUT) {
+                    return Failure.LOCK;
+                }
+                String state = sql.getSQLState();
+                if (code == CR_SERVER_GONE || code == CR_SERVER_LOST
+                        || sql instanceof SQLTransientConnectionException
+                        || sql instanceof SQLRecoverableException
+                        || (state != null && state.startsWith("08"))) {
+                    return Failure.CONNECTION;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName() + ": " + root.getMessage();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.SessionProfile;
+import com.example.ordermigratebatchmysql.config.SessionProfileTransactionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個 job 一個 TransactionTemplate（建一次重複用）：隔離級別 / timeout 來自 session profile，
+ * tx 名稱 "elt:" + kind 讓 SessionProfileTransactionManager 套上 session 變數。
+ * 一批一個 tx 的地方都從這裡拿。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BatchTransactions {
+
+    private final PlatformTransactionManager txManager;
+    private final EltProperties props;
+
+    private final Map<String, TransactionTemplate> templates = new ConcurrentHashMap<>();
+
+    public <T> T execute(MigrationJob job, TransactionCallback<T> action) {
+        return forJob(job).execute(action);
+    }
+
+    public TransactionTemplate forJob(MigrationJob job) {
+        return templates.computeIfAbsent(job.getName(), kind -> {
+            SessionProfile session = props.sessionFor(job);
+            TransactionTemplate tt = new TransactionTemplate(txManager);
+            tt.setName(SessionProfileTransactionManager.TX_NAME_PREFIX + kind);
+            tt.setReadOnly(false);
+            tt.setIsolationLevel(session.isolationLevel());
+            if (session.getTxTimeoutSeconds() != null) {
+                tt.setTimeout(session.getTxTimeoutSeconds());
+            }
+            log.info("[ELT-SESSION][{}] {}", kind, session);
+            return tt;
+        });
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.mapper.CheckpointMapper;
+import com.example.ordermigratebatchmysql.model.EltCheckpoint;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 窗口 checkpoint（elt_checkpoint）：
+ * - 每個窗口開始記 RUNNING、搬完記 DONE（含搬移筆數 / 耗時 / runId）
+ * - 下一次 run 先讀回來，「已完成、而且是在窗口沉澱之後才搬完」的窗口整個跳過，不再 count / 不再搬
+ * - 中途被 kill 的 run，已 DONE 的窗口下次直接跳過，只重跑沒完成的
+ * elt.checkpoint-enabled=false 時全部 no-op。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CheckpointJournal {
+
+    private final CheckpointMapper mapper;
+    private final EltProperties props;
+
+    @PostConstruct
+    public void init() {
+        if (props.isCheckpointEnabled() && props.isCheckpointAutoCreateTable()) {
+            mapper.createTableIfAbsent();
+            log.info("[ELT-CKPT] elt_checkpoint ready");
+        }
+    }
+
+    public boolean isEnabled() {
+        return props.isCheckpointEnabled();
+    }
+
+    /**
+     * 讀出 [start, end) 內各 kind 已完成的窗口（一個 kind 一次查詢）
+     */
+    public Snapshot snapshot(Collection<String> kinds, LocalDateTime start, LocalDateTime end) {
+        Map<String, List<EltCheckpoint>> done = new HashMap<>();
+        if (isEnabled()) {
+            for (String kind : kinds) {
+                done.put(kind, mapper.selectDone(kind, start, end));
+            }
+        }
+        return new Snapshot(done, props.getCheckpointSettleMinutes());
+    }
+
+    public void markRunning(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        if (!isEnabled()) {
+            return;
+        }
+        EltCheckpoint cp = newCheckpoint(kind, start, end, runId);
+        cp.setStatus(EltCheckpoint.RUNNING);
+        cp.setStartedAt(now());
+        mapper.upsert(cp);
+    }
+
+    public void markDone(String kind, LocalDateTime start, LocalDateTime end, String runId, int moved, long costMs) {
+        if (!isEnabled()) {
+            return;
+        }
+        EltCheckpoint cp = newCheckpoint(kind, start, end, runId);
+        cp.setStatus(EltCheckpoint.DONE);
+        cp.setMoved(moved);
+        cp.setCostMs(costMs);
+        cp.setFinishedAt(now());
+        mapper.upsert(cp);
+    }
+
+    private EltCheckpoint newCheckpoint(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        EltCheckpoint cp = new EltCheckpoint();
+        cp.setKind(kind);
+        cp.setWindowStart(start);
+        cp.setWindowEnd(end);
+        cp.setRunId(runId);
+        return cp;
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of(props.getZoneId()));
+    }
+
+    /**
+     * 一次 run 開始時讀回來的 checkpoint 快照
+     */
+    public static class Snapshot {
+
+        private final Map<String, List<EltCheckpoint>> settledByKind = new HashMap<>();
+
+        Snapshot(Map<String, List<EltCheckpoint>> doneByKind, long settleMinutes) {
+            doneByKind.forEach((kind, list) -> {
+                List<EltCheckpoint> settled = new ArrayList<>();
+                for (EltCheckpoint cp : list) {
+                    // 窗口結束後又過了 settle 時間才搬完，才算數（晚 commit 的資料也一定被帶到了）
+                    if (cp.getFinishedAt() != null
+                            && !cp.getFinishedAt().isBefore(cp.getWindowEnd().plusMinutes(settleMinutes))) {
+                        settled.add(cp);
+                    }
+                }
+                settledByKind.put(kind, settled);
+            });
+        }
+
+        /**
+         * [start, end) 是否已被「已沉澱的 DONE 窗口」完整覆蓋（可以由多個小窗口拼起來）
+         */
+        public boolean isSettled(String kind, LocalDateTime start, LocalDateTime end) {
+            List<EltCheckpoint> list = settledByKind.get(kind);
+            if (list == null || list.isEmpty()) {
+                return false;
+            }
+            // list 已按 WindowStart 排序：從 start 往後接，接不上就是沒覆蓋
+            LocalDateTime covered = start;
+            for (EltCheckpoint cp : list) {
+                if (cp.getWindowStart().isAfter(covered)) {
+                    break;
+                }
+                if (cp.getWindowEnd().isAfter(covered)) {
+                    covered = cp.getWindowEnd();
+                }
+                if (!covered.isBefore(end)) {
+                    return true;
+                }
+            }
+            return !covered.isBefore(end);
+        }
+
+        /** 所有 kind 在 [start, end) 都已完成 */
+        public boolean isSettledForAll(Collection<String> kinds, LocalDateTime start, LocalDateTime end) {
+            for (String kind : kinds) {
+                if (!isSettled(kind, start, end)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
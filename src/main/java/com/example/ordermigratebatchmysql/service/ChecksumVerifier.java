@@ -0,0 +1,273 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.model.ChunkChecksum;
+import com.example.ordermigratebatchmysql.model.KeyBounds;
+import com.example.ordermigratebatchmysql.model.RowChecksum;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 搬完之後的 checksum 比對（elt.verify.enabled=true）：
+ * 一天一個窗口，主鍵 [MIN, MAX]（來源與目標取聯集）切成 chunkSize 的區間，
+ * 每個區間兩邊在 eltExecutor 上同時算「筆數 + BIT_XOR(CRC32(整列))」；一致就跳過，
+ * 不一致的才二分下去，跨度到 rowLevelSpan 以下逐列比，分出「目標缺」「內容不同」「目標多」三種。
+ * repair=true 時把前兩種用 upsert 重搬，再逐列比一次確認。
+ * 目標多出來的列（來源已 purge 掉）只記錄，不算差異。
+ * 二分在呼叫端執行緒上做，pool 裡的工作只跑單一查詢，不會互相等待。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChecksumVerifier {
+
+    private final MigrationJobMapper jobMapper;
+    private final MigrationJobRegistry jobs;
+    private final EltProperties props;
+    private final BatchTransactions batchTx;
+    private final ExecutorService eltExecutor;
+    private final LoadAwareThrottle throttle;
+    private final BatchRetryTemplate retry;
+    private final EltMetrics metrics;
+
+    public boolean isEnabled() {
+        return props.getVerify().isEnabled();
+    }
+
+    /**
+     * 比對 [start, end) 內每一天；回傳 true = 沒有未修好的差異
+     */
+    public boolean verify(List<String> kinds, LocalDate start, LocalDate end, String runId) {
+        EltProperties.Verify cfg = props.getVerify();
+        if (!cfg.isEnabled()) {
+            return true;
+        }
+        if (props.getStream().isEnabled()) {
+            log.warn("[ELT-VERIFY][runId={}] skipped: target is on another instance", runId);
+            return true;
+        }
+
+        log.info("=== [ELT-VERIFY] START | runId={} | jobs={} | days=[{}, {}) | chunkSize={} rowLevelSpan={} parallelChunks={} repair={} ===",
+                runId, kinds, start, end, cfg.getChunkSize(), cfg.getRowLevelSpan(), cfg.getParallelChunks(), cfg.isRepair());
+
+        boolean clean = true;
+        for (String kind : kinds) {
+            MigrationJob job = jobs.get(kind);
+            if (job.isCompressionEnabled() && props.getBulkLoad().isEnabled()) {
+                // 這次 run 的 LOAD DATA 已經寫 MYSQL_ZLIB；只剩以前關著 verify 搬的 lz4 / zstd 列會算成不同
+                log.info("[ELT-VERIFY][{}][runId={}] compression={} + bulk-load: rows loaded while verify was off cannot be decoded in SQL and show up as diff{}",
+                        kind, runId, job.getCompression(),
+                        cfg.isRepair() ? " and get rewritten with COMPRESS()" : " (purge stays blocked until repair=true)");
+            }
+            Stats stats = new Stats();
+            long t0 = System.currentTimeMillis();
+            boolean finished = true;
+            for (LocalDate d = start; d.isBefore(end); d = d.plusDays(1)) {
+                if (!verifyWindow(job, d.atStartOfDay(), d.plusDays(1).atStartOfDay(), runId, stats)) {
+                    // 沒比完的日子不能當成比對過（後面的 purge 只刪比對過的範圍）
+                    log.warn("[ELT-VERIFY][{}][runId={}] interrupted at {} | not clean", kind, runId, d);
+                    finished = false;
+                    break;
+                }
+            }
+            log.info("[ELT-VERIFY][{}][runId={}] {} | cost={} ms", kind, runId, stats, System.currentTimeMillis() - t0);
+            metrics.recordVerify(kind, "missing", stats.missing);
+            metrics.recordVerify(kind, "diff", stats.diff);
+            metrics.recordVerify(kind, "repaired", stats.repaired);
+            clean &= finished && stats.unresolved == 0;
+        }
+
+        log.info("=== [ELT-VERIFY] DONE | runId={} | clean={} ===", runId, clean);
+        return clean;
+    }
+
+    /**
+     * 一個窗口；回傳 false 代表被中斷
+     */
+    private boolean verifyWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId, Stats stats) {
+        KeyBounds src = jobMapper.selectKeyBounds(job, start, end);
+        KeyBounds tgt = jobMapper.selectTargetKeyBounds(job, start, end);
+        if (src.isEmpty() && tgt.isEmpty()) {
+            return true;
+        }
+        long min = src.isEmpty() ? tgt.getMinId() : tgt.isEmpty() ? src.getMinId() : Math.min(src.getMinId(), tgt.getMinId());
+        long max = src.isEmpty() ? tgt.getMaxId() : tgt.isEmpty() ? src.getMaxId() : Math.max(src.getMaxId(), tgt.getMaxId());
+
+        EltProperties.Verify cfg = props.getVerify();
+        List<long[]> ranges = new ArrayList<>();
+        for (long from = min; from <= max; from += cfg.getChunkSize()) {
+            ranges.add(new long[]{from, Math.min(max, from + cfg.getChunkSize() - 1)});
+        }
+
+        int parallel = Math.max(1, cfg.getParallelChunks());
+        for (int i = 0; i < ranges.size(); i += parallel) {
+            List<long[]> group = ranges.subList(i, Math.min(ranges.size(), i + parallel));
+            for (long[] r : compare(job, start, end, group, stats)) {
+                bisect(job, start, end, r[0], r[1], runId, stats);
+            }
+            if (throttle.pauseAfterBatch(job.getName(), runId) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一批區間兩邊同時算 checksum；回傳不一致的區間
+     */
+    private List<long[]> compare(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                 List<long[]> ranges, Stats stats) {
+        List<CompletableFuture<ChunkChecksum>> sources = new ArrayList<>();
+        List<CompletableFuture<ChunkChecksum>> targets = new ArrayList<>();
+        for (long[] r : ranges) {
+            sources.add(CompletableFuture.supplyAsync(
+                    () -> jobMapper.checksumKeyRange(job, false, start, end, r[0], r[1]), eltExecutor));
+            targets.add(CompletableFuture.supplyAsync(
+                    () -> jobMapper.checksumKeyRange(job, true, start, end, r[0], r[1]), eltExecutor));
+        }
+        List<long[]> mismatched = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            stats.chunks++;
+            ChunkChecksum source = sources.get(i).join();
+            ChunkChecksum target = targets.get(i).join();
+            if (source.getRowCount() == 0) {
+                // 來源整段都沒了（已 purge）：目標有的全算「目標多」，不用往下二分
+                stats.extra += target.getRowCount();
+            } else if (!source.matches(target)) {
+                stats.mismatchedChunks++;
+                mismatched.add(ranges.get(i));
+            }
+        }
+        return mismatched;
+    }
+
+    private void bisect(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                        long from, long to, String runId, Stats stats) {
+        if (to - from + 1 <= props.getVerify().getRowLevelSpan()) {
+            diffRows(job, start, end, from, to, runId, stats);
+            return;
+        }
+        long mid = from + (to - from) / 2;
+        List<long[]> halves = List.of(new long[]{from, mid}, new long[]{mid + 1, to});
+        for (long[] r : compare(job, start, end, halves, stats)) {
+            bisect(job, start, end, r[0], r[1], runId, stats);
+        }
+    }
+
+    /**
+     * 最底層：兩邊逐列 CRC32 依主鍵 merge
+     */
+    private void diffRows(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                          long from, long to, String runId, Stats stats) {
+        RowDiff diff = rowDiff(job, start, end, from, to);
+        stats.extra += diff.extra;
+        if (diff.divergent.isEmpty()) {
+            return;
+        }
+        stats.missing += diff.missing;
+        stats.diff += diff.divergent.size() - diff.missing;
+
+        int limit = props.getVerify().getLogIdLimit();
+        log.warn("[ELT-VERIFY][{}][runId={}] MISMATCH window=[{}, {}) | ids=[{}, {}] | missing={} diff={} extra={} | sample={}",
+                job.getName(), runId, start, end, from, to, diff.missing, diff.divergent.size() - diff.missing, diff.extra,
+                diff.divergent.subList(0, Math.min(limit, diff.divergent.size())));
+
+        if (!props.getVerify().isRepair()) {
+            stats.unresolved += diff.divergent.size();
+            return;
+        }
+
+        RetryStats retryStats = new RetryStats();
+        for (long[] run : contiguousRuns(diff.divergent)) {
+            retry.execute(job.getName(), runId, (int) (run[1] - run[0] + 1), retryStats,
+                    ignored -> batchTx.execute(job, status -> jobMapper.copyKeyRange(job, start, end, run[0], run[1], true)));
+        }
+
+        int remaining = rowDiff(job, start, end, from, to).divergent.size();
+        stats.repaired += diff.divergent.size() - remaining;
+        stats.unresolved += remaining;
+        log.info("[ELT-VERIFY][{}][runId={}] REPAIR ids=[{}, {}] | repaired={} | remaining={} | {}",
+                job.getName(), runId, from, to, diff.divergent.size() - remaining, remaining, retryStats);
+    }
+
+    private RowDiff rowDiff(MigrationJob job, LocalDateTime start, LocalDateTime end, long from, long to) {
+        CompletableFuture<List<RowChecksum>> srcFuture = CompletableFuture.supplyAsync(
+                () -> jobMapper.selectRowChecksums(job, false, start, end, from, to), eltExecutor);
+        List<RowChecksum> tgt = jobMapper.selectRowChecksums(job, true, start, end, from, to);
+        List<RowChecksum> src = srcFuture.join();
+
+        RowDiff diff = new RowDiff();
+        int i = 0;
+        int j = 0;
+        while (i < src.size() || j < tgt.size()) {
+            RowChecksum s = i < src.size() ? src.get(i) : null;
+            RowChecksum t = j < tgt.size() ? tgt.get(j) : null;
+            if (t == null || (s != null && s.getId() < t.getId())) {
+                diff.divergent.add(s.getId());
+                diff.missing++;
+                i++;
+            } else if (s == null || t.getId() < s.getId()) {
+                diff.extra++;
+                j++;
+            } else {
+                if (s.getChecksum() != t.getChecksum()) {
+                    diff.divergent.add(s.getId());
+                }
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    /** 排序過的 Id 併成連續區段，重搬時一段一個 upsert */
+    static List<long[]> contiguousRuns(List<Long> ids) {
+        List<long[]> runs = new ArrayList<>();
+        for (long id : ids) {
+            long[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last[1] + 1 == id) {
+                last[1] = id;
+            } else {
+                runs.add(new long[]{id, id});
+            }
+        }
+        return runs;
+    }
+
+    private static class RowDiff {
+        /** 目標缺 + 內容不同的來源 Id（依主鍵排序） */
+        final List<Long> divergent = new ArrayList<>();
+        int missing;
+        int extra;
+    }
+
+    private static class Stats {
+        long chunks;
+        long mismatchedChunks;
+        long missing;
+        long diff;
+        long extra;
+        long repaired;
+        long unresolved;
+
+        @Override
+        public String toString() {
+            return "chunks=" + chunks + " mismatched=" + mismatchedChunks
+                    + " | missing=" + missing + " diff=" + diff + " extra(target only)=" + extra
+                    + " | repaired=" + repaired + " unresolved=" + unresolved;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.model.HourGapCount;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 缺口直方圖：整個窗口每小時還沒搬的筆數，一次 GROUP BY 查回來後就放在記憶體裡，
+ * Runner 規劃 day / half-day / hour 時直接查這裡，不再對 DB 一層一層 COUNT。
+ * 用 int[] / long[]（前綴和），任意整點區間 O(1) 取得缺口。
+ */
+public class GapHistogram {
+
+    private final LocalDateTime origin;
+
+    /** missingPerHour[i] = [origin + i h, origin + (i+1) h) 的缺口 */
+    private final int[] missingPerHour;
+
+    /** prefix[i] = missingPerHour[0 .. i) 的總和 */
+    private final long[] prefix;
+
+    private GapHistogram(LocalDateTime origin, int[] missingPerHour) {
+        this.origin = origin;
+        this.missingPerHour = missingPerHour;
+        this.prefix = new long[missingPerHour.length + 1];
+        for (int i = 0; i < missingPerHour.length; i++) {
+            prefix[i + 1] = prefix[i] + missingPerHour[i];
+        }
+    }
+
+    /**
+     * @param origin 窗頭（hourOffset 的基準點）
+     * @param end    窗尾（不含）
+     * @param rows   countMissingByHour 的結果
+     */
+    public static GapHistogram of(LocalDateTime origin, LocalDateTime end, List<HourGapCount> rows) {
+        long hours = Duration.between(origin, end).toHours();
+        if (origin.plusHours(hours).isBefore(end)) {
+            hours++;
+        }
+        int[] buckets = new int[(int) Math.max(0, hours)];
+        for (HourGapCount row : rows) {
+            int i = row.getHourOffset();
+            if (i >= 0 && i < buckets.length) {
+                buckets[i] += row.getMissing();
+            }
+        }
+        return new GapHistogram(origin, buckets);
+    }
+
+    /**
+     * 已經在記憶體裡算好每小時缺口時用（bitmap 模式）
+     */
+    public static GapHistogram ofBuckets(LocalDateTime origin, int[] missingPerHour) {
+        return new GapHistogram(origin, missingPerHour.clone());
+    }
+
+    /** 整個窗口的缺口 */
+    public int total() {
+        return (int) Math.min(Integer.MAX_VALUE, prefix[missingPerHour.length]);
+    }
+
+    /** [start, end) 是否落在直方圖範圍內 */
+    public boolean covers(LocalDateTime start, LocalDateTime end) {
+        return !start.isBefore(origin) && !end.isAfter(origin.plusHours(missingPerHour.length));
+    }
+
+    /** 兩端都是整點：這時 missing() 是精確值，不是高估 */
+    public boolean isExact(LocalDateTime start, LocalDateTime end) {
+        return !origin.plusHours(floorHours(start)).isBefore(start) && !origin.plusHours(floorHours(end)).isBefore(end);
+    }
+
+    /**
+     * [start, end) 的缺口；不是整點的邊界會把所在那一小時整格算進來（寧可高估，切得細一點）
+     */
+    public int missing(LocalDateTime start, LocalDateTime end) {
+        int from = clamp(floorHours(start));
+        int to = clamp(ceilHours(end));
+        if (to <= from) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, prefix[to] - prefix[from]);
+    }
+
+    /** 小時格數 */
+    public int hours() {
+        return missingPerHour.length;
+    }
+
+    private int floorHours(LocalDateTime t) {
+        return (int) Duration.between(origin, t).toHours();
+    }
+
+    private int ceilHours(LocalDateTime t) {
+        int h = floorHours(t);
+        return origin.plusHours(h).isBefore(t) ? h + 1 : h;
+    }
+
+    private int clamp(int i) {
+        return Math.max(0, Math.min(missingPerHour.length, i));
+    }
+}
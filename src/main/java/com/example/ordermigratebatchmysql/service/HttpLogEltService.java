@@ -5,20 +5,26 @@ import java.time.LocalDateTime;
 public interface HttpLogEltService {
 
     /**
-     * 搬移「支付訂單」的一個時間窗（例如某一天）
-     * @return 此時間窗內實際搬移的筆數
+     * 搬移某個 job（elt.jobs[].name，例如 order / withdraw）的一個時間窗（例如某一天）
+     * @return 此時間窗內實際搬移的筆數，以及窗口是否確定搬完（沒搬完的窗口不記 checkpoint DONE）
      */
-    int runOrderBatches(LocalDateTime start, LocalDateTime end, String runId);
+    WindowCopy runJobBatches(String kind, LocalDateTime start, LocalDateTime end, String runId);
 
     /**
-     * 搬移「代付訂單」的一個時間窗（例如某一天）
-     * @return 此時間窗內實際搬移的筆數
+     * 預估指定時間窗內，還有多少「尚未搬移」的資料（只拿來觀察用）
+     * kind = elt.jobs[].name
      */
-    int runWithdrawBatches(LocalDateTime start, LocalDateTime end, String runId);
+    int countMissing(String kind, LocalDateTime start, LocalDateTime end);
 
     /**
-     * 預估指定時間窗內，還有多少「尚未搬移」的資料（只拿來觀察用）
-     * kind = "order" / "withdraw"
+     * 缺口直方圖：一次查出整個窗口每小時的缺口，Runner 之後的 day / half / hour 切分都查它，不再回 DB COUNT
+     * kind = elt.jobs[].name
      */
-    int countMissing(String kind, LocalDateTime start, LocalDateTime end);
+    GapHistogram loadGapHistogram(String kind, LocalDateTime start, LocalDateTime end);
+
+    /**
+     * 這個 kind 的窗口會走哪個批次模式（limit / keyset / pk-range / bitmap / stream），跟 elt_run_history.Mode 同一組值；
+     * Runner 用它挑同一個模式學到的切窗門檻
+     */
+    String batchMode(String kind);
 }
\ No newline at end of file
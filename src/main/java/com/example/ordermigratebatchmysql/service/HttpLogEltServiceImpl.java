@@ -1,62 +1,132 @@
 package com.example.ordermigratebatchmysql.service;
 
 import com.example.ordermigratebatchmysql.config.EltProperties;
-import com.example.ordermigratebatchmysql.mapper.HttpLogEltMapper;
-import com.example.ordermigratebatchmysql.mapper.WithdrawHttpLogEltMapper;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.stream.StreamingWindowCopier;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import com.example.ordermigratebatchmysql.throttle.ThrottleDecision;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class HttpLogEltServiceImpl implements HttpLogEltService {
 
-    private final HttpLogEltMapper orderMapper;
-    private final WithdrawHttpLogEltMapper withdrawMapper;
+    private final MigrationJobMapper jobMapper;
+    private final MigrationJobRegistry jobs;
     private final EltProperties props;
-    private final PlatformTransactionManager txManager;
+    private final BatchTransactions batchTx;
+    private final LoadAwareThrottle throttle;
+    private final BatchRetryTemplate retry;
+    private final EltMetrics metrics;
+    private final StreamingWindowCopier streamCopier;
+    private final BitmapGapScanner bitmapScanner;
+    private final RunHistoryRecorder history;
+    private final RunHistoryTuner historyTuner;
 
     @Override
-    public int runOrderBatches(LocalDateTime start, LocalDateTime end, String runId) {
-        return runBatches("order", start, end, runId);
+    public WindowCopy runJobBatches(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        metrics.windowStarted(kind);
+        try {
+            return runBatches(kind, start, end, runId);
+        } finally {
+            metrics.windowFinished(kind);
+        }
     }
 
     @Override
-    public int runWithdrawBatches(LocalDateTime start, LocalDateTime end, String runId) {
-        return runBatches("withdraw", start, end, runId);
+    public int countMissing(String kind, LocalDateTime start, LocalDateTime end) {
+        if (streamCopier.isEnabled()) {
+            // 目標在另一台：只能拿來源筆數當缺口上限
+            return metrics.timeCount(kind, "range", () -> jobMapper.countSourceForRange(jobs.get(kind), start, end));
+        }
+        if (props.isBitmapMode()) {
+            BitmapGapScanner.WindowGaps gaps = metrics.timeCount(kind, "bitmap", () -> bitmapScanner.scan(jobs.get(kind), start, end));
+            if (gaps != null) {
+                return gaps.missingCount();
+            }
+        }
+        return metrics.timeCount(kind, "range", () -> jobMapper.countMissingForRange(jobs.get(kind), start, end));
     }
 
     @Override
-    public int countMissing(String kind, LocalDateTime start, LocalDateTime end) {
-        if ("order".equals(kind)) {
-            return orderMapper.countMissingForRange(start, end);
-        } else if ("withdraw".equals(kind)) {
-            return withdrawMapper.countMissingForRange(start, end);
-        } else {
-            throw new IllegalArgumentException("unknown kind: " + kind);
+    public GapHistogram loadGapHistogram(String kind, LocalDateTime start, LocalDateTime end) {
+        MigrationJob job = jobs.get(kind);
+        if (props.isBitmapMode() && !streamCopier.isEnabled()) {
+            BitmapGapScanner.WindowGaps gaps = metrics.timeCount(kind, "bitmap", () -> bitmapScanner.scan(job, start, end));
+            if (gaps != null) {
+                log.info("[ELT][{}] gap histogram via bitmap | window=[{}, {}) | {}", kind, start, end, gaps);
+                return gaps.histogram();
+            }
         }
+        return GapHistogram.of(start, end, metrics.timeCount(kind, "histogram", () -> streamCopier.isEnabled()
+                ? jobMapper.countSourceByHour(job, start, end)
+                : jobMapper.countMissingByHour(job, start, end)));
+    }
+
+    @Override
+    public String batchMode(String kind) {
+        if (streamCopier.isEnabled()) {
+            return "stream";
+        }
+        if (props.isBitmapMode()) {
+            return "bitmap";
+        }
+        if (props.isPkRangeMode() || jobs.get(kind).isPlanFallback()) {
+            return "pk-range";
+        }
+        return props.isKeysetMode() ? "keyset" : "limit";
     }
 
     /**
      * 在「指定時間窗」內做多批搬移（例如：某一天 00:00~24:00）
      */
-    private int runBatches(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+    private WindowCopy runBatches(String kind, LocalDateTime start, LocalDateTime end, String runId) {
+        MigrationJob job = jobs.get(kind);
+        if (streamCopier.isEnabled()) {
+            return streamCopier.copyWindow(job, start, end, runId);
+        }
+        if (props.isBitmapMode()) {
+            BitmapGapScanner.WindowGaps gaps = bitmapScanner.scan(job, start, end);
+            if (gaps != null) {
+                return runBatchesBitmap(job, start, end, runId, gaps);
+            }
+            return runBatchesPkRange(job, start, end, runId);
+        }
+        if (props.isPkRangeMode() || job.isPlanFallback()) {
+            // planFallback：QueryPlanGuard 判定 anti-join / ORDER BY LIMIT 的計畫不安全
+            return runBatchesPkRange(job, start, end, runId);
+        }
+        if (props.isKeysetMode()) {
+            return runBatchesKeyset(job, start, end, runId);
+        }
+
         int totalMoved = 0;
+        boolean complete = false;
+        SplitThresholds tuned = historyTuner.thresholds(kind, "limit");
+        int batchSize = tuned.batchSize();
+        RetryStats retryStats = new RetryStats();
 
         for (int batch = 1; batch <= props.getMaxBatchesPerRun(); batch++) {
             long t0 = System.currentTimeMillis();
 
-            int affected = doOneBatchTransactional(kind, start, end);
+            int affected = retry.execute(kind, runId, batchSize, retryStats,
+                    size -> doOneBatchTransactional(job, start, end, size));
             long cost = System.currentTimeMillis() - t0;
 
             if (affected <= 0) {
                 log.info("[ELT][{}][runId={}] no more rows | totalMoved={} | batch#={}",
                         kind, runId, totalMoved, batch);
+                complete = true;
                 break;
             }
 
@@ -66,44 +136,268 @@ public class HttpLogEltServiceImpl implements HttpLogEltService {
             log.info("[ELT][{}][runId={}] batch#{} END | affected={} | cost={} ms | ~{}/s | totalMoved={}",
                     kind, runId, batch, affected, cost, String.format("%.0f", qps), totalMoved);
 
-            Long slowMs = props.getSlowBatchMs();
-            if (slowMs != null && cost >= slowMs) {
+            Long slowMs = tuned.slowBatchMs();
+            boolean slow = tuned.isSlow(cost);
+            metrics.recordBatch(kind, "limit", affected, cost, batchSize, slow);
+            history.record(kind, "limit", start, end, batchSize, affected, cost, runId);
+            if (slow) {
+                log.warn("[ELT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={}",
+                        kind, runId, batch, cost, slowMs, affected);
+            }
+
+            // 每批之間依 DB 負載喘一下；DB 忙的時候下一批也縮小
+            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+            if (decision == null) {
+                break;
+            }
+            batchSize = decision.nextBatchSize(tuned.batchSize());
+        }
+
+        if (!complete) {
+            log.warn("[ELT][{}][runId={}] window=[{}, {}) stopped before it ran dry | maxBatchesPerRun={}",
+                    kind, runId, start, end, props.getMaxBatchesPerRun());
+        }
+        log.info("[ELT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | {}",
+                kind, runId, start, end, totalMoved, retryStats);
+        return new WindowCopy(totalMoved, complete);
+    }
+
+    /**
+     * keyset 模式：每批先找出游標之後第 batchSize 筆當上界，只搬 (游標, 上界] 這段，搬完把游標推到上界。
+     * 某段早就搬過（affected=0）也照樣往前推，直到游標走到窗尾才停。
+     */
+    private WindowCopy runBatchesKeyset(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        String kind = job.getName();
+        int totalMoved = 0;
+        KeysetCursor cursor = new KeysetCursor();
+        SplitThresholds tuned = historyTuner.thresholds(kind, "keyset");
+        int batchSize = tuned.batchSize();
+        RetryStats retryStats = new RetryStats();
+        // maxBatchesPerRun 只算真的搬到東西的批次：一批是固定一段來源列，早就搬過的段（affected=0）不算，
+        // 否則來源超過 maxBatchesPerRun × batchSize 列的窗口永遠走不到窗尾、永遠記不到 DONE
+        int productive = 0;
+
+        for (int batch = 1; productive < props.getMaxBatchesPerRun(); batch++) {
+            long t0 = System.currentTimeMillis();
+
+            // 重試時用（可能砍半過的）size 重新 stage 上界
+            int affected = retry.execute(kind, runId, batchSize, retryStats, size -> {
+                cursor.stage(jobMapper.selectBatchUpperKey(job, start, end,
+                        cursor.getLastTime(), cursor.getLastId(), size - 1));
+                return doOneKeysetBatchTransactional(job, start, end, cursor);
+            });
+            long cost = System.currentTimeMillis() - t0;
+
+            cursor.commit();
+            totalMoved += affected;
+            if (affected > 0) {
+                productive++;
+            }
+            double qps = (affected * 1000.0) / Math.max(1, cost);
+
+            log.info("[ELT][{}][runId={}] batch#{} END | affected={} | cost={} ms | ~{}/s | totalMoved={} | cursor={}",
+                    kind, runId, batch, affected, cost, String.format("%.0f", qps), totalMoved, cursor);
+
+            Long slowMs = tuned.slowBatchMs();
+            boolean slow = tuned.isSlow(cost);
+            metrics.recordBatch(kind, "keyset", affected, cost, batchSize, slow);
+            history.record(kind, "keyset", start, end, batchSize, affected, cost, runId);
+            if (slow) {
                 log.warn("[ELT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={}",
                         kind, runId, batch, cost, slowMs, affected);
             }
 
-            // 每批之間稍微喘一下，降低長時間壓力
-            if (props.getPauseMs() > 0) {
-                try {
-                    Thread.sleep(props.getPauseMs());
-                } catch (InterruptedException ignored) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+            if (cursor.isReachedEnd()) {
+                log.info("[ELT][{}][runId={}] cursor reached window end | totalMoved={} | batch#={}",
+                        kind, runId, totalMoved, batch);
+                break;
+            }
+
+            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+            if (decision == null) {
+                break;
             }
+            batchSize = decision.nextBatchSize(tuned.batchSize());
         }
 
-        log.info("[ELT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={}",
-                kind, runId, start, end, totalMoved);
-        return totalMoved;
+        if (!cursor.isReachedEnd()) {
+            log.warn("[ELT][{}][runId={}] window=[{}, {}) stopped before window end | maxBatchesPerRun={} | cursor={}",
+                    kind, runId, start, end, props.getMaxBatchesPerRun(), cursor);
+        }
+        log.info("[ELT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | mode=keyset | {}",
+                kind, runId, start, end, totalMoved, retryStats);
+        return new WindowCopy(totalMoved, cursor.isReachedEnd());
+    }
+
+    /**
+     * PK 區間模式：先查窗口的 MIN/MAX(Id)，再一段一段 [from, from + chunk) 用 INSERT IGNORE 搬；
+     * 每段成本只跟 Id 跨度有關，不受某個小時特別熱影響。走到 MAX(Id) 就停。
+     */
+    private WindowCopy runBatchesPkRange(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        String kind = job.getName();
+        int totalMoved = 0;
+        PkRangeCursor cursor = new PkRangeCursor(jobMapper.selectKeyBounds(job, start, end));
+        int chunkSize = props.getPkRangeChunkSize();
+        SplitThresholds tuned = historyTuner.thresholds(kind, "pk-range");
+        RetryStats retryStats = new RetryStats();
+
+        if (cursor.isReachedEnd()) {
+            log.info("[ELT][{}][runId={}] window=[{}, {}) has no rows | mode=pk-range", kind, runId, start, end);
+            return WindowCopy.done(0);
+        }
+
+        // 同 keyset：一段 Id 跨度早就搬過（affected=0）不算進 maxBatchesPerRun
+        int productive = 0;
+        for (int batch = 1; productive < props.getMaxBatchesPerRun(); batch++) {
+            long t0 = System.currentTimeMillis();
+
+            long from = cursor.getFrom();
+            int affected = retry.execute(kind, runId, chunkSize, retryStats,
+                    size -> doOnePkRangeBatchTransactional(job, start, end, from, cursor.stage(size)));
+            long to = cursor.getStagedTo();
+            long cost = System.currentTimeMillis() - t0;
+
+            cursor.commit();
+            totalMoved += affected;
+            if (affected > 0) {
+                productive++;
+            }
+            double qps = (affected * 1000.0) / Math.max(1, cost);
+
+            log.info("[ELT][{}][runId={}] batch#{} END | range=[{}, {}] | affected={} | cost={} ms | ~{}/s | totalMoved={}",
+                    kind, runId, batch, from, to, affected, cost, String.format("%.0f", qps), totalMoved);
+
+            Long slowMs = tuned.slowBatchMs();
+            boolean slow = tuned.isSlow(cost);
+            metrics.recordBatch(kind, "pk-range", affected, cost, chunkSize, slow);
+            history.record(kind, "pk-range", start, end, chunkSize, affected, cost, runId);
+            if (slow) {
+                log.warn("[ELT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={}",
+                        kind, runId, batch, cost, slowMs, affected);
+            }
+
+            if (cursor.isReachedEnd()) {
+                log.info("[ELT][{}][runId={}] cursor reached window end | totalMoved={} | batch#={}",
+                        kind, runId, totalMoved, batch);
+                break;
+            }
+
+            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+            if (decision == null) {
+                break;
+            }
+            chunkSize = decision.nextBatchSize(props.getPkRangeChunkSize());
+        }
+
+        if (!cursor.isReachedEnd()) {
+            log.warn("[ELT][{}][runId={}] stopped before window end | maxBatchesPerRun={} | remaining={}",
+                    kind, runId, props.getMaxBatchesPerRun(), cursor);
+        }
+
+        log.info("[ELT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | mode=pk-range | {}",
+                kind, runId, start, end, totalMoved, retryStats);
+        return new WindowCopy(totalMoved, cursor.isReachedEnd());
+    }
+
+    /**
+     * bitmap 模式：缺的 Id 已經在記憶體（由小到大），每 batchSize 個一批；
+     * 一批的 Id 剛好連續就用 BETWEEN（copyKeyRange），否則用 IN 清單
+     */
+    private WindowCopy runBatchesBitmap(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId,
+                                 BitmapGapScanner.WindowGaps gaps) {
+        String kind = job.getName();
+        log.info("[ELT][{}][runId={}] window=[{}, {}) | mode=bitmap | {}", kind, runId, start, end, gaps);
+        if (gaps.missing().isEmpty()) {
+            return WindowCopy.done(0);
+        }
+
+        int totalMoved = 0;
+        SplitThresholds tuned = historyTuner.thresholds(kind, "bitmap");
+        int batchSize = tuned.batchSize();
+        RetryStats retryStats = new RetryStats();
+        PrimitiveIterator.OfLong ids = gaps.missing().iterator();
+        long[] buf = new long[batchSize];
+
+        for (int batch = 1; batch <= props.getMaxBatchesPerRun() && ids.hasNext(); batch++) {
+            int n = 0;
+            while (n < batchSize && ids.hasNext()) {
+                buf[n++] = ids.nextLong();
+            }
+            long[] keys = Arrays.copyOf(buf, n);
+            boolean contiguous = keys[n - 1] - keys[0] + 1 == n;
+
+            long t0 = System.currentTimeMillis();
+            int affected = retry.execute(kind, runId, n, retryStats,
+                    size -> doOneBitmapBatchTransactional(job, start, end, keys, contiguous));
+            long cost = System.currentTimeMillis() - t0;
+            totalMoved += affected;
+
+            log.info("[ELT][{}][runId={}] batch#{} END | ids=[{}, {}] x{} ({}) | affected={} | cost={} ms | totalMoved={}",
+                    kind, runId, batch, keys[0], keys[n - 1], n, contiguous ? "range" : "in-list", affected, cost, totalMoved);
+
+            Long slowMs = tuned.slowBatchMs();
+            boolean slow = tuned.isSlow(cost);
+            metrics.recordBatch(kind, "bitmap", affected, cost, batchSize, slow);
+            history.record(kind, "bitmap", start, end, batchSize, affected, cost, runId);
+            if (slow) {
+                log.warn("[ELT][{}][runId={}] SLOW batch | batch#{} | cost={} ms (>= {} ms) | affected={}",
+                        kind, runId, batch, cost, slowMs, affected);
+            }
+
+            if (!ids.hasNext()) {
+                break;
+            }
+            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+            if (decision == null) {
+                break;
+            }
+            batchSize = decision.nextBatchSize(tuned.batchSize());
+            if (batchSize > buf.length) {
+                buf = new long[batchSize];
+            }
+        }
+
+        if (ids.hasNext()) {
+            log.warn("[ELT][{}][runId={}] stopped before all missing ids were copied | maxBatchesPerRun={}",
+                    kind, runId, props.getMaxBatchesPerRun());
+        }
+        log.info("[ELT][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | mode=bitmap | {}",
+                kind, runId, start, end, totalMoved, retryStats);
+        return new WindowCopy(totalMoved, !ids.hasNext());
     }
 
     /**
      * 單批 + TransactionTemplate => 一批一個 tx，不會變成超長交易
+     * 隔離級別 / timeout / session 變數依 job 的 session profile（elt.session / elt.jobs[].session）
+     */
+    private int doOneBatchTransactional(MigrationJob job, LocalDateTime start, LocalDateTime end, int batchSize) {
+        return batchTx.execute(job, status -> jobMapper.insertMissingForRange(job, start, end, batchSize));
+    }
+
+    /**
+     * keyset 單批：只搬 (游標, 上界] 這段，一批一個 tx
+     */
+    private int doOneKeysetBatchTransactional(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                              KeysetCursor cursor) {
+        return batchTx.execute(job, status -> jobMapper.insertMissingForKeyRange(job, start, end,
+                cursor.getLastTime(), cursor.getLastId(), cursor.getStagedTime(), cursor.getStagedId()));
+    }
+
+    /**
+     * bitmap 單批：指定 Id 一個 tx；連續的 Id 用 BETWEEN，SQL 比較短
+     */
+    private int doOneBitmapBatchTransactional(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                              long[] keys, boolean contiguous) {
+        return batchTx.execute(job, status -> contiguous
+                ? jobMapper.copyKeyRange(job, start, end, keys[0], keys[keys.length - 1], false)
+                : jobMapper.copyKeys(job, start, end, keys));
+    }
+
+    /**
+     * PK 區間單批：[from, to] 一個 tx；INSERT IGNORE 所以同一段重跑也不會重複
      */
-    private int doOneBatchTransactional(String kind, LocalDateTime start, LocalDateTime end) {
-        TransactionTemplate tt = new TransactionTemplate(txManager);
-        tt.setReadOnly(false);
-        // 需要可以再加 timeout / 隔離級別:
-        // tt.setTimeout(30);
-        // tt.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
-
-        return tt.execute(status -> {
-            if ("order".equals(kind)) {
-                return orderMapper.insertMissingForRange(start, end, props.getBatchSize());
-            } else {
-                return withdrawMapper.insertMissingForRange(start, end, props.getBatchSize());
-            }
-        });
+    private int doOnePkRangeBatchTransactional(MigrationJob job, LocalDateTime start, LocalDateTime end,
+                                               long from, long to) {
+        return batchTx.execute(job, status -> jobMapper.copyKeyRange(job, start, end, from, to, props.isPkRangeUpsert()));
     }
 }
\ No newline at end of file
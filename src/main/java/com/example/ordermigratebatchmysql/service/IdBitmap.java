@@ -0,0 +1,184 @@
+package com.example.ordermigratebatchmysql.service;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Roaring 風格的 long Id 集合（不 boxing）：Id 的高 48 bit 當 key，低 16 bit 放進該 key 的 container。
+ * - container 筆數 <= 4096：排序過的 char[]（每筆 2 bytes）
+ * - 超過 4096：固定 1024 個 long 的 bitmap（8 KB，每個 Id 1 bit）
+ * 所以不管疏密，一個 container 最多 8 KB，整體記憶體上限 ≈ (MAX(Id) - MIN(Id)) / 8 bytes。
+ * Id 大致遞增地加入時走尾端快速路徑，不用二分搜尋。不是 thread-safe。
+ */
+public final class IdBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    /** keys[i] = 第 i 個 container 的 Id >>> 16，遞增 */
+    private long[] keys = new long[16];
+
+    /** char[]（array container）或 long[]（bitmap container） */
+    private Object[] containers = new Object[16];
+
+    /** 各 container 的筆數 */
+    private int[] sizes = new int[16];
+
+    private int containerCount;
+    private long cardinality;
+
+    public void add(long id) {
+        long key = id >>> 16;
+        char low = (char) id;
+        int i = indexOf(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key);
+        }
+        Object c = containers[i];
+        if (c instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                bits[low >>> 6] |= mask;
+                sizes[i]++;
+                cardinality++;
+            }
+            return;
+        }
+        char[] arr = (char[]) c;
+        int size = sizes[i];
+        int pos = size > 0 && arr[size - 1] < low ? -size - 1 : Arrays.binarySearch(arr, 0, size, low);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (size == ARRAY_MAX) {
+            long[] bits = new long[BITMAP_WORDS];
+            for (int k = 0; k < size; k++) {
+                bits[arr[k] >>> 6] |= 1L << arr[k];
+            }
+            bits[low >>> 6] |= 1L << low;
+            containers[i] = bits;
+        } else {
+            if (size == arr.length) {
+                arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, arr.length * 2));
+                containers[i] = arr;
+            }
+            System.arraycopy(arr, pos, arr, pos + 1, size - pos);
+            arr[pos] = low;
+        }
+        sizes[i]++;
+        cardinality++;
+    }
+
+    public boolean contains(long id) {
+        int i = indexOf(id >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) id;
+        Object c = containers[i];
+        if (c instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) c, 0, sizes[i], low) >= 0;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /** 大約佔用的 heap（container 內容 + 索引陣列） */
+    public long sizeInBytes() {
+        long bytes = keys.length * 8L + containers.length * 8L + sizes.length * 4L;
+        for (int i = 0; i < containerCount; i++) {
+            bytes += containers[i] instanceof long[] ? BITMAP_WORDS * 8L : ((char[]) containers[i]).length * 2L;
+        }
+        return bytes;
+    }
+
+    /** 由小到大走過所有 Id */
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int ci = 0;
+            /** array container：下一個 index；bitmap container：下一個要看的 bit 位置 */
+            private int pos = 0;
+            private long next = advance();
+            private boolean hasNext = ci < containerCount;
+
+            private long advance() {
+                while (ci < containerCount) {
+                    Object c = containers[ci];
+                    long high = keys[ci] << 16;
+                    if (c instanceof long[] bits) {
+                        while (pos < 65536) {
+                            long word = bits[pos >>> 6] >>> (pos & 63);
+                            if (word != 0) {
+                                pos += Long.numberOfTrailingZeros(word);
+                                return high | pos++;
+                            }
+                            pos = (pos | 63) + 1;
+                        }
+                    } else if (pos < sizes[ci]) {
+                        return high | ((char[]) c)[pos++];
+                    }
+                    ci++;
+                    pos = 0;
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext) {
+                    throw new NoSuchElementException();
+                }
+                long out = next;
+                next = advance();
+                hasNext = ci < containerCount;
+                return out;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "IdBitmap{ids=" + cardinality + ", containers=" + containerCount + ", ~" + sizeInBytes() / 1024 + " KB}";
+    }
+
+    private int indexOf(long key) {
+        if (containerCount > 0 && keys[containerCount - 1] == key) {
+            return containerCount - 1;
+        }
+        if (containerCount == 0 || keys[containerCount - 1] < key) {
+            return -containerCount - 1;
+        }
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int i, long key) {
+        if (containerCount == keys.length) {
+            int cap = keys.length * 2;
+            keys = Arrays.copyOf(keys, cap);
+            containers = Arrays.copyOf(containers, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+        }
+        System.arraycopy(keys, i, keys, i + 1, containerCount - i);
+        System.arraycopy(containers, i, containers, i + 1, containerCount - i);
+        System.arraycopy(sizes, i, sizes, i + 1, containerCount - i);
+        keys[i] = key;
+        containers[i] = new char[4];
+        sizes[i] = 0;
+        containerCount++;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.model.HttpLogKey;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * keyset 模式的游標：記住上一批最後一筆 (SubmitTime, Id)，下一批只讀它之後的資料。
+ * 上界查不到（剩下不足一批）時，該批直接搬到窗尾，游標就算走完。
+ */
+@Getter
+public class KeysetCursor implements BatchCursor {
+
+    /** 上一批的上界；null 代表還在窗頭 */
+    private LocalDateTime lastTime;
+    private Long lastId;
+
+    /** 游標是否已走到窗尾 */
+    private boolean reachedEnd;
+
+    /** 這一批查到的上界，commit 之後才生效 */
+    @Getter(AccessLevel.NONE)
+    private HttpLogKey staged;
+    @Getter(AccessLevel.NONE)
+    private boolean stagedEnd;
+
+    /**
+     * 記下這一批的上界（還沒 commit 前游標不動）
+     * @param upper 這批的上界；null 代表這批會直接搬到窗尾
+     */
+    public void stage(HttpLogKey upper) {
+        this.staged = upper;
+        this.stagedEnd = (upper == null);
+    }
+
+    /**
+     * 這一批 commit 之後，把游標推到剛剛 stage 的上界
+     */
+    @Override
+    public void commit() {
+        if (stagedEnd) {
+            reachedEnd = true;
+        } else if (staged != null) {
+            this.lastTime = staged.getSubmitTime();
+            this.lastId = staged.getId();
+        }
+        this.staged = null;
+        this.stagedEnd = false;
+    }
+
+    /** 這一批的上界時間；null 代表搬到窗尾 */
+    public LocalDateTime getStagedTime() {
+        return staged != null ? staged.getSubmitTime() : null;
+    }
+
+    /** 這一批的上界 Id；null 代表搬到窗尾 */
+    public Long getStagedId() {
+        return staged != null ? staged.getId() : null;
+    }
+
+    @Override
+    public String toString() {
+        return reachedEnd ? "END" : "(" + lastTime + ", " + lastId + ")";
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.mapper.PartitionMapper;
+import com.example.ordermigratebatchmysql.model.TablePartition;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 月表分區維護（elt.partition.enabled=true）：
+ * - prepare：開跑前確認目標表是依 timeColumn RANGE 分區，把到「窗口最後一個月 + monthsAhead」為止的月分區建好
+ *   （有 MAXVALUE 分區就從它前面 REORGANIZE 出來），並打開 job.targetPartitioned 讓 anti-join 帶窗口條件做 pruning
+ * - expire：跑完把整個月都早於保留期限的分區 DROP，或 EXCHANGE 到 表名_pYYYYMM 之後再 DROP（資料留在獨立表）；
+ *   跟 purge 一樣要開 elt.verify 才動手，而且不碰這次 run 剛搬進來的月份
+ * 分區一律命名 pYYYYMM，內容是該月 [1 號, 下個月 1 號)。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PartitionManager {
+
+    /** MySQL TO_DAYS('1970-01-01') */
+    private static final long TO_DAYS_EPOCH = 719528L;
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final PartitionMapper partitionMapper;
+    private final MigrationJobRegistry jobs;
+    private final EltProperties props;
+
+    public boolean isEnabled() {
+        return props.getPartition().isEnabled();
+    }
+
+    /**
+     * 預建分區到 lastDay 所在月份 + monthsAhead
+     */
+    public void prepare(List<String> kinds, LocalDate lastDay, String runId) {
+        if (!isEnabled()) {
+            return;
+        }
+        YearMonth until = YearMonth.from(lastDay).plusMonths(props.getPartition().getMonthsAhead());
+        for (String kind : kinds) {
+            MigrationJob job = jobs.get(kind);
+            Layout layout = layout(job, runId);
+            if (layout == null) {
+                continue;
+            }
+            job.setTargetPartitioned(true);
+
+            int created = 0;
+            for (YearMonth m = YearMonth.from(layout.upperBound); !m.isAfter(until); m = m.plusMonths(1)) {
+                LocalDate lessThan = m.plusMonths(1).atDay(1);
+                String name = m.format(PARTITION_NAME);
+                String value = layout.style.render(lessThan, zone());
+                if (layout.maxValue != null) {
+                    if (layout.maxValue.getTableRows() > 0) {
+                        log.warn("[ELT-PARTITION][{}][runId={}] {} holds ~{} rows, REORGANIZE will copy them",
+                                kind, runId, layout.maxValue.getPartitionName(), layout.maxValue.getTableRows());
+                    }
+                    partitionMapper.splitMaxValuePartition(job.getTargetTable(), layout.maxValue.getPartitionName(), name, value);
+                } else {
+                    partitionMapper.addPartition(job.getTargetTable(), name, value);
+                }
+                created++;
+                log.info("[ELT-PARTITION][{}][runId={}] CREATE {} VALUES LESS THAN ({})", kind, runId, name, value);
+            }
+            log.info("[ELT-PARTITION][{}][runId={}] READY | table={} | style={} | partitions={} | created={} | coveredUntil={}",
+                    kind, runId, job.getTargetTable(), layout.style, layout.partitions.size(), created, until);
+        }
+    }
+
+    /**
+     * 保留期限之前的整月分區：依 expireAction 處理
+     * @param from 這次 run 搬移的起日（含）；這個月以後的分區一律保留，不然剛搬進來的列會跟著被 DROP，
+     *             接著 purge 又刪掉來源，兩邊都沒了
+     */
+    public void expire(List<String> kinds, LocalDate from, String runId) {
+        EltProperties.Partition cfg = props.getPartition();
+        if (!cfg.isEnabled() || cfg.getRetentionMonths() <= 0) {
+            return;
+        }
+        String action = cfg.getExpireAction().toLowerCase(Locale.ROOT);
+        if (!action.equals("none") && !props.getVerify().isEnabled()) {
+            log.warn("[ELT-PARTITION][runId={}] expire skipped: elt.verify.enabled=false, copied rows were never compared (expireAction={})",
+                    runId, action);
+            return;
+        }
+        LocalDate keepFrom = YearMonth.now(zone()).minusMonths(cfg.getRetentionMonths() - 1L).atDay(1);
+        LocalDate runMonth = YearMonth.from(from).atDay(1);
+        if (runMonth.isBefore(keepFrom)) {
+            log.warn("[ELT-PARTITION][runId={}] run range starts at {}, before retention start {} (retentionMonths={}): keeping partitions from {}",
+                    runId, from, keepFrom, cfg.getRetentionMonths(), runMonth);
+            keepFrom = runMonth;
+        }
+
+        for (String kind : kinds) {
+            MigrationJob job = jobs.get(kind);
+            Layout layout = layout(job, runId);
+            if (layout == null) {
+                continue;
+            }
+            for (TablePartition p : layout.partitions) {
+                if (p.isMaxValue()) {
+                    continue;
+                }
+                LocalDate lessThan = layout.style.parse(p.getPartitionDescription(), zone());
+                if (lessThan == null || lessThan.isAfter(keepFrom)) {
+                    continue;
+                }
+                switch (action) {
+                    case "drop" -> partitionMapper.dropPartition(job.getTargetTable(), p.getPartitionName());
+                    case "exchange" -> {
+                        if (!exchangeOut(job, p, runId)) {
+                            continue;
+                        }
+                        partitionMapper.dropPartition(job.getTargetTable(), p.getPartitionName());
+                    }
+                    default -> {
+                        log.info("[ELT-PARTITION][{}][runId={}] EXPIRED {} (< {}) | rows~{} | expireAction=none, kept",
+                                kind, runId, p.getPartitionName(), lessThan, p.getTableRows());
+                        continue;
+                    }
+                }
+                log.info("[ELT-PARTITION][{}][runId={}] {} {} (< {}) | rows~{}",
+                        kind, runId, action.toUpperCase(Locale.ROOT), p.getPartitionName(), lessThan, p.getTableRows());
+            }
+        }
+    }
+
+    /**
+     * EXCHANGE 到 表名_pYYYYMM；那張表已經存在就不動（避免把別人的資料換進月表）
+     */
+    private boolean exchangeOut(MigrationJob job, TablePartition p, String runId) {
+        String archiveTable = job.getTargetTable() + "_" + p.getPartitionName();
+        String[] st = splitTable(archiveTable);
+        if (partitionMapper.countTable(st[0], st[1]) > 0) {
+            log.warn("[ELT-PARTITION][{}][runId={}] EXCHANGE {} skipped: {} already exists",
+                    job.getName(), runId, p.getPartitionName(), archiveTable);
+            return false;
+        }
+        partitionMapper.createExchangeTable(archiveTable, job.getTargetTable());
+        partitionMapper.removePartitioning(archiveTable);
+        partitionMapper.exchangePartition(job.getTargetTable(), p.getPartitionName(), archiveTable);
+        return true;
+    }
+
+    /**
+     * 讀目標表分區；沒分區 / 不是依 timeColumn 的 RANGE 分區回傳 null
+     */
+    private Layout layout(MigrationJob job, String runId) {
+        String[] st = splitTable(job.getTargetTable());
+        List<TablePartition> parts = partitionMapper.selectPartitions(st[0], st[1]);
+        if (parts.isEmpty() || parts.get(0).getPartitionName() == null) {
+            log.info("[ELT-PARTITION][{}][runId={}] {} is not partitioned, nothing to do", job.getName(), runId, job.getTargetTable());
+            return null;
+        }
+        TablePartition first = parts.get(0);
+        BoundStyle style = BoundStyle.detect(first.getPartitionMethod(), first.getPartitionExpression(), job.getTimeColumn());
+        if (style == null) {
+            log.warn("[ELT-PARTITION][{}][runId={}] {} is partitioned by {} ({}), not a monthly RANGE on {}; skipped",
+                    job.getName(), runId, job.getTargetTable(), first.getPartitionMethod(),
+                    first.getPartitionExpression(), job.getTimeColumn());
+            return null;
+        }
+
+        Layout layout = new Layout(style, parts);
+        for (TablePartition p : parts) {
+            if (p.isMaxValue()) {
+                layout.maxValue = p;
+                continue;
+            }
+            LocalDate bound = style.parse(p.getPartitionDescription(), zone());
+            if (bound != null && (layout.upperBound == null || bound.isAfter(layout.upperBound))) {
+                layout.upperBound = bound;
+            }
+        }
+        if (layout.upperBound == null) {
+            // 只有 MAXVALUE 分區：從這個月開始切
+            layout.upperBound = YearMonth.now(zone()).atDay(1);
+        }
+        return layout;
+    }
+
+    private ZoneId zone() {
+        return ZoneId.of(props.getZoneId());
+    }
+
+    /** schema.table → [schema, table]；沒 schema 時 schema = null（用 DATABASE()） */
+    static String[] splitTable(String table) {
+        int dot = table.indexOf('.');
+        return dot < 0 ? new String[]{null, table} : new String[]{table.substring(0, dot), table.substring(dot + 1)};
+    }
+
+    private static class Layout {
+        final BoundStyle style;
+        final List<TablePartition> partitions;
+        /** 現有非 MAXVALUE 分區裡最大的 LESS THAN */
+        LocalDate upperBound;
+        TablePartition maxValue;
+
+        Layout(BoundStyle style, List<TablePartition> partitions) {
+            this.style = style;
+            this.partitions = partitions;
+        }
+    }
+
+    /**
+     * VALUES LESS THAN 的三種寫法
+     */
+    enum BoundStyle {
+        /** PARTITION BY RANGE COLUMNS(SubmitTime)：'2026-11-01 00:00:00' */
+        COLUMNS,
+        /** PARTITION BY RANGE (TO_DAYS(SubmitTime))：739921 */
+        TO_DAYS,
+        /** PARTITION BY RANGE (UNIX_TIMESTAMP(SubmitTime))：TIMESTAMP 欄位用 */
+        UNIX_TIMESTAMP;
+
+        static BoundStyle detect(String method, String expression, String timeColumn) {
+            if (method == null || expression == null
+                    || !expression.replace("`", "").toLowerCase(Locale.ROOT).contains(timeColumn.toLowerCase(Locale.ROOT))) {
+                return null;
+            }
+            String expr = expression.toLowerCase(Locale.ROOT);
+            if ("RANGE COLUMNS".equalsIgnoreCase(method)) {
+                return COLUMNS;
+            }
+            if (!"RANGE".equalsIgnoreCase(method)) {
+                return null;
+            }
+            if (expr.contains("to_days")) {
+                return TO_DAYS;
+            }
+            if (expr.contains("unix_timestamp")) {
+                return UNIX_TIMESTAMP;
+            }
+            return null;
+        }
+
+        String render(LocalDate lessThan, ZoneId zone) {
+            return switch (this) {
+                case COLUMNS -> "'" + lessThan.atStartOfDay().format(DATETIME) + "'";
+                case TO_DAYS -> "TO_DAYS('" + lessThan + "')";
+                case UNIX_TIMESTAMP -> "UNIX_TIMESTAMP('" + lessThan.atStartOfDay().format(DATETIME) + "')";
+            };
+        }
+
+        LocalDate parse(String description, ZoneId zone) {
+            if (description == null || "MAXVALUE".equalsIgnoreCase(description)) {
+                return null;
+            }
+            String v = description.replace("'", "").trim();
+            try {
+                return switch (this) {
+                    case COLUMNS -> v.length() > 10 ? LocalDateTime.parse(v, DATETIME).toLocalDate() : LocalDate.parse(v);
+                    case TO_DAYS -> LocalDate.ofEpochDay(Long.parseLong(v) - TO_DAYS_EPOCH);
+                    case UNIX_TIMESTAMP -> LocalDateTime.ofInstant(Instant.ofEpochSecond(Long.parseLong(v)), zone).toLocalDate();
+                };
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.model.KeyBounds;
+import lombok.Getter;
+
+/**
+ * PK 區間模式的游標：把窗口的 [MIN(Id), MAX(Id)] 切成固定長度的區間，一批搬一段 [from, to]。
+ * 區間彼此不重疊，也不需要 ORDER BY / anti-join。
+ */
+@Getter
+public class PkRangeCursor implements BatchCursor {
+
+    private final long maxId;
+    private long from;
+    private long stagedTo;
+    private boolean reachedEnd;
+
+    public PkRangeCursor(KeyBounds bounds) {
+        if (bounds == null || bounds.isEmpty()) {
+            this.maxId = 0;
+            this.reachedEnd = true;
+        } else {
+            this.maxId = bounds.getMaxId();
+            this.from = bounds.getMinId();
+        }
+    }
+
+    /**
+     * 決定本批的區間 [from, to]，長度 = chunkSize 個 Id
+     * @return 本批的 to
+     */
+    public long stage(int chunkSize) {
+        long span = Math.max(1, chunkSize) - 1L;
+        this.stagedTo = (maxId - from <= span) ? maxId : from + span;
+        return stagedTo;
+    }
+
+    @Override
+    public void commit() {
+        if (stagedTo >= maxId) {
+            reachedEnd = true;
+        } else {
+            from = stagedTo + 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return reachedEnd ? "END" : "[" + from + ".." + maxId + "]";
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.mapper.QueryPlanMapper;
+import com.example.ordermigratebatchmysql.stream.StreamingWindowCopier;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 執行計畫守衛（elt.plan-guard.enabled=true）：拿 MigrationJobMapper 實際的 mapped statement 組出 SQL，
+ * 用今天 00:00 往回 sampleHours 的樣本窗口跑 EXPLAIN FORMAT=JSON（不會真的執行），檢查：
+ * - 來源表（src / s）不能是 ALL / index 全掃，預估讀取列數不能超過 maxEstimatedRows
+ * - 目標表（t，anti-join 子查詢）要走主鍵 / 索引查找
+ * - 有 ORDER BY ... LIMIT 的語句不能 filesort（時間索引本身就帶主鍵，順序應該直接從索引來）
+ * 啟動時檢查一次，之後每 recheckMinutes 再檢查；處理方式見 EltProperties.PlanGuard。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryPlanGuard {
+
+    public static final String WARN = "warn";
+    public static final String FAIL = "fail";
+    public static final String FALLBACK = "fallback";
+    public static final String HINT = "hint";
+
+    private static final String NS = MigrationJobMapper.class.getName() + ".";
+    private static final Set<String> FULL_SCANS = Set.of("ALL", "index");
+    private static final Set<String> KEY_LOOKUPS = Set.of("system", "const", "eq_ref", "ref", "unique_subquery", "index_subquery");
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final DataSource dataSource;
+    private final MigrationJobRegistry jobs;
+    private final QueryPlanMapper planMapper;
+    private final StreamingWindowCopier streamCopier;
+    private final EltRunControl control;
+    private final EltProperties props;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        EltProperties.PlanGuard cfg = props.getPlanGuard();
+        if (!cfg.isEnabled()) {
+            return;
+        }
+        String action = onBadPlan();
+        checkAll("startup");
+        if (FAIL.equals(action) && hasProblems()) {
+            throw new IllegalStateException("[ELT-PLAN] unsafe query plans, refusing to start: " + verdicts.values());
+        }
+
+        if (cfg.getRecheckMinutes() > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "elt-plan-guard");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::recheck, cfg.getRecheckMinutes(), cfg.getRecheckMinutes(), TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * fallback 中的 job 切窗門檻再縮小（Runner 的 planner 用）
+     */
+    public SplitThresholds adjust(String kind, SplitThresholds thresholds) {
+        if (!jobs.get(kind).isPlanFallback()) {
+            return thresholds;
+        }
+        return thresholds.scaled(props.getPlanGuard().getFallbackWindowScale(), "plan-fallback");
+    }
+
+    /**
+     * run 結束時把每個 job 最近一次的檢查結果印出來
+     */
+    public void logSummary(String tag, String runId) {
+        if (!props.getPlanGuard().isEnabled()) {
+            return;
+        }
+        verdicts.values().forEach(v -> {
+            if (v.ok()) {
+                log.info("[{}][runId={}] PLAN {}", tag, runId, v);
+            } else {
+                log.warn("[{}][runId={}] PLAN {}", tag, runId, v);
+            }
+        });
+    }
+
+    private void recheck() {
+        try {
+            checkAll("recheck");
+            if (FAIL.equals(onBadPlan()) && hasProblems() && !control.isCancelled()) {
+                // 跑到一半已經不能「拒跑」：暫停，等人加完索引 / ANALYZE TABLE 再 resume
+                log.error("[ELT-PLAN] unsafe query plans found on recheck, pausing the run: {}", verdicts.values());
+                control.pause();
+            }
+        } catch (RuntimeException e) {
+            log.warn("[ELT-PLAN] recheck failed: {}", e.toString());
+        }
+    }
+
+    private void checkAll(String trigger) {
+        LocalDateTime end = LocalDate.now(ZoneId.of(props.getZoneId())).atStartOfDay();
+        LocalDateTime start = end.minusHours(props.getPlanGuard().getSampleHours());
+        for (String kind : jobs.enabledKinds()) {
+            Verdict v = check(jobs.get(kind), start, end, trigger);
+            verdicts.put(kind, v);
+        }
+    }
+
+    private Verdict check(MigrationJob job, LocalDateTime start, LocalDateTime end, String trigger) {
+        List<Finding> problems = explainAll(job, start, end);
+        if (problems.isEmpty()) {
+            if (job.isPlanFallback()) {
+                job.setPlanFallback(false);
+                log.info("[ELT-PLAN][{}] plans are fine again, leaving PK-range fallback", job.getName());
+            }
+            String action = job.getSourceTimeIndex() != null ? "ok (FORCE INDEX " + job.getSourceTimeIndex() + ")" : "ok";
+            return new Verdict(job.getName(), action, problems, trigger, LocalDateTime.now());
+        }
+        problems.forEach(f -> log.warn("[ELT-PLAN][{}] {} | sample=[{}, {})", job.getName(), f, start, end));
+
+        String action = onBadPlan();
+        if (HINT.equals(action)) {
+            String index = tryHint(job, start, end);
+            if (index != null) {
+                job.setSourceTimeIndex(index);
+                log.warn("[ELT-PLAN][{}] FORCE INDEX ({}) fixes the plan, using it from now on", job.getName(), index);
+                return new Verdict(job.getName(), "hint " + index, problems, trigger, LocalDateTime.now());
+            }
+            log.warn("[ELT-PLAN][{}] no index on {}.{} gives a safe plan, falling back to PK ranges",
+                    job.getName(), job.getSourceTable(), job.getTimeColumn());
+            action = FALLBACK;
+        }
+        if (FALLBACK.equals(action) && !job.isPlanFallback()) {
+            job.setPlanFallback(true);
+            log.warn("[ELT-PLAN][{}] switching to PK-range mode, split thresholds x{}",
+                    job.getName(), props.getPlanGuard().getFallbackWindowScale());
+        }
+        return new Verdict(job.getName(), action, problems, trigger, LocalDateTime.now());
+    }
+
+    /**
+     * 依序試來源表開頭是 timeColumn 的索引；回傳第一個讓計畫變安全的索引名，都不行回傳 null
+     */
+    private String tryHint(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        String[] st = PartitionManager.splitTable(job.getSourceTable());
+        for (String index : planMapper.selectIndexesLeadingWith(st[0], st[1], job.getTimeColumn())) {
+            if (index.equals(job.getSourceTimeIndex())) {
+                continue;
+            }
+            List<Finding> hinted = explainAll(job.withSourceTimeIndex(index), start, end);
+            if (hinted.isEmpty()) {
+                return index;
+            }
+            log.info("[ELT-PLAN][{}] FORCE INDEX ({}) still unsafe: {}", job.getName(), index, hinted);
+        }
+        return null;
+    }
+
+    /**
+     * 這個 job 依目前模式會用到的搬移 / 缺口 SQL 都 EXPLAIN 一次，回傳所有問題
+     */
+    private List<Finding> explainAll(MigrationJob job, LocalDateTime start, LocalDateTime end) {
+        Map<String, Object> base = new HashMap<>();
+        base.put("job", job);
+        base.put("start", start);
+        base.put("end", end);
+
+        List<Finding> problems = new ArrayList<>();
+        if (streamCopier.isEnabled()) {
+            // 目標在另一台：這邊只有來源 COUNT
+            problems.addAll(explain(job, "countSourceForRange", base, false));
+            if (props.isGapHistogramEnabled()) {
+                problems.addAll(explain(job, "countSourceByHour", base, false));
+            }
+            return problems;
+        }
+
+        problems.addAll(explain(job, "countMissingForRange", base, false));
+        if (props.isGapHistogramEnabled()) {
+            problems.addAll(explain(job, "countMissingByHour", base, false));
+        }
+        if (props.isBitmapMode() || props.isPkRangeMode()) {
+            problems.addAll(explain(job, "selectKeyBounds", base, false));
+            Map<String, Object> chunk = new HashMap<>(base);
+            chunk.put("fromId", 0L);
+            chunk.put("toId", (long) props.getPkRangeChunkSize());
+            chunk.put("upsert", props.isPkRangeUpsert());
+            problems.addAll(explain(job, "copyKeyRange", chunk, false));
+        } else if (props.isKeysetMode()) {
+            Map<String, Object> keyset = new HashMap<>(base);
+            keyset.put("offset", props.getBatchSize() - 1);
+            problems.addAll(explain(job, "selectBatchUpperKey", keyset, true));
+            problems.addAll(explain(job, "insertMissingForKeyRange", keyset, false));
+        } else {
+            Map<String, Object> limit = new HashMap<>(base);
+            limit.put("batchSize", props.getBatchSize());
+            problems.addAll(explain(job, "insertMissingForRange", limit, true));
+        }
+        return problems;
+    }
+
+    /**
+     * @param ordered 語句有 ORDER BY ... LIMIT：這時候 filesort 代表要先把整窗讀完排好才拿得到第一批
+     */
+    private List<Finding> explain(MigrationJob job, String statement, Map<String, Object> params, boolean ordered) {
+        JsonNode plan = explainJson(statement, params);
+        List<JsonNode> tables = new ArrayList<>();
+        boolean filesort = collect(plan, tables);
+
+        List<Finding> problems = new ArrayList<>();
+        long maxRows = props.getPlanGuard().getMaxEstimatedRows();
+        for (JsonNode t : tables) {
+            String alias = t.path("table_name").asText();
+            String access = t.path("access_type").asText();
+            String key = t.path("key").asText(null);
+            long rows = t.path("rows_examined_per_scan").asLong(0);
+            Finding f = new Finding(job.getName(), statement, alias, access, key, rows, null);
+            if ("src".equals(alias) || "s".equals(alias)) {
+                if (FULL_SCANS.contains(access)) {
+                    problems.add(f.because("source full scan"));
+                } else if (rows > maxRows) {
+                    problems.add(f.because("source estimate " + rows + " rows > " + maxRows));
+                }
+            } else if ("t".equals(alias) && !KEY_LOOKUPS.contains(access)) {
+                problems.add(f.because("target not looked up by key"));
+            }
+        }
+        if (ordered && filesort) {
+            problems.add(new Finding(job.getName(), statement, null, null, null, 0, "filesort on ORDER BY ... LIMIT"));
+        }
+        return problems;
+    }
+
+    private JsonNode explainJson(String statement, Map<String, Object> params) {
+        MappedStatement ms = sqlSessionFactory.getConfiguration().getMappedStatement(NS + statement);
+        BoundSql bound = ms.getBoundSql(params);
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("EXPLAIN FORMAT=JSON " + bound.getSql())) {
+            new DefaultParameterHandler(ms, params, bound).setParameters(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("EXPLAIN " + statement + " returned nothing");
+                }
+                return json.readTree(rs.getString(1));
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("EXPLAIN " + statement + " failed", e);
+        }
+    }
+
+    /**
+     * 走過整棵 EXPLAIN JSON：收集所有 "table" 節點（nested_loop / attached_subqueries 裡的都算），回傳有沒有 filesort
+     */
+    private static boolean collect(JsonNode node, List<JsonNode> tables) {
+        boolean filesort = false;
+        if (node.isObject()) {
+            if (node.path("using_filesort").asBoolean(false)) {
+                filesort = true;
+            }
+            JsonNode table = node.get("table");
+            if (table != null && table.isObject() && table.has("access_type")) {
+                tables.add(table);
+            }
+            for (JsonNode child : node) {
+                filesort |= collect(child, tables);
+            }
+        } else if (node.isArray()) {
+            for (JsonNode child : node) {
+                filesort |= collect(child, tables);
+            }
+        }
+        return filesort;
+    }
+
+    private boolean hasProblems() {
+        return verdicts.values().stream().anyMatch(v -> !v.ok());
+    }
+
+    private String onBadPlan() {
+        String action = props.getPlanGuard().getOnBadPlan().toLowerCase(Locale.ROOT);
+        if (!Set.of(WARN, FAIL, FALLBACK, HINT).contains(action)) {
+            throw new IllegalStateException("elt.plan-guard.on-bad-plan must be warn / fail / fallback / hint: " + action);
+        }
+        return action;
+    }
+
+    /**
+     * EXPLAIN 裡一張表的存取方式；problem 是判定不安全的原因
+     */
+    public record Finding(String kind, String statement, String table, String accessType, String key,
+                          long estimatedRows, String problem) {
+
+        Finding because(String reason) {
+            return new Finding(kind, statement, table, accessType, key, estimatedRows, reason);
+        }
+
+        @Override
+        public String toString() {
+            if (table == null) {
+                return statement + ": " + problem;
+            }
+            return statement + ": " + problem + " (" + table + " access=" + accessType + " key=" + key
+                    + " rows~" + estimatedRows + ")";
+        }
+    }
+
+    /**
+     * 一個 job 最近一次的檢查結果；action = ok / warn / fail / fallback / hint &lt;index&gt;
+     */
+    public record Verdict(String kind, String action, List<Finding> problems, String trigger, LocalDateTime checkedAt) {
+
+        /** 沒問題，或問題已經靠索引提示解掉 */
+        public boolean ok() {
+            return problems.isEmpty() || action.startsWith(HINT + " ");
+        }
+
+        @Override
+        public String toString() {
+            return kind + " | " + action + " | problems=" + problems + " | " + trigger + " @ " + checkedAt;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.ordermigratebatchmysql.service;
+
+import lombok.Getter;
+
+/**
+ * 一個窗口的重試統計，SUMMARY 時印出來（串流模式多條 writer 共用一份，所以累加要同步）
+ */
+@Getter
+public class RetryStats {
+
+    /** 鎖衝突（1213 死鎖 / 1205 鎖等待逾時）重試次數 */
+    private int lockRetries;
+    /** 連線類暫時性錯誤重試次數 */
+    private int connectionRetries;
+    /** 因為鎖衝突把 batchSize 砍半的次數 */
+    private int halvings;
+    /** 失敗嘗試 + 退避睡眠花掉的時間 */
+    private long lostMs;
+
+    synchronized void onRetry(BatchRetryTemplate.Failure failure, boolean halved, long lost) {
+        if (failure == BatchRetryTemplate.Failure.LOCK) {
+            lockRetries++;
+        } else {
+            connectionRetries++;
+        }
+        if (halved) {
+            halvings++;
+        }
+        lostMs += lost;
+    }
+
+    public int getRetries() {
+        return lockRetries + connectionRetries;
+    }
+
+    @Override
+    public String toString() {
+        return "retries=" + getRetries()
+                + " (lock=" + lockRetries + ", conn=" + connectionRetries + ", halved=" + halvings + ")"
+                + " | retryLost=" + lostMs + " ms";
+    }
+}
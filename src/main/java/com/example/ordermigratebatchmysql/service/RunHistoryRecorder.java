@@ -0,0 +1,83 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.mapper.RunHistoryMapper;
+import com.example.ordermigratebatchmysql.model.BatchRecord;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 每批搬完記一筆到 elt_run_history（elt.history.enabled=true）：先放在記憶體佇列，
+ * 累積 flushRows 筆由剛好記到那一筆的 worker 一次多列 INSERT，context 關閉時把剩下的寫完。
+ * 寫歷史是在批次交易之外、失敗只記 log，不影響搬移本身。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RunHistoryRecorder {
+
+    private final RunHistoryMapper historyMapper;
+    private final EltProperties props;
+
+    private final ConcurrentLinkedQueue<BatchRecord> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public void record(String kind, String mode, LocalDateTime windowStart, LocalDateTime windowEnd,
+                       int batchSize, int affected, long costMs, String runId) {
+        if (!props.getHistory().isEnabled()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneId.of(props.getZoneId()));
+        pending.add(new BatchRecord(kind, mode, runId, windowStart, windowEnd, now.getHour(),
+                batchSize, affected, Math.min(costMs, Integer.MAX_VALUE), now));
+        if (pendingCount.incrementAndGet() >= props.getHistory().getFlushRows() && flushLock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        flushLock.lock();
+        try {
+            drain();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void drain() {
+        int limit = Math.max(1, props.getHistory().getFlushRows());
+        while (!pending.isEmpty()) {
+            List<BatchRecord> chunk = new ArrayList<>(limit);
+            BatchRecord r;
+            while (chunk.size() < limit && (r = pending.poll()) != null) {
+                chunk.add(r);
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-chunk.size());
+            try {
+                historyMapper.insertBatch(chunk);
+            } catch (RuntimeException e) {
+                log.warn("[ELT-HISTORY] dropped {} batch records: {}", chunk.size(), e.toString());
+                return;
+            }
+        }
+    }
+}
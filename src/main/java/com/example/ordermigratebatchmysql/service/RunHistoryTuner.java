@@ -0,0 +1,144 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.mapper.RunHistoryMapper;
+import com.example.ordermigratebatchmysql.model.BatchHistoryStats;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 啟動時從 elt_run_history 學每個 kind + 模式 + 時段的切窗門檻（elt.history.enabled=true）：
+ * 模式分開學，因為一批的意義不同（pk-range 的 batchSize 是 Id 跨度、limit 每批重掃整窗）；常駐同步 sync* 的小批不列入。
+ * - 對 (Affected, CostMs) 做線性迴歸 cost ≈ a + b × rows，batchSize = (targetBatchMs - a) / b
+ * - maxBatchesBeforeSplit = targetWindowSeconds 內跑得完幾批；halfDay 門檻 = 這些批搬得完的筆數，
+ *   hour 門檻沿用靜態設定 hour / halfDay 的比例
+ * - slowBatchMs = 預估耗時 + 3 倍殘差標準差（至少 1.5 × targetBatchMs）
+ * 時段看的是「現在」：同一個 kind 在尖峰時段學到的值會比離峰保守。
+ * 該時段樣本不夠 minSamples 就用 kind + 模式全時段，還不夠就是靜態 elt.* 設定。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RunHistoryTuner {
+
+    private static final int PURGE_CHUNK = 10_000;
+
+    private final RunHistoryMapper historyMapper;
+    private final EltProperties props;
+
+    /** key = kind/mode@hour；全時段是 kind/mode@* */
+    private final Map<String, SplitThresholds> learned = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        EltProperties.History cfg = props.getHistory();
+        if (!cfg.isEnabled()) {
+            return;
+        }
+        historyMapper.createTableIfAbsent();
+        LocalDateTime now = LocalDateTime.now(ZoneId.of(props.getZoneId()));
+
+        int purged = 0;
+        int n;
+        do {
+            n = historyMapper.deleteOlderThan(now.minusDays(cfg.getKeepDays()), PURGE_CHUNK);
+            purged += n;
+        } while (n == PURGE_CHUNK);
+
+        List<BatchHistoryStats> rows = historyMapper.selectStats(now.minusDays(cfg.getLookbackDays()));
+        Map<String, BatchHistoryStats> byMode = new HashMap<>();
+        for (BatchHistoryStats s : rows) {
+            byMode.computeIfAbsent(key(s.getKind(), s.getMode(), -1), k -> {
+                BatchHistoryStats all = new BatchHistoryStats();
+                all.setKind(s.getKind());
+                all.setMode(s.getMode());
+                all.setHourOfDay(-1);
+                return all;
+            }).add(s);
+            learn(s);
+        }
+        byMode.values().forEach(this::learn);
+
+        log.info("[ELT-HISTORY] learned {} threshold sets from {} kind/mode/hour groups (lookback={} d, purged={})",
+                learned.size(), rows.size(), cfg.getLookbackDays(), purged);
+        learned.forEach((key, t) -> log.info("[ELT-HISTORY] {} => {}", key, t));
+    }
+
+    /**
+     * 這個 kind 用 mode（elt_run_history.Mode：limit / keyset / pk-range / bitmap）跑時，目前時段要用的門檻
+     */
+    public SplitThresholds thresholds(String kind, String mode) {
+        int hour = LocalDateTime.now(ZoneId.of(props.getZoneId())).getHour();
+        SplitThresholds t = learned.get(key(kind, mode, hour));
+        if (t == null) {
+            t = learned.get(key(kind, mode, -1));
+        }
+        return t != null ? t : SplitThresholds.of(props);
+    }
+
+    private void learn(BatchHistoryStats s) {
+        if (s.getSamples() < props.getHistory().getMinSamples() || s.getSumRows() <= 0) {
+            return;
+        }
+        learned.put(key(s.getKind(), s.getMode(), s.getHourOfDay()), derive(s));
+    }
+
+    private SplitThresholds derive(BatchHistoryStats s) {
+        EltProperties.History cfg = props.getHistory();
+        double n = s.getSamples();
+
+        // 最小平方法：cost = a + b × rows；筆數沒有變化或斜率不合理就退回純比例 cost = b × rows
+        double a = 0;
+        double b = s.getSumMs() / s.getSumRows();
+        double varRows = n * s.getSumRowsSq() - s.getSumRows() * s.getSumRows();
+        if (varRows > 0) {
+            double slope = (n * s.getSumRowsMs() - s.getSumRows() * s.getSumMs()) / varRows;
+            if (slope > 0) {
+                b = slope;
+                a = Math.max(0, (s.getSumMs() - slope * s.getSumRows()) / n);
+            }
+        }
+        b = Math.max(b, 1e-6);
+
+        double target = cfg.getTargetBatchMs();
+        int batchSize = target > a ? (int) Math.min(Integer.MAX_VALUE, (target - a) / b) : cfg.getMinBatchSize();
+        batchSize = clamp(batchSize, cfg.getMinBatchSize(), cfg.getMaxBatchSize());
+        double expectedMs = Math.max(1, a + b * batchSize);
+
+        int maxBatches = clamp((int) (cfg.getTargetWindowSeconds() * 1000L / expectedMs), 1, props.getMaxBatchesPerRun());
+        int halfDay = (int) Math.min(Integer.MAX_VALUE, (long) maxBatches * batchSize);
+        int hour = props.getHalfDaySwitchThreshold() > 0
+                ? (int) ((long) halfDay * props.getHourSwitchThreshold() / props.getHalfDaySwitchThreshold())
+                : halfDay;
+        hour = Math.max(batchSize, Math.min(hour, halfDay));
+
+        // 殘差平方和 Σ(y - a - b·x)² 展開成各階和
+        double sse = s.getSumMsSq() - 2 * a * s.getSumMs() - 2 * b * s.getSumRowsMs()
+                + n * a * a + 2 * a * b * s.getSumRows() + b * b * s.getSumRowsSq();
+        double residualSd = Math.sqrt(Math.max(0, sse / n));
+        long slowMs = (long) Math.max(1.5 * target, expectedMs + 3 * residualSd);
+
+        String where = s.getHourOfDay() < 0
+                ? s.getKind() + "/" + s.getMode() + "@*"
+                : String.format("%s/%s@%02d", s.getKind(), s.getMode(), s.getHourOfDay());
+        return new SplitThresholds(batchSize, halfDay, hour, maxBatches, slowMs,
+                String.format("learned %s n=%d cost=%.0f+%.4f*rows", where, s.getSamples(), a, b));
+    }
+
+    private static String key(String kind, String mode, int hour) {
+        return kind + "/" + mode + (hour < 0 ? "@*" : "@" + hour);
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.MigrationJobRegistry;
+import com.example.ordermigratebatchmysql.mapper.MigrationJobMapper;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import com.example.ordermigratebatchmysql.throttle.ThrottleDecision;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * 搬完之後的 purge（elt.purge.enabled=true）：
+ * 只處理這次 run 搬過、也比對過的 [from, to) 裡「早於 今天 - retentionDays」的日子，一天一個窗口、窗口內依主鍵區間一段一段刪；
+ * 每段只刪 EXISTS 於目標表的列（沒搬到的絕對不刪），一段一個短 tx，段與段之間走跟搬移一樣的負載節流 / 重試。
+ * dryRun=true 時只 COUNT，報告每天會刪 / 會留多少。真的要刪必須同時開 elt.verify（EXISTS 只看主鍵，內容對不對要靠比對）。
+ * 目標在另一台（elt.stream.enabled）時無法確認，整個 purge 不做。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SourcePurger {
+
+    private final MigrationJobMapper jobMapper;
+    private final MigrationJobRegistry jobs;
+    private final EltProperties props;
+    private final BatchTransactions batchTx;
+    private final LoadAwareThrottle throttle;
+    private final BatchRetryTemplate retry;
+    private final EltMetrics metrics;
+
+    public boolean isEnabled() {
+        return props.getPurge().isEnabled();
+    }
+
+    /**
+     * 對每個 job 做 purge；回傳刪掉（dry-run 時為「會刪」）的總筆數
+     * @param from 這次 run 搬移 / 比對的起日（含）
+     * @param to   這次 run 搬移 / 比對的迄日（不含）
+     */
+    public long purge(List<String> kinds, LocalDate from, LocalDate to, String runId) {
+        EltProperties.Purge cfg = props.getPurge();
+        if (!cfg.isEnabled()) {
+            return 0;
+        }
+        if (props.getStream().isEnabled()) {
+            log.warn("[ELT-PURGE][runId={}] skipped: target is on another instance, cannot verify copied rows", runId);
+            return 0;
+        }
+        if (!cfg.isDryRun() && !props.getVerify().isEnabled()) {
+            log.warn("[ELT-PURGE][runId={}] skipped: elt.verify.enabled=false, copied rows were never compared (set elt.purge.dry-run=true to just count)",
+                    runId);
+            return 0;
+        }
+
+        LocalDate cutoff = LocalDate.now(ZoneId.of(props.getZoneId())).minusDays(cfg.getRetentionDays());
+        LocalDate until = to.isBefore(cutoff) ? to : cutoff;
+        log.info("=== [ELT-PURGE] START | runId={} | jobs={} | days=[{}, {}) | keep since {} (retentionDays={}) | dryRun={} | chunkSize={} ===",
+                runId, kinds, from, until, cutoff, cfg.getRetentionDays(), cfg.isDryRun(), cfg.getChunkSize());
+        if (!from.isBefore(until)) {
+            log.info("[ELT-PURGE][runId={}] nothing to do: run range [{}, {}) has no day older than {}", runId, from, to, cutoff);
+            return 0;
+        }
+
+        long total = 0;
+        for (String kind : kinds) {
+            MigrationJob job = jobs.get(kind);
+            long kindTotal = 0;
+            for (LocalDate d = from; d.isBefore(until); d = d.plusDays(1)) {
+                LocalDateTime start = d.atStartOfDay();
+                LocalDateTime end = d.plusDays(1).atStartOfDay();
+                kindTotal += cfg.isDryRun() ? dryRunWindow(job, start, end, runId) : purgeWindow(job, start, end, runId);
+            }
+            log.info("[ELT-PURGE][{}][runId={}] {} | days=[{}, {}) | rows={}",
+                    kind, runId, cfg.isDryRun() ? "WOULD DELETE" : "DELETED", from, until, kindTotal);
+            total += kindTotal;
+        }
+
+        log.info("=== [ELT-PURGE] DONE | runId={} | dryRun={} | rows={} ===", runId, cfg.isDryRun(), total);
+        return total;
+    }
+
+    private int dryRunWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        int purgeable = jobMapper.countPurgeable(job, start, end);
+        int source = jobMapper.countSourceForRange(job, start, end);
+        if (source > 0) {
+            log.info("[ELT-PURGE][{}][runId={}] DRY-RUN window=[{}, {}) | wouldDelete={} | keep(not in target)={}",
+                    job.getName(), runId, start, end, purgeable, source - purgeable);
+        }
+        return purgeable;
+    }
+
+    /**
+     * 一個窗口：主鍵 [MIN, MAX] 一段一段刪（跟 PK 區間搬移同一個游標）
+     */
+    private int purgeWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        String kind = job.getName();
+        PkRangeCursor cursor = new PkRangeCursor(jobMapper.selectKeyBounds(job, start, end));
+        if (cursor.isReachedEnd()) {
+            return 0;
+        }
+
+        RetryStats retryStats = new RetryStats();
+        int chunkSize = props.getPurge().getChunkSize();
+        int deleted = 0;
+        int chunks = 0;
+        long t0 = System.currentTimeMillis();
+
+        while (!cursor.isReachedEnd()) {
+            long from = cursor.getFrom();
+            int affected = retry.execute(kind, runId, chunkSize, retryStats,
+                    size -> deleteChunk(job, start, end, from, cursor.stage(size)));
+            cursor.commit();
+            deleted += affected;
+            chunks++;
+            metrics.recordPurge(kind, affected);
+
+            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+            if (decision == null) {
+                break;
+            }
+            chunkSize = decision.scale(props.getPurge().getChunkSize());
+        }
+
+        log.info("[ELT-PURGE][{}][runId={}] window=[{}, {}) | deleted={} | chunks={} | cost={} ms | {}",
+                kind, runId, start, end, deleted, chunks, System.currentTimeMillis() - t0, retryStats);
+        return deleted;
+    }
+
+    private int deleteChunk(MigrationJob job, LocalDateTime start, LocalDateTime end, long from, long to) {
+        return batchTx.execute(job, status -> jobMapper.purgeCopiedKeyRange(job, start, end, from, to));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+
+/**
+ * 一個 kind 這次 run 用的切窗門檻 + 起始 batchSize：RunHistoryTuner 從歷史學出來，或直接是 elt.* 的靜態值
+ *
+ * @param source "static" / "learned(kind@HH, n=…)" 之類，只給 log 看
+ */
+public record SplitThresholds(int batchSize,
+                              int halfDaySwitchThreshold,
+                              int hourSwitchThreshold,
+                              int maxBatchesBeforeSplit,
+                              Long slowBatchMs,
+                              String source) {
+
+    public static SplitThresholds of(EltProperties props) {
+        return new SplitThresholds(props.getBatchSize(), props.getHalfDaySwitchThreshold(),
+                props.getHourSwitchThreshold(), props.getMaxBatchesBeforeSplit(), props.getSlowBatchMs(), "static");
+    }
+
+    /**
+     * 切窗門檻（halfDay / hour / maxBatches）乘上 factor，窗口切得更細；batchSize / slowBatchMs 不變
+     */
+    public SplitThresholds scaled(double factor, String why) {
+        return new SplitThresholds(batchSize,
+                Math.max(1, (int) (halfDaySwitchThreshold * factor)),
+                Math.max(1, (int) (hourSwitchThreshold * factor)),
+                Math.max(1, (int) (maxBatchesBeforeSplit * factor)),
+                slowBatchMs, source + ", x" + factor + " " + why);
+    }
+
+    public boolean isSlow(long costMs) {
+        return slowBatchMs != null && costMs >= slowBatchMs;
+    }
+
+    @Override
+    public String toString() {
+        return "batchSize=" + batchSize + " halfDay=" + halfDaySwitchThreshold + " hour=" + hourSwitchThreshold
+                + " maxBatches=" + maxBatchesBeforeSplit + " slowMs=" + slowBatchMs + " (" + source + ")";
+    }
+}
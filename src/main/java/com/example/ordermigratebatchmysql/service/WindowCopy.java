@@ -0,0 +1,17 @@
+package com.example.ordermigratebatchmysql.service;
+
+/**
+ * 搬一個窗口的結果：moved = 實際搬了幾筆；complete = 確定整個窗口都搬完了
+ * （游標走到窗尾、缺口 Id 都搬了、LIMIT 模式最後一批已經沒東西可搬）。
+ * 撞到 maxBatchesPerRun、被 throttle / cancel 停下來的是 partial，WindowDispatcher 不會記 checkpoint DONE。
+ */
+public record WindowCopy(int moved, boolean complete) {
+
+    public static WindowCopy done(int moved) {
+        return new WindowCopy(moved, true);
+    }
+
+    public static WindowCopy partial(int moved) {
+        return new WindowCopy(moved, false);
+    }
+}
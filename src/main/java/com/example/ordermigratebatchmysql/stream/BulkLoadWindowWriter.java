@@ -0,0 +1,291 @@
+package com.example.ordermigratebatchmysql.stream;
+
+import com.example.ordermigratebatchmysql.codec.PayloadCompressor;
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.config.SessionProfile;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.service.BatchRetryTemplate;
+import com.example.ordermigratebatchmysql.service.RetryStats;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import com.example.ordermigratebatchmysql.throttle.ThrottleDecision;
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+
+/**
+ * 大窗口用的 LOAD DATA LOCAL INFILE 寫入（elt.bulk-load.enabled=true）：
+ * 主庫一條連線串流讀「來源有、目標沒有」的列，邊讀邊轉成 TSV（TsvResultSetInputStream），
+ * 透過 Connector/J 的 setLocalInfileInputStream 直接餵給另一條連線上的 LOAD DATA，不落地暫存檔。
+ * 每 rowsPerLoad 列一個 LOAD（一個 tx），重複鍵 IGNORE，中途失敗重跑也安全（鎖衝突 / 斷線整窗重試，LOAD 之間照樣過節流）。
+ * 需要 server 端 local_infile=ON；啟動時檢查，沒開就關掉這條路（窗口照舊走 INSERT ... SELECT）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkLoadWindowWriter {
+
+    private final DataSource dataSource;
+    private final EltProperties props;
+    private final EltMetrics metrics;
+    private final BatchRetryTemplate retry;
+    private final LoadAwareThrottle throttle;
+
+    private HikariDataSource loadPool;
+
+    @PostConstruct
+    public void init() {
+        EltProperties.BulkLoad cfg = props.getBulkLoad();
+        if (!cfg.isEnabled()) {
+            return;
+        }
+        if (props.getStream().isEnabled()) {
+            log.warn("[ELT-BULK] disabled: elt.stream is enabled (target is on another instance)");
+            return;
+        }
+        if (!(dataSource instanceof HikariDataSource primary)) {
+            log.warn("[ELT-BULK] disabled: primary DataSource is not Hikari ({})", dataSource.getClass().getName());
+            return;
+        }
+
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName("elt-bulk-load");
+        pool.setJdbcUrl(withLocalInfile(primary.getJdbcUrl()));
+        pool.setUsername(primary.getUsername());
+        pool.setPassword(primary.getPassword());
+        pool.setMaximumPoolSize(Math.max(1, props.getWorkerThreads()));
+
+        try (Connection c = pool.getConnection();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT @@GLOBAL.local_infile")) {
+            if (!rs.next() || rs.getInt(1) != 1) {
+                log.warn("[ELT-BULK] disabled: server local_infile=OFF (SET GLOBAL local_infile = 1 to enable)");
+                pool.close();
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn("[ELT-BULK] disabled: cannot check local_infile: {}", e.toString());
+            pool.close();
+            return;
+        }
+
+        loadPool = pool;
+        log.info("[ELT-BULK] ready | thresholdRows={} | rowsPerLoad={}", cfg.getThresholdRows(), cfg.getRowsPerLoad());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (loadPool != null) {
+            loadPool.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return loadPool != null;
+    }
+
+    /**
+     * 用 LOAD DATA 搬一個窗口的缺口；回傳搬入筆數（讀到結果集結尾才算搬完）。
+     * 整個窗口包在重試裡：重開反連接串流只會讀到還沒進目標的列，所以重跑就是從斷點接著搬；
+     * 每個 LOAD 之間照樣過節流，DB 忙就縮小下一個 LOAD，被 cancel 就停在這裡（窗口不記 DONE）
+     */
+    public WindowCopy loadWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        String kind = job.getName();
+        long t0 = System.currentTimeMillis();
+        RetryStats retryStats = new RetryStats();
+        LoadProgress progress = new LoadProgress();
+
+        retry.execute(kind, runId, props.getBulkLoad().getRowsPerLoad(), retryStats,
+                rowsPerLoad -> loadOnce(job, start, end, runId, rowsPerLoad, progress));
+
+        log.info("[ELT-BULK][{}][runId={}] SUMMARY | window=[{}, {}) | totalMoved={} | loads={} | complete={} | cost={} ms | {}",
+                kind, runId, start, end, progress.moved, progress.loads, progress.complete,
+                System.currentTimeMillis() - t0, retryStats);
+        return new WindowCopy(progress.moved, progress.complete);
+    }
+
+    /**
+     * 開一次來源串流，一路 LOAD 到結果集結尾或節流喊停；搬入筆數累加在 progress（前幾次嘗試搬的也算）
+     */
+    private int loadOnce(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId,
+                         int baseRowsPerLoad, LoadProgress progress) {
+        String kind = job.getName();
+        int rowsPerLoad = baseRowsPerLoad;
+
+        try (Connection src = dataSource.getConnection();
+             Connection dst = loadPool.getConnection()) {
+            try (Statement st = src.createStatement()) {
+                // 讀端在 LOAD 執行中才會被拉，拉長 net_write_timeout 免得被 server 斷線
+                st.execute("SET SESSION net_write_timeout = " + props.getStream().getSourceNetWriteTimeoutSeconds());
+            }
+            // LOAD 連線套上 job 的 session 變數（unique_checks / foreign_key_checks / sql_log_bin ...），還回池子前還原
+            String restore = applySession(dst, job, props.sessionFor(job));
+            try {
+                try (PreparedStatement ps = src.prepareStatement(missingSql(job),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setObject(1, start);
+                    ps.setObject(2, end);
+
+                    PayloadCompressor compressor = new PayloadCompressor(job, props.getVerify().isEnabled());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (true) {
+                            compressor.reset();
+                            TsvResultSetInputStream tsv = new TsvResultSetInputStream(rs, rowsPerLoad, compressor);
+                            long l0 = System.currentTimeMillis();
+                            int affected;
+                            try (Statement load = dst.createStatement()) {
+                                load.unwrap(JdbcStatement.class).setLocalInfileInputStream(tsv);
+                                affected = load.executeUpdate(loadSql(job));
+                            } catch (SQLException | RuntimeException e) {
+                                // LOAD 失敗：close 串流結果集會把來源剩下的列整個收完才返回，先 cancel 掉再往外丟給重試
+                                cancelQuietly(ps, e);
+                                throw e;
+                            }
+                            long cost = System.currentTimeMillis() - l0;
+                            if (tsv.getRows() == 0) {
+                                progress.complete = true;
+                                break;
+                            }
+                            progress.moved += affected;
+                            progress.loads++;
+
+                            Long slowMs = props.getSlowBatchMs();
+                            metrics.recordBatch(kind, "bulk-load", affected, cost, (int) tsv.getRows(),
+                                    slowMs != null && cost >= slowMs);
+                            metrics.recordPayload(kind, compressor.getRawBytes(), compressor.getStoredBytes());
+                            log.info("[ELT-BULK][{}][runId={}] load#{} END | rows={} | affected={} | cost={} ms | ~{}/s | totalMoved={}{}",
+                                    kind, runId, progress.loads, tsv.getRows(), affected, cost,
+                                    String.format("%.0f", tsv.getRows() * 1000.0 / Math.max(1, cost)), progress.moved,
+                                    payloadSummary(compressor));
+                            if (tsv.isExhausted()) {
+                                progress.complete = true;
+                                break;
+                            }
+
+                            // 讀端串流停在這裡等，server 那頭由 net_write_timeout 撐著；真的斷了外層重試會重開
+                            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+                            if (decision == null) {
+                                log.warn("[ELT-BULK][{}][runId={}] stopped before window end | window=[{}, {}) | loads={}",
+                                        kind, runId, start, end, progress.loads);
+                                // 同上：不把剩下的串流讀完
+                                ps.cancel();
+                                break;
+                            }
+                            // 只套忙碌倍率：控制端點指定的是搬移批次大小，跟一個 LOAD 幾列不是同一回事
+                            rowsPerLoad = decision.scale(baseRowsPerLoad);
+                        }
+                    }
+                }
+            } finally {
+                if (restore != null) {
+                    try (Statement st = dst.createStatement()) {
+                        st.execute(restore);
+                    } catch (SQLException e) {
+                        // 帶著 job 的 session 變數還回池子會污染下一個窗口：踢掉，close 時直接關實體連線
+                        log.warn("[ELT-BULK][{}][runId={}] failed to restore session variables ({}), evicting connection | {}",
+                                kind, runId, restore, e.getMessage());
+                        loadPool.evictConnection(dst);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("bulk load failed for " + kind + " window [" + start + ", " + end + ")", e);
+        }
+        return progress.moved;
+    }
+
+    /** cancel 失敗就掛在原本的例外上，不蓋掉它 */
+    private static void cancelQuietly(Statement st, Exception cause) {
+        try {
+            st.cancel();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /** 一個窗口跨多次重試累計的進度 */
+    private static final class LoadProgress {
+        private int moved;
+        private int loads;
+        private boolean complete;
+    }
+
+    /**
+     * 套上 session 變數，回傳還原用的 SQL；sql_log_bin 沒權限就不帶它再試一次
+     */
+    private static String applySession(Connection con, MigrationJob job, SessionProfile session) throws SQLException {
+        String apply = session.applySql(true);
+        if (apply == null) {
+            return null;
+        }
+        try (Statement st = con.createStatement()) {
+            st.execute(apply);
+            return session.restoreSql(true);
+        } catch (SQLException e) {
+            if (session.getSqlLogBin() == null) {
+                throw e;
+            }
+            log.warn("[ELT-BULK][{}] sql_log_bin cannot be changed, loading with binlog on | {}", job.getName(), e.getMessage());
+        }
+        String fallback = session.applySql(false);
+        if (fallback == null) {
+            return null;
+        }
+        try (Statement st = con.createStatement()) {
+            st.execute(fallback);
+        }
+        return session.restoreSql(false);
+    }
+
+    /** 「| payload=原始→寫入 bytes (saved x%)」；沒開壓縮就空字串 */
+    static String payloadSummary(PayloadCompressor compressor) {
+        if (!compressor.isActive() || compressor.getRawBytes() == 0) {
+            return "";
+        }
+        long raw = compressor.getRawBytes();
+        long stored = compressor.getStoredBytes();
+        return String.format(" | payload=%d->%d bytes (saved %.1f%%)", raw, stored, 100.0 * (raw - stored) / raw);
+    }
+
+    /** 跟 insertMissingForRange 同一個 anti-join，只是不加 LIMIT、整窗串流 */
+    static String missingSql(MigrationJob job) {
+        return "SELECT " + job.getSourceColumnList()
+                + " FROM " + job.getSourceTable() + " AS src"
+                + " WHERE src." + job.getTimeColumn() + " >= ? AND src." + job.getTimeColumn() + " < ?"
+                + " AND NOT EXISTS (SELECT 1 FROM " + job.getTargetTable() + " t"
+                + " WHERE t." + job.getKeyColumn() + " = src." + job.getKeyColumn() + ")";
+    }
+
+    /**
+     * 檔名只是佔位：實際資料來自 setLocalInfileInputStream。
+     * CHARACTER SET binary：TSV 內容本來就是 UTF-8 / 壓縮後的原始 bytes，不讓 server 再轉碼
+     */
+    static String loadSql(MigrationJob job) {
+        return "LOAD DATA LOCAL INFILE 'elt-stream.tsv' IGNORE INTO TABLE " + job.getTargetTable()
+                + " CHARACTER SET binary"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'"
+                + " LINES TERMINATED BY '\\n'"
+                + " (" + job.getColumnList() + ")";
+    }
+
+    private static String withLocalInfile(String url) {
+        if (url.contains("allowLoadLocalInfile")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "allowLoadLocalInfile=true";
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.ordermigratebatchmysql.stream;
+
+import com.example.ordermigratebatchmysql.codec.PayloadCompressor;
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import com.example.ordermigratebatchmysql.service.BatchRetryTemplate;
+import com.example.ordermigratebatchmysql.service.RetryStats;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import com.example.ordermigratebatchmysql.throttle.LoadAwareThrottle;
+import com.example.ordermigratebatchmysql.throttle.ThrottleDecision;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 跨 instance 串流搬移（elt.stream.enabled=true）：
+ * - 讀端：呼叫端執行緒在主庫開 forward-only 串流（fetchSize=Integer.MIN_VALUE 或 useCursorFetch），逐筆組成 chunk
+ * - 有界佇列：讀得比寫快就卡住讀端（backpressure），記憶體只跟 chunkRows * queueCapacity 有關，跟窗口大小無關
+ * - 寫端：writerThreads 條並行，一個 chunk 一個 tx，rewriteBatchedStatements 把 addBatch 合成多值 INSERT
+ * - 節流：讀端每送出一個 chunk 過一次 LoadAwareThrottle（pause / cancel 也在這裡生效），DB 忙就縮小下一個 chunk
+ * 目標沒辦法跟來源 anti-join，所以一律整窗讀、INSERT IGNORE（或 upsert）寫；重跑安全，但不會跳過已搬的列。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StreamingWindowCopier {
+
+    /** 佇列結束標記 */
+    private static final List<Object[]> END = Collections.emptyList();
+
+    private final DataSource dataSource;
+    private final EltProperties props;
+    private final BatchRetryTemplate retry;
+    private final EltMetrics metrics;
+    private final LoadAwareThrottle throttle;
+
+    private HikariDataSource target;
+    private ExecutorService writers;
+
+    @PostConstruct
+    public void init() {
+        EltProperties.Stream cfg = props.getStream();
+        if (!cfg.isEnabled()) {
+            return;
+        }
+        if (cfg.getTargetUrl() == null || cfg.getTargetUrl().isBlank()) {
+            throw new IllegalStateException("elt.stream.target-url is required when elt.stream.enabled=true");
+        }
+        target = new HikariDataSource();
+        target.setPoolName("elt-stream-target");
+        target.setJdbcUrl(withBatchRewrite(cfg.getTargetUrl()));
+        target.setUsername(cfg.getTargetUsername());
+        target.setPassword(cfg.getTargetPassword());
+        target.setMaximumPoolSize(Math.max(cfg.getTargetPoolSize(), cfg.getWriterThreads()));
+
+        AtomicInteger seq = new AtomicInteger();
+        writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setName("elt-stream-writer-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("[ELT-STREAM] target={} | chunkRows={} queueCapacity={} writerThreads={} | max buffered rows ~{}",
+                target.getJdbcUrl(), cfg.getChunkRows(), cfg.getQueueCapacity(), cfg.getWriterThreads(),
+                (long) cfg.getChunkRows() * (cfg.getQueueCapacity() + cfg.getWriterThreads() + 1));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writers != null) {
+            writers.shutdownNow();
+        }
+        if (target != null) {
+            target.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return target != null;
+    }
+
+    /**
+     * 串流搬一個窗口；回傳寫入目標的筆數（INSERT IGNORE 重複的列 driver 不一定回報，以送出的筆數計）。
+     * 中途失敗直接丟例外；被 cancel / interrupt 就停在目前的 chunk，已送出的 chunk 寫完後回 partial（窗口不記 DONE）
+     */
+    public WindowCopy copyWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId) {
+        EltProperties.Stream cfg = props.getStream();
+        String kind = job.getName();
+        long t0 = System.currentTimeMillis();
+
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(Math.max(1, cfg.getQueueCapacity()));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        RetryStats retryStats = new RetryStats();
+        String insertSql = insertSql(job, cfg.isUpsert());
+
+        List<Future<Integer>> writerFutures = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, cfg.getWriterThreads()); i++) {
+            writerFutures.add(writers.submit(() -> writeLoop(kind, runId, insertSql, queue, failure, retryStats)));
+        }
+
+        ReadProgress progress = new ReadProgress();
+        try {
+            readWindow(job, start, end, runId, queue, failure, writerFutures, progress);
+        } catch (SQLException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < writerFutures.size(); i++) {
+                enqueue(queue, END, writerFutures);
+            }
+        }
+
+        int written = 0;
+        for (Future<Integer> f : writerFutures) {
+            try {
+                written += f.get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        long cost = System.currentTimeMillis() - t0;
+        long read = progress.read;
+        if (failure.get() != null) {
+            log.error("[ELT-STREAM][{}][runId={}] FAILED | window=[{}, {}) | read={} | written={} | cost={} ms | {}",
+                    kind, runId, start, end, read, written, cost, retryStats);
+            throw new IllegalStateException("stream copy failed for " + kind + " window [" + start + ", " + end + ")",
+                    failure.get());
+        }
+
+        log.info("[ELT-STREAM][{}][runId={}] SUMMARY | window=[{}, {}) | read={} | written={} | cost={} ms | ~{}/s | {}",
+                kind, runId, start, end, read, written, cost,
+                String.format("%.0f", read * 1000.0 / Math.max(1, cost)), retryStats);
+        if (progress.stopped) {
+            log.warn("[ELT-STREAM][{}][runId={}] stopped before window end | window=[{}, {}) | read={}",
+                    kind, runId, start, end, read);
+            return WindowCopy.partial(written);
+        }
+        return WindowCopy.done(written);
+    }
+
+    /**
+     * 讀端：forward-only 串流整個窗口，一個 chunk 滿了就丟進佇列（佇列滿就等），再過一次節流
+     */
+    private void readWindow(MigrationJob job, LocalDateTime start, LocalDateTime end, String runId,
+                            BlockingQueue<List<Object[]>> queue, AtomicReference<Throwable> failure,
+                            List<Future<Integer>> writerFutures, ReadProgress progress) throws SQLException {
+        EltProperties.Stream cfg = props.getStream();
+        String kind = job.getName();
+        int columns = job.getColumns().size();
+        int chunkRows = cfg.getChunkRows();
+
+        try (Connection c = dataSource.getConnection()) {
+            try (Statement st = c.createStatement()) {
+                st.execute("SET SESSION net_write_timeout = " + cfg.getSourceNetWriteTimeoutSeconds());
+            }
+            try (PreparedStatement ps = c.prepareStatement(selectSql(job),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(cfg.getFetchSize());
+                ps.setObject(1, start);
+                ps.setObject(2, end);
+
+                // 要壓縮的欄位在讀端就壓掉，佇列裡只放壓縮後的 bytes
+                PayloadCompressor compressor = new PayloadCompressor(job, props.getVerify().isEnabled());
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<Object[]> chunk = new ArrayList<>(chunkRows);
+                    while (rs.next()) {
+                        Object[] row = new Object[columns];
+                        for (int i = 0; i < columns; i++) {
+                            row[i] = compressor.apply(i, rs.getObject(i + 1));
+                        }
+                        chunk.add(row);
+                        progress.read++;
+                        if (chunk.size() >= chunkRows) {
+                            reportPayload(job, runId, compressor);
+                            if (failure.get() != null || !enqueue(queue, chunk, writerFutures)) {
+                                // 寫端掛了：不要把剩下的串流讀完（close 串流結果集會把剩餘列整個收完），直接 cancel
+                                ps.cancel();
+                                return;
+                            }
+                            // 讀端串流停在這裡等，server 那頭由 net_write_timeout 撐著；寫端照樣把佇列裡的 chunk 寫完
+                            ThrottleDecision decision = throttle.pauseAfterBatch(kind, runId);
+                            if (decision == null) {
+                                // 被 cancel / interrupt：跟寫端掛掉一樣，不把剩下的串流讀完
+                                progress.stopped = true;
+                                ps.cancel();
+                                return;
+                            }
+                            // 只套忙碌倍率：chunkRows 同時是記憶體上限，不讓控制端點的 batchSize 把它放大
+                            chunkRows = decision.scale(cfg.getChunkRows());
+                            chunk = new ArrayList<>(chunkRows);
+                        }
+                    }
+                    if (!chunk.isEmpty()) {
+                        reportPayload(job, runId, compressor);
+                        enqueue(queue, chunk, writerFutures);
+                    }
+                }
+            }
+        }
+    }
+
+    /** 讀端的進度：讀了幾列、是不是被節流喊停（cancel / interrupt） */
+    private static final class ReadProgress {
+        private long read;
+        private boolean stopped;
+    }
+
+    /** 每個 chunk 的壓縮效果：進 metrics，log 用 debug（一個 chunk 一行太吵） */
+    private void reportPayload(MigrationJob job, String runId, PayloadCompressor compressor) {
+        if (!compressor.isActive()) {
+            return;
+        }
+        metrics.recordPayload(job.getName(), compressor.getRawBytes(), compressor.getStoredBytes());
+        log.debug("[ELT-STREAM][{}][runId={}] chunk{}", job.getName(), runId, BulkLoadWindowWriter.payloadSummary(compressor));
+        compressor.reset();
+    }
+
+    /**
+     * 寫端：一直拿 chunk 寫到 END；失敗就記下來並停止（讀端看到後會停）
+     */
+    private int writeLoop(String kind, String runId, String insertSql,
+                          BlockingQueue<List<Object[]>> queue, AtomicReference<Throwable> failure,
+                          RetryStats retryStats) throws InterruptedException {
+        int written = 0;
+        while (true) {
+            List<Object[]> chunk = queue.take();
+            if (chunk == END) {
+                return written;
+            }
+            if (failure.get() != null) {
+                continue;
+            }
+            long t0 = System.currentTimeMillis();
+            try {
+                int n = retry.execute(kind, runId, chunk.size(), retryStats, size -> writeChunk(insertSql, chunk));
+                written += n;
+                long cost = System.currentTimeMillis() - t0;
+                Long slowMs = props.getSlowBatchMs();
+                metrics.recordBatch(kind, "stream", n, cost, chunk.size(), slowMs != null && cost >= slowMs);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * 一個 chunk 一個 tx；每次重新從目標池拿連線，連線斷掉重試時不會拿到同一條壞連線
+     */
+    private int writeChunk(String insertSql, List<Object[]> chunk) {
+        try (Connection c = target.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(insertSql)) {
+                for (Object[] row : chunk) {
+                    for (int i = 0; i < row.length; i++) {
+                        ps.setObject(i + 1, row[i]);
+                    }
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                c.commit();
+                return affected(counts, chunk.size());
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("stream write failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 佇列滿就等；所有 writer 都已經結束（失敗）就放棄，回傳 false
+     */
+    private static boolean enqueue(BlockingQueue<List<Object[]>> queue, List<Object[]> chunk,
+                                   List<Future<Integer>> writerFutures) {
+        try {
+            while (!queue.offer(chunk, 200, TimeUnit.MILLISECONDS)) {
+                if (writerFutures.stream().allMatch(Future::isDone)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** rewriteBatchedStatements 之後 driver 常回 SUCCESS_NO_INFO，這時就以送出筆數計 */
+    private static int affected(int[] counts, int rows) {
+        int sum = 0;
+        for (int n : counts) {
+            if (n < 0) {
+                return rows;
+            }
+            sum += n;
+        }
+        return sum;
+    }
+
+    static String selectSql(MigrationJob job) {
+        return "SELECT " + job.getSourceColumnList()
+                + " FROM " + job.getSourceTable() + " AS src"
+                + " WHERE src." + job.getTimeColumn() + " >= ? AND src." + job.getTimeColumn() + " < ?";
+    }
+
+    static String insertSql(MigrationJob job, boolean upsert) {
+        String placeholders = String.join(", ", Collections.nCopies(job.getColumns().size(), "?"));
+        return "INSERT " + (upsert ? "" : "IGNORE ") + "INTO " + job.getTargetTable()
+                + " (" + job.getColumnList() + ") VALUES (" + placeholders + ")"
+                + (upsert ? " ON DUPLICATE KEY UPDATE " + job.getUpdateAssignmentList() : "");
+    }
+
+    private static String withBatchRewrite(String url) {
+        if (url.contains("rewriteBatchedStatements")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.ordermigratebatchmysql.stream;
+
+import com.example.ordermigratebatchmysql.codec.PayloadCompressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 把 ResultSet 邊讀邊轉成 LOAD DATA 預設格式的 TSV（\t 分欄、\n 分列、\ 跳脫、NULL = \N），不落地、不整批進記憶體。
+ * 一次最多吐 maxRows 列就當作 EOF，讓呼叫端把一個大窗口拆成多個 LOAD（多個較小的 tx）；同一個 ResultSet 可以接著開下一個。
+ * 文字欄位（含 SubmitRequest / SubmitResponse 這類 TEXT）用 UTF-8，二進位欄位原樣輸出；兩者都逐 byte 跳脫，
+ * UTF-8 多位元組字元的每個 byte 都 >= 0x80，不會被誤判成控制字元。
+ * 有給 PayloadCompressor 時，設定的欄位會在這裡逐列壓縮（壓縮後是任意 bytes，一樣逐 byte 跳脫）。
+ */
+public class TsvResultSetInputStream extends InputStream {
+
+    private final ResultSet rs;
+    private final boolean[] binary;
+    private final long maxRows;
+    private final PayloadCompressor compressor;
+
+    private byte[] buf = new byte[8192];
+    private int pos;
+    private int limit;
+    private long rows;
+    private boolean exhausted;
+
+    public TsvResultSetInputStream(ResultSet rs, long maxRows, PayloadCompressor compressor) throws SQLException {
+        this.rs = rs;
+        this.maxRows = maxRows;
+        this.compressor = compressor;
+        ResultSetMetaData md = rs.getMetaData();
+        this.binary = new boolean[md.getColumnCount()];
+        for (int i = 0; i < binary.length; i++) {
+            int type = md.getColumnType(i + 1);
+            binary[i] = type == Types.BINARY || type == Types.VARBINARY
+                    || type == Types.LONGVARBINARY || type == Types.BLOB;
+        }
+    }
+
+    /** 這個串流吐了幾列 */
+    public long getRows() {
+        return rows;
+    }
+
+    /** ResultSet 已經讀完（不是因為 maxRows 停下來） */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /** 再編碼一列進 buffer；沒有下一列（或已到 maxRows）回 false */
+    private boolean fill() throws IOException {
+        if (exhausted || rows >= maxRows) {
+            return false;
+        }
+        try {
+            if (!rs.next()) {
+                exhausted = true;
+                return false;
+            }
+            pos = 0;
+            limit = 0;
+            for (int i = 0; i < binary.length; i++) {
+                if (i > 0) {
+                    put((byte) '\t');
+                }
+                byte[] v = binary[i] ? rs.getBytes(i + 1) : utf8(rs.getString(i + 1));
+                if (compressor != null && compressor.isCompressed(i)) {
+                    v = (byte[]) compressor.apply(i, v);
+                }
+                if (v == null) {
+                    put((byte) '\\');
+                    put((byte) 'N');
+                } else {
+                    escape(v);
+                }
+            }
+            put((byte) '\n');
+            rows++;
+            return true;
+        } catch (SQLException e) {
+            throw new IOException("read source row failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void escape(byte[] v) {
+        for (byte b : v) {
+            switch (b) {
+                case '\\' -> { put((byte) '\\'); put((byte) '\\'); }
+                case '\t' -> { put((byte) '\\'); put((byte) 't'); }
+                case '\n' -> { put((byte) '\\'); put((byte) 'n'); }
+                case '\r' -> { put((byte) '\\'); put((byte) 'r'); }
+                case 0 -> { put((byte) '\\'); put((byte) '0'); }
+                default -> put(b);
+            }
+        }
+    }
+
+    private void put(byte b) {
+        if (limit == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        buf[limit++] = b;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+}
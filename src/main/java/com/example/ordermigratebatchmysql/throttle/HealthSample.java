@@ -0,0 +1,17 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+/**
+ * 一次 DB 健康取樣；拿不到的指標給 -1（不參與判斷）
+ *
+ * @param threadsRunning     Threads_running
+ * @param historyListLength  InnoDB history list length（purge 落後程度）
+ * @param rowLockWaits       Innodb_row_lock_current_waits
+ * @param replicaLagSeconds  replica 落後秒數（沒設定 replica 就是 -1）
+ */
+public record HealthSample(long threadsRunning,
+                           long historyListLength,
+                           long rowLockWaits,
+                           long replicaLagSeconds) {
+
+    public static final HealthSample UNKNOWN = new HealthSample(-1, -1, -1, -1);
+}
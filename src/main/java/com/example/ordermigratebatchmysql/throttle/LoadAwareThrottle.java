@@ -0,0 +1,143 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * 批次間的節流：取代固定的 Thread.sleep(pauseMs)。
+ * 每批之後看一下 DB（Threads_running / history list / 鎖等待 / replica 落後）：
+ * - 全部低於 high 的一半 => IDLE，不睡
+ * - 低於 high            => NORMAL，照 pauseMs
+ * - 超過 high            => BUSY，間隙按壓力放大、下一批 batchSize 打折
+ * - 超過 critical        => BACKOFF，睡 backoffMs 再取樣，直到回落或等滿 maxBackoffMs
+ * elt.throttle.enabled=false 時永遠是 NORMAL（跟以前一樣固定睡 pauseMs）。
+ * 控制端點的 pause / cancel 也在這裡生效（批次已 commit 的時間點），pauseMs / batchSize 覆蓋值也從這裡帶出去。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LoadAwareThrottle {
+
+    private final ServerHealthProbe probe;
+    private final EltProperties props;
+    private final EltRunControl control;
+
+    private volatile HealthSample lastSample = HealthSample.UNKNOWN;
+    private volatile long lastSampleAt;
+
+    /**
+     * 一批結束後呼叫：依 DB 狀態決定要睡多久（這裡直接睡掉）、下一批 batchSize 倍率
+     * @return null 代表睡的時候被 interrupt 或 run 被 cancel，呼叫端應該停止這個窗口
+     */
+    public ThrottleDecision pauseAfterBatch(String kind, String runId) {
+        if (!control.awaitIfPaused(kind, runId)) {
+            return null;
+        }
+        ThrottleDecision decision = throttle(kind, runId);
+        return decision == null || control.isCancelled() ? null : decision;
+    }
+
+    private ThrottleDecision throttle(String kind, String runId) {
+        EltProperties.Throttle cfg = props.getThrottle();
+        long pauseMs = control.pauseMs(props.getPauseMs());
+        if (!cfg.isEnabled()) {
+            return sleep(pauseMs) ? decision(ThrottleDecision.Level.NORMAL, pauseMs, 1.0, HealthSample.UNKNOWN) : null;
+        }
+
+        HealthSample sample = sample(false);
+        double pressure = pressure(sample, cfg);
+        long slept = 0;
+
+        if (isCritical(sample, cfg)) {
+            log.warn("[ELT-THROTTLE][{}][runId={}] BACKOFF | {} | pressure={}", kind, runId, sample, String.format("%.2f", pressure));
+            while (isCritical(sample, cfg) && slept < cfg.getMaxBackoffMs()) {
+                if (!sleep(cfg.getBackoffMs())) {
+                    return null;
+                }
+                slept += cfg.getBackoffMs();
+                sample = sample(true);
+            }
+            pressure = pressure(sample, cfg);
+            log.info("[ELT-THROTTLE][{}][runId={}] BACKOFF end | waited={} ms | {}", kind, runId, slept, sample);
+            return decision(ThrottleDecision.Level.BACKOFF, slept, cfg.getBusyBatchScale(), sample);
+        }
+
+        ThrottleDecision.Level level;
+        long pause;
+        double scale;
+        if (pressure < 0.5) {
+            level = ThrottleDecision.Level.IDLE;
+            pause = 0;
+            scale = 1.0;
+        } else if (pressure < 1.0) {
+            level = ThrottleDecision.Level.NORMAL;
+            pause = pauseMs;
+            scale = 1.0;
+        } else {
+            level = ThrottleDecision.Level.BUSY;
+            // 壓力 1.0 => 2 倍 pauseMs，2.0 => 3 倍 ...，最多 maxBackoffMs
+            pause = Math.min(cfg.getMaxBackoffMs(), (long) (Math.max(1, pauseMs) * (1 + pressure)));
+            scale = cfg.getBusyBatchScale();
+            log.info("[ELT-THROTTLE][{}][runId={}] BUSY | {} | pressure={} | pause={} ms | batchScale={}",
+                    kind, runId, sample, String.format("%.2f", pressure), pause, scale);
+        }
+        return sleep(pause) ? decision(level, pause, scale, sample) : null;
+    }
+
+    private ThrottleDecision decision(ThrottleDecision.Level level, long pause, double scale, HealthSample sample) {
+        return new ThrottleDecision(level, pause, scale, sample, control.getBatchSize());
+    }
+
+    /**
+     * 取樣（最多每 sampleIntervalMs 一次，多個窗口並行時共用同一份）
+     */
+    private HealthSample sample(boolean force) {
+        long now = System.currentTimeMillis();
+        if (force || now - lastSampleAt >= props.getThrottle().getSampleIntervalMs()) {
+            lastSample = probe.sample();
+            lastSampleAt = now;
+        }
+        return lastSample;
+    }
+
+    /** 各指標 / 其 high 門檻 的最大值；1.0 = 剛好到 high */
+    static double pressure(HealthSample s, EltProperties.Throttle cfg) {
+        double p = 0;
+        p = Math.max(p, ratio(s.threadsRunning(), cfg.getThreadsRunningHigh()));
+        p = Math.max(p, ratio(s.historyListLength(), cfg.getHistoryListHigh()));
+        p = Math.max(p, ratio(s.rowLockWaits(), cfg.getRowLockWaitsHigh()));
+        p = Math.max(p, ratio(s.replicaLagSeconds(), cfg.getReplicaLagHighSeconds()));
+        return p;
+    }
+
+    static boolean isCritical(HealthSample s, EltProperties.Throttle cfg) {
+        return over(s.threadsRunning(), cfg.getThreadsRunningCritical())
+                || over(s.historyListLength(), cfg.getHistoryListCritical())
+                || over(s.rowLockWaits(), cfg.getRowLockWaitsCritical())
+                || over(s.replicaLagSeconds(), cfg.getReplicaLagCriticalSeconds());
+    }
+
+    private static double ratio(long value, long high) {
+        return (value < 0 || high <= 0) ? 0 : (double) value / high;
+    }
+
+    private static boolean over(long value, long critical) {
+        return value >= 0 && critical > 0 && value >= critical;
+    }
+
+    private static boolean sleep(long ms) {
+        if (ms <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.mapper.ServerHealthMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * 正式環境的健康探針：主庫指標走 MyBatis，replica 落後另開一條連線查 SHOW REPLICA STATUS
+ * （elt.throttle.replica-url 沒設定就不看 replica）。
+ */
+@Slf4j
+@Component
+public class MySqlServerHealthProbe implements ServerHealthProbe {
+
+    private final ServerHealthMapper mapper;
+    private final DataSource replica;
+
+    public MySqlServerHealthProbe(ServerHealthMapper mapper, EltProperties props) {
+        this.mapper = mapper;
+        EltProperties.Throttle cfg = props.getThrottle();
+        if (cfg.getReplicaUrl() != null && !cfg.getReplicaUrl().isBlank()) {
+            this.replica = new DriverManagerDataSource(cfg.getReplicaUrl(), cfg.getReplicaUsername(), cfg.getReplicaPassword());
+        } else {
+            this.replica = null;
+        }
+    }
+
+    @Override
+    public HealthSample sample() {
+        return new HealthSample(
+                orMinusOne("Threads_running", () -> mapper.selectGlobalStatus("Threads_running")),
+                orMinusOne("history list length", mapper::selectHistoryListLength),
+                orMinusOne("Innodb_row_lock_current_waits", () -> mapper.selectGlobalStatus("Innodb_row_lock_current_waits")),
+                replicaLagSeconds());
+    }
+
+    private long replicaLagSeconds() {
+        if (replica == null) {
+            return -1;
+        }
+        try (Connection c = replica.getConnection(); Statement st = c.createStatement()) {
+            // 8.0.22+ 用 REPLICA / Source；舊版退回 SLAVE / Master
+            try (ResultSet rs = st.executeQuery("SHOW REPLICA STATUS")) {
+                return rs.next() ? lagColumn(rs, "Seconds_Behind_Source") : -1;
+            } catch (SQLException e) {
+                try (ResultSet rs = st.executeQuery("SHOW SLAVE STATUS")) {
+                    return rs.next() ? lagColumn(rs, "Seconds_Behind_Master") : -1;
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("[ELT-THROTTLE] replica lag probe failed: {}", e.toString());
+            return -1;
+        }
+    }
+
+    private long lagColumn(ResultSet rs, String column) throws SQLException {
+        long lag = rs.getLong(column);
+        // NULL = 複寫沒在跑，當成很落後
+        return rs.wasNull() ? Long.MAX_VALUE : lag;
+    }
+
+    private long orMinusOne(String name, Supplier<Long> query) {
+        try {
+            Long v = query.get();
+            return v != null ? v : -1;
+        } catch (RuntimeException e) {
+            log.warn("[ELT-THROTTLE] probe {} failed: {}", name, e.toString());
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+/**
+ * DB 健康探針：LoadAwareThrottle 只依賴這個介面，測試時可以換成假的或接本機的 MySQL 相容替身
+ */
+public interface ServerHealthProbe {
+
+    /** 取樣一次；任何指標查不到都回 -1，不要丟例外 */
+    HealthSample sample();
+}
@@ -0,0 +1,38 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+/**
+ * 節流決策：下一批前要睡多久、batchSize 要乘多少
+ *
+ * @param level      IDLE / NORMAL / BUSY / BACKOFF
+ * @param pauseMs    這一批之後實際睡了多久
+ * @param batchScale 下一批 batchSize 的倍率（1.0 = 不變）
+ * @param sample     依據的取樣
+ * @param batchSizeOverride 控制端點即時指定的 batchSize（null = 沒有）
+ */
+public record ThrottleDecision(Level level,
+                               long pauseMs,
+                               double batchScale,
+                               HealthSample sample,
+                               Integer batchSizeOverride) {
+
+    public enum Level {
+        /** DB 很閒：不睡，全速 */
+        IDLE,
+        /** 一般：照 elt.pause-ms */
+        NORMAL,
+        /** 偏忙：拉長間隙、縮小批次 */
+        BUSY,
+        /** 超過臨界：整個退避，等指標回落 */
+        BACKOFF
+    }
+
+    /** 下一批實際要用的 batchSize */
+    public int scale(int batchSize) {
+        return Math.max(1, (int) (batchSize * batchScale));
+    }
+
+    /** 搬移批次的下一批 batchSize：控制端點有指定就以它為底，再套倍率 */
+    public int nextBatchSize(int batchSize) {
+        return scale(batchSizeOverride != null ? batchSizeOverride : batchSize);
+    }
+}
@@ -0,0 +1,56 @@
+-- 窗口 checkpoint：每個 kind 的每個窗口搬完記一筆；elt.checkpoint-auto-create-table=true 時啟動會自動建
+CREATE TABLE IF NOT EXISTS g_paypay.elt_checkpoint
+(
+    Kind        VARCHAR(64) NOT NULL,
+    WindowStart DATETIME    NOT NULL,
+    WindowEnd   DATETIME    NOT NULL,
+    Status      VARCHAR(16) NOT NULL COMMENT 'RUNNING / DONE',
+    Moved       INT         NOT NULL DEFAULT 0,
+    CostMs      BIGINT      NOT NULL DEFAULT 0,
+    RunId       VARCHAR(32) NOT NULL,
+    StartedAt   DATETIME    NULL,
+    FinishedAt  DATETIME    NULL,
+    PRIMARY KEY (Kind, WindowStart, WindowEnd),
+    KEY idx_kind_end (Kind, WindowEnd)
+) ENGINE = InnoDB;
+
+-- AIMD 學到的 batchSize（kind + 時段）；elt.aimd.persist=true 時啟動會自動建
+CREATE TABLE IF NOT EXISTS g_paypay.elt_batch_tuning
+(
+    Kind           VARCHAR(64) NOT NULL,
+    HourOfDay      TINYINT     NOT NULL,
+    BatchSize      INT         NOT NULL,
+    EwmaRowsPerSec DOUBLE      NOT NULL DEFAULT 0,
+    P95Ms          BIGINT      NOT NULL DEFAULT 0,
+    UpdatedAt      DATETIME    NOT NULL,
+    PRIMARY KEY (Kind, HourOfDay)
+) ENGINE = InnoDB;
+
+-- 月表分區範例（elt.partition.enabled=true 時由 PartitionManager 預建 / 過期處理後續分區）。
+-- 分區欄位必須在每個唯一鍵裡，所以主鍵改成 (Id, SubmitTime)；anti-join 會帶窗口條件只碰該月分區。
+-- ALTER TABLE g_paypay.t_order_http_log_month
+--     DROP PRIMARY KEY,
+--     ADD PRIMARY KEY (Id, SubmitTime)
+--     PARTITION BY RANGE COLUMNS (SubmitTime) (
+--         PARTITION p202609 VALUES LESS THAN ('2026-10-01 00:00:00'),
+--         PARTITION p202610 VALUES LESS THAN ('2026-11-01 00:00:00'),
+--         PARTITION pmax VALUES LESS THAN MAXVALUE
+--     );
+
+-- 每批的跑批歷史（elt.history.enabled=true 時啟動會自動建，RunHistoryTuner 依它學切窗門檻 / batchSize）
+CREATE TABLE IF NOT EXISTS g_paypay.elt_run_history
+(
+    Id          BIGINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    Kind        VARCHAR(64)     NOT NULL,
+    Mode        VARCHAR(16)     NOT NULL,
+    RunId       VARCHAR(32)     NOT NULL,
+    WindowStart DATETIME        NOT NULL,
+    WindowEnd   DATETIME        NOT NULL,
+    HourOfDay   TINYINT         NOT NULL COMMENT '批次執行當下的時段',
+    BatchSize   INT             NOT NULL,
+    Affected    INT             NOT NULL,
+    CostMs      INT             NOT NULL,
+    CreatedAt   DATETIME        NOT NULL,
+    PRIMARY KEY (Id),
+    KEY idx_created (CreatedAt)
+) ENGINE = InnoDB;
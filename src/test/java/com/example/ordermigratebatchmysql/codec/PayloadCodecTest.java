@@ -0,0 +1,137 @@
+package com.example.ordermigratebatchmysql.codec;
+
+import com.example.ordermigratebatchmysql.config.MigrationJob;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadCodecTest {
+
+    /** 夠長、重複度高的 HTTP 內容，四種格式都壓得下來 */
+    private static final byte[] PAYLOAD = "{\"orderId\":123456,\"status\":\"SUCCESS\",\"items\":[]} ".repeat(40)
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void roundTripsEveryFormat() {
+        for (PayloadCodec.Format format : PayloadCodec.Format.values()) {
+            byte[] stored = PayloadCodec.encode(format, PAYLOAD, 64);
+
+            assertEquals(format.marker(), stored[0], format.name());
+            if (format != PayloadCodec.Format.NONE) {
+                assertTrue(stored.length < PAYLOAD.length, format.name());
+            }
+            assertArrayEquals(PAYLOAD, PayloadCodec.decode(stored), format.name());
+        }
+    }
+
+    @Test
+    void shortOrIncompressibleFallsBackToNone() {
+        byte[] shortRaw = "ok".getBytes(StandardCharsets.UTF_8);
+        byte[] random = new byte[512];
+        new Random(42).nextBytes(random);
+
+        for (PayloadCodec.Format format : PayloadCodec.Format.values()) {
+            byte[] stored = PayloadCodec.encode(format, shortRaw, 64);
+            assertEquals(PayloadCodec.Format.NONE.marker(), stored[0]);
+            assertArrayEquals(shortRaw, PayloadCodec.decode(stored));
+
+            stored = PayloadCodec.encode(format, random, 64);
+            assertEquals(PayloadCodec.Format.NONE.marker(), stored[0], format.name());
+            assertArrayEquals(random, PayloadCodec.decode(stored));
+        }
+    }
+
+    @Test
+    void nullAndEmpty() {
+        assertNull(PayloadCodec.encode(PayloadCodec.Format.ZSTD, null, 0));
+        assertNull(PayloadCodec.decode(null));
+        assertNull(PayloadCodec.decodeToString(null));
+        assertEquals(0, PayloadCodec.decode(new byte[0]).length);
+
+        // minBytes = 0 的空內容：壓不小，存成只有標記
+        byte[] stored = PayloadCodec.encode(PayloadCodec.Format.MYSQL_ZLIB, new byte[0], 0);
+        assertArrayEquals(new byte[]{0x00}, stored);
+        assertEquals("", PayloadCodec.decodeToString(stored));
+    }
+
+    @Test
+    void mysqlCompressHeaderIsLittleEndianLength() {
+        byte[] body = PayloadCodec.mysqlCompress(PAYLOAD);
+
+        int length = ByteBuffer.wrap(body, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        assertEquals(PAYLOAD.length, length);
+        // zlib header（CMF = 0x78）緊接在長度後面
+        assertEquals(0x78, body[4] & 0xFF);
+    }
+
+    @Test
+    void mysqlCompressEmptyIsEmpty() {
+        // COMPRESS('') = ''，UNCOMPRESS('') = ''
+        assertEquals(0, PayloadCodec.mysqlCompress(new byte[0]).length);
+        assertEquals(0, PayloadCodec.unMysqlCompress(new byte[0]).length);
+        assertArrayEquals(new byte[0], PayloadCodec.decode(new byte[]{0x03}));
+    }
+
+    @Test
+    void decodesServerStyleCompressWithTrailingDot() {
+        // MySQL COMPRESS() 對結尾是空白的字串會多補一個 '.'，解的時候要忽略
+        byte[] raw = "hello world   ".getBytes(StandardCharsets.UTF_8);
+        byte[] zlib = deflate(raw);
+        ByteBuffer body = ByteBuffer.allocate(4 + zlib.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+        body.putInt(raw.length).put(zlib).put((byte) '.');
+
+        assertArrayEquals(raw, PayloadCodec.unMysqlCompress(body.array()));
+    }
+
+    @Test
+    void corruptMysqlPayloadThrows() {
+        byte[] body = PayloadCodec.mysqlCompress(PAYLOAD);
+        byte[] corrupt = Arrays.copyOf(body, body.length);
+        corrupt[4] = 0x00;
+
+        assertThrows(IllegalArgumentException.class, () -> PayloadCodec.unMysqlCompress(corrupt));
+        assertThrows(IllegalArgumentException.class, () -> PayloadCodec.decode(new byte[]{0x7F, 1, 2}));
+    }
+
+    @Test
+    void compressorSwitchesToMysqlZlibWhenVerifying() {
+        MigrationJob job = new MigrationJob();
+        job.setColumns(List.of("Id", "SubmitRequest"));
+        job.setCompressedColumns(List.of("SubmitRequest"));
+        job.setCompression("zstd");
+
+        assertEquals(PayloadCodec.Format.ZSTD, new PayloadCompressor(job, false).getFormat());
+        PayloadCompressor verifying = new PayloadCompressor(job, true);
+        assertEquals(PayloadCodec.Format.MYSQL_ZLIB, verifying.getFormat());
+
+        byte[] stored = (byte[]) verifying.apply(1, new String(PAYLOAD, StandardCharsets.UTF_8));
+        assertEquals(PayloadCodec.Format.MYSQL_ZLIB.marker(), stored[0]);
+        assertArrayEquals(PAYLOAD, PayloadCodec.decode(stored));
+        assertEquals(7L, verifying.apply(0, 7L));
+
+        job.setCompression("none");
+        assertEquals(PayloadCodec.Format.NONE, new PayloadCompressor(job, true).getFormat());
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buf = new byte[raw.length + 64];
+        int n = deflater.deflate(buf);
+        deflater.end();
+        return Arrays.copyOf(buf, n);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.ordermigratebatchmysql.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunRangeTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 5, 17);
+    private static final List<String> ENABLED = List.of("submit", "withdraw", "refund");
+
+    @Test
+    void defaultsToLastMonthUntilToday() {
+        RunRange range = RunRange.parse(new String[0], ENABLED, TODAY);
+
+        assertEquals(LocalDate.of(2024, 4, 1), range.from());
+        assertEquals(TODAY, range.to());
+        assertEquals(ENABLED, range.kinds());
+        assertFalse(range.newestFirst());
+        assertEquals("oldest-first", range.direction());
+    }
+
+    @Test
+    void parsesAllOptions() {
+        RunRange range = RunRange.parse(new String[]{
+                "--spring.profiles.active=elt-run", "--from=2024-01-15", "--to=2024-03-10",
+                "--kinds= withdraw, submit ,", "--direction=Newest-First", "positional"}, ENABLED, TODAY);
+
+        assertEquals(LocalDate.of(2024, 1, 15), range.from());
+        assertEquals(LocalDate.of(2024, 3, 10), range.to());
+        assertEquals(List.of("withdraw", "submit"), range.kinds());
+        assertTrue(range.newestFirst());
+        assertEquals("newest-first", range.direction());
+    }
+
+    @Test
+    void toMayBeTodayButNotLater() {
+        assertEquals(TODAY, RunRange.parse(new String[]{"--to=" + TODAY}, ENABLED, TODAY).to());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--to=" + TODAY.plusDays(1)}, ENABLED, TODAY));
+        assertTrue(e.getMessage().contains("after today"), e.getMessage());
+    }
+
+    @Test
+    void rejectsBadValues() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--from=2024-05-01", "--to=2024-05-01"}, ENABLED, TODAY));
+        assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--from=2024/05/01"}, ENABLED, TODAY));
+        assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--kinds=submit,payout"}, ENABLED, TODAY));
+        assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--kinds= , "}, ENABLED, TODAY));
+        assertThrows(IllegalArgumentException.class,
+                () -> RunRange.parse(new String[]{"--direction=sideways"}, ENABLED, TODAY));
+    }
+
+    @Test
+    void monthShardsFollowCalendarMonths() {
+        RunRange range = RunRange.parse(new String[]{"--from=2024-01-15", "--to=2024-03-10"}, ENABLED, TODAY);
+
+        assertEquals(List.of(
+                new RunRange.Shard(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 2, 1)),
+                new RunRange.Shard(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 1)),
+                new RunRange.Shard(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10))), range.monthShards());
+    }
+
+    @Test
+    void newestFirstReversesShards() {
+        RunRange range = RunRange.parse(new String[]{
+                "--from=2024-01-15", "--to=2024-03-10", "--direction=newest-first"}, ENABLED, TODAY);
+
+        assertEquals(List.of(
+                new RunRange.Shard(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10)),
+                new RunRange.Shard(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 1)),
+                new RunRange.Shard(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 2, 1))), range.monthShards());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.ordermigratebatchmysql.run;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.model.HourGapCount;
+import com.example.ordermigratebatchmysql.service.GapHistogram;
+import com.example.ordermigratebatchmysql.service.WindowCopy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowPlannerTest {
+
+    private static final String KIND = "submit";
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+    private static final LocalDateTime DAY_START = DAY.atStartOfDay();
+    private static final LocalDateTime DAY_END = DAY_START.plusDays(1);
+    private static final int LEAF_ROWS = 50;
+
+    /**
+     * 一天 1440 分鐘的缺口：0 點前 10 分鐘各 1 筆、2 點 5 筆、9 點每分鐘 4 筆（240）、23:50 起每分鐘 10 筆（100）
+     */
+    private final int[] perMinute = new int[24 * 60];
+    /** 打到 DB 的 COUNT（窗口邊界不在整點時才會用） */
+    private final List<LocalDateTime[]> liveCounts = new ArrayList<>();
+    /** 實際送出的窗口，依送出順序 */
+    private final List<LocalDateTime[]> windows = new ArrayList<>();
+
+    WindowPlannerTest() {
+        for (int m = 0; m < 10; m++) {
+            perMinute[m] = 1;
+        }
+        for (int m = 0; m < 5; m++) {
+            perMinute[2 * 60 + m] = 1;
+        }
+        for (int m = 0; m < 60; m++) {
+            perMinute[9 * 60 + m] = 4;
+        }
+        for (int m = 50; m < 60; m++) {
+            perMinute[23 * 60 + m] = 10;
+        }
+    }
+
+    @Test
+    void bisectSplitsHotHoursAndMergesQuietLeaves() {
+        plan(15);
+
+        // 0~9 點只有 15 筆併成一窗；9 點切到 15 分鐘的下限；10:00~23:45 全是 0 併成一窗；23:45 起的 100 筆切不動
+        assertEquals(List.of(
+                "00:00-09:00", "09:00-09:15", "09:15-09:30", "09:30-09:45", "09:45-10:00",
+                "10:00-23:45", "23:45-00:00"), labels());
+        assertCoversDay();
+        assertRespectsFloor(15);
+        assertAdjacentWindowsCannotMerge();
+    }
+
+    @Test
+    void coarserFloorStopsSplittingEarlier() {
+        plan(30);
+
+        assertEquals(List.of(
+                "00:00-09:00", "09:00-09:30", "09:30-10:00", "10:00-23:30", "23:30-00:00"), labels());
+        assertCoversDay();
+        assertRespectsFloor(30);
+        assertAdjacentWindowsCannotMerge();
+    }
+
+    @Test
+    void wholeHourSplitsUseHistogramOnly() {
+        plan(15);
+
+        // 整點邊界都查直方圖；DB 只會被問到一小時以內、不在整點上的區間
+        assertTrue(liveCounts.size() > 0);
+        for (LocalDateTime[] r : liveCounts) {
+            assertTrue(Duration.between(r[0], r[1]).toMinutes() < 60, label(r));
+        }
+    }
+
+    @Test
+    void quietDayIsOneWindow() {
+        Arrays.fill(perMinute, 0);
+        perMinute[600] = LEAF_ROWS;
+
+        plan(15);
+
+        assertEquals(List.of("00:00-00:00"), labels());
+        assertEquals(0, liveCounts.size());
+    }
+
+    private void plan(int bisectMinMinutes) {
+        EltProperties props = new EltProperties();
+        props.setHourSwitchThreshold(LEAF_ROWS);
+
+        List<HourGapCount> hours = new ArrayList<>();
+        for (int h = 0; h < 24; h++) {
+            HourGapCount row = new HourGapCount();
+            row.setHourOffset(h);
+            row.setMissing(count(DAY_START.plusHours(h), DAY_START.plusHours(h + 1)));
+            hours.add(row);
+        }
+        GapEstimator gaps = new GapEstimator((kind, start, end) -> {
+            liveCounts.add(new LocalDateTime[]{start, end});
+            return count(start, end);
+        });
+        gaps.preload(KIND, GapHistogram.of(DAY_START, DAY_END, hours));
+
+        WindowDispatcher dispatcher = new WindowDispatcher("TEST", "t", null, false, 1, 1);
+        WindowPlanner planner = new WindowPlanner("TEST", "t", props, gaps, dispatcher,
+                (kind, start, end, runId) -> {
+                    windows.add(new LocalDateTime[]{start, end});
+                    return WindowCopy.done(0);
+                }, false)
+                .withBisect(bisectMinMinutes);
+        planner.planDay(KIND, DAY);
+        dispatcher.awaitAll();
+    }
+
+    private int count(LocalDateTime start, LocalDateTime end) {
+        int sum = 0;
+        for (int m = minuteOf(start); m < minuteOf(end); m++) {
+            sum += perMinute[m];
+        }
+        return sum;
+    }
+
+    private static int minuteOf(LocalDateTime t) {
+        return (int) Duration.between(DAY_START, t).toMinutes();
+    }
+
+    /** 窗口首尾相接、從 0 點到隔天 0 點，沒有空隙也沒有重疊 */
+    private void assertCoversDay() {
+        LocalDateTime expected = DAY_START;
+        for (LocalDateTime[] w : windows) {
+            assertEquals(expected, w[0], label(w));
+            assertTrue(w[1].isAfter(w[0]), label(w));
+            expected = w[1];
+        }
+        assertEquals(DAY_END, expected);
+    }
+
+    /** 不會切到比下限還細；一小時以內的窗口落在下限的格線上 */
+    private void assertRespectsFloor(int minMinutes) {
+        for (LocalDateTime[] w : windows) {
+            long minutes = Duration.between(w[0], w[1]).toMinutes();
+            assertTrue(minutes >= minMinutes, label(w));
+            if (minutes < 60) {
+                assertEquals(0, minuteOf(w[0]) % minMinutes, label(w));
+                assertEquals(0, minutes % minMinutes, label(w));
+            }
+        }
+    }
+
+    /** 合併是貪婪的：相鄰兩窗加起來還放得下的話，早就被併成一窗了 */
+    private void assertAdjacentWindowsCannotMerge() {
+        for (int i = 1; i < windows.size(); i++) {
+            LocalDateTime[] a = windows.get(i - 1);
+            LocalDateTime[] b = windows.get(i);
+            assertTrue(count(a[0], a[1]) + count(b[0], b[1]) > LEAF_ROWS, label(a) + " + " + label(b));
+        }
+    }
+
+    private List<String> labels() {
+        return windows.stream().map(WindowPlannerTest::label).toList();
+    }
+
+    private static String label(LocalDateTime[] w) {
+        return w[0].toLocalTime() + "-" + w[1].toLocalTime();
+    }
+}
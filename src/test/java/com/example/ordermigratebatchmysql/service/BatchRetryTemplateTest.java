@@ -0,0 +1,150 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRetryTemplateTest {
+
+    private final EltProperties props = new EltProperties();
+    private final BatchRetryTemplate retry = new BatchRetryTemplate(props, new EltMetrics(new SimpleMeterRegistry()));
+
+    @BeforeEach
+    void setUp() {
+        props.setMaxRetry(5);
+        props.setRetryBackoffBaseMs(1);
+        props.setRetryBackoffMaxMs(4);
+    }
+
+    @Test
+    void classifiesLockErrorCodes() {
+        assertEquals(BatchRetryTemplate.Failure.LOCK, BatchRetryTemplate.classify(wrapped(sql(1213, "40001"))));
+        assertEquals(BatchRetryTemplate.Failure.LOCK, BatchRetryTemplate.classify(wrapped(sql(1205, "HY000"))));
+        assertEquals(BatchRetryTemplate.Failure.LOCK,
+                BatchRetryTemplate.classify(new DeadlockLoserDataAccessException("deadlock", null)));
+    }
+
+    @Test
+    void classifiesConnectionErrors() {
+        assertEquals(BatchRetryTemplate.Failure.CONNECTION, BatchRetryTemplate.classify(wrapped(sql(2006, "HY000"))));
+        assertEquals(BatchRetryTemplate.Failure.CONNECTION, BatchRetryTemplate.classify(wrapped(sql(2013, "HY000"))));
+        // 錯誤碼不認得，但 SQLState 08xxx 是連線類
+        assertEquals(BatchRetryTemplate.Failure.CONNECTION, BatchRetryTemplate.classify(wrapped(sql(0, "08S01"))));
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() {
+        assertNull(BatchRetryTemplate.classify(wrapped(sql(1062, "23000"))));
+        assertNull(BatchRetryTemplate.classify(new DataIntegrityViolationException("dup")));
+        assertNull(BatchRetryTemplate.classify(new IllegalStateException("bug")));
+    }
+
+    @Test
+    void backoffStaysWithinHalfToCap() {
+        props.setRetryBackoffBaseMs(100);
+        props.setRetryBackoffMaxMs(1000);
+        for (int i = 0; i < 200; i++) {
+            long first = retry.backoffMs(1);
+            assertTrue(first >= 50 && first <= 100, "attempt 1: " + first);
+            long third = retry.backoffMs(3);
+            assertTrue(third >= 200 && third <= 400, "attempt 3: " + third);
+            // 2^9 * 100 遠超過上限，被夾在 1000
+            long capped = retry.backoffMs(10);
+            assertTrue(capped >= 500 && capped <= 1000, "attempt 10: " + capped);
+            // 很後面的 attempt 也不能溢位
+            long huge = retry.backoffMs(64);
+            assertTrue(huge >= 500 && huge <= 1000, "attempt 64: " + huge);
+        }
+    }
+
+    @Test
+    void halvesFromSecondLockFailure() {
+        List<Integer> sizes = new ArrayList<>();
+        RetryStats stats = new RetryStats();
+
+        int affected = retry.execute("submit", "t", 1000, stats, size -> {
+            sizes.add(size);
+            if (sizes.size() <= 3) {
+                throw wrapped(sql(1213, "40001"));
+            }
+            return size;
+        });
+
+        // 第一次鎖衝突同樣大小重試，第二次起每次砍半
+        assertEquals(List.of(1000, 1000, 500, 250), sizes);
+        assertEquals(250, affected);
+        assertEquals(3, stats.getLockRetries());
+        assertEquals(2, stats.getHalvings());
+    }
+
+    @Test
+    void connectionFailureKeepsBatchSize() {
+        List<Integer> sizes = new ArrayList<>();
+        RetryStats stats = new RetryStats();
+
+        retry.execute("submit", "t", 1000, stats, size -> {
+            sizes.add(size);
+            if (sizes.size() <= 2) {
+                throw wrapped(sql(2013, "HY000"));
+            }
+            return size;
+        });
+
+        assertEquals(List.of(1000, 1000, 1000), sizes);
+        assertEquals(2, stats.getConnectionRetries());
+        assertEquals(0, stats.getHalvings());
+    }
+
+    @Test
+    void givesUpAfterMaxRetry() {
+        props.setMaxRetry(2);
+        RuntimeException lock = wrapped(sql(1205, "HY000"));
+        int[] calls = {0};
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> retry.execute("submit", "t", 1000, new RetryStats(), size -> {
+                    calls[0]++;
+                    throw lock;
+                }));
+
+        assertSame(lock, thrown);
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    void nonRetryableThrowsImmediately() {
+        int[] calls = {0};
+
+        assertThrows(IllegalStateException.class,
+                () -> retry.execute("submit", "t", 1000, new RetryStats(), size -> {
+                    calls[0]++;
+                    throw new IllegalStateException("bug");
+                }));
+
+        assertEquals(1, calls[0]);
+    }
+
+    private static SQLException sql(int code, String state) {
+        return new SQLException("code " + code, state, code);
+    }
+
+    /** 模擬 MyBatis / Spring 包過一層的例外：classify 要沿著 cause 往下找 */
+    private static RuntimeException wrapped(SQLException e) {
+        return new UncategorizedSQLException("batch", "INSERT ...", e);
+    }
+}
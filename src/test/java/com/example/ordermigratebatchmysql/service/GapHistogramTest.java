@@ -0,0 +1,90 @@
+package com.example.ordermigratebatchmysql.service;
+
+import com.example.ordermigratebatchmysql.model.HourGapCount;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GapHistogramTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+    /** 0 點 10 筆、1 點 0、2 點 5、23 點 100，其他小時 0 */
+    private final GapHistogram histogram = GapHistogram.of(DAY, DAY.plusDays(1),
+            List.of(row(0, 10), row(2, 5), row(23, 100)));
+
+    @Test
+    void prefixSumsOverWholeHours() {
+        assertEquals(24, histogram.hours());
+        assertEquals(115, histogram.total());
+        assertEquals(115, histogram.missing(DAY, DAY.plusDays(1)));
+        assertEquals(10, histogram.missing(DAY, DAY.plusHours(1)));
+        assertEquals(15, histogram.missing(DAY, DAY.plusHours(3)));
+        assertEquals(5, histogram.missing(DAY.plusHours(1), DAY.plusHours(12)));
+        assertEquals(0, histogram.missing(DAY.plusHours(3), DAY.plusHours(23)));
+        assertEquals(100, histogram.missing(DAY.plusHours(12), DAY.plusDays(1)));
+    }
+
+    @Test
+    void nonHourBoundariesOverEstimateWholeBuckets() {
+        // [00:30, 02:15) 碰到 0、1、2 點三格
+        assertEquals(15, histogram.missing(DAY.plusMinutes(30), DAY.plusHours(2).plusMinutes(15)));
+        // 同一格裡的小區間也算整格
+        assertEquals(10, histogram.missing(DAY.plusMinutes(10), DAY.plusMinutes(20)));
+        assertFalse(histogram.isExact(DAY.plusMinutes(30), DAY.plusHours(3)));
+        assertFalse(histogram.isExact(DAY, DAY.plusHours(2).plusMinutes(15)));
+        assertTrue(histogram.isExact(DAY.plusHours(1), DAY.plusHours(3)));
+    }
+
+    @Test
+    void emptyOrInvertedRangeIsZero() {
+        assertEquals(0, histogram.missing(DAY.plusHours(2), DAY.plusHours(2)));
+        assertEquals(0, histogram.missing(DAY.plusHours(5), DAY.plusHours(2)));
+    }
+
+    @Test
+    void coversOnlyInsideTheHistogram() {
+        assertTrue(histogram.covers(DAY, DAY.plusDays(1)));
+        assertTrue(histogram.covers(DAY.plusHours(3).plusMinutes(5), DAY.plusHours(4)));
+        assertFalse(histogram.covers(DAY.minusMinutes(1), DAY.plusHours(1)));
+        assertFalse(histogram.covers(DAY.plusHours(23), DAY.plusDays(1).plusMinutes(1)));
+    }
+
+    @Test
+    void rangesOutsideAreClampedToTheEdges() {
+        assertEquals(115, histogram.missing(DAY.minusHours(5), DAY.plusDays(2)));
+        assertEquals(0, histogram.missing(DAY.plusDays(1), DAY.plusDays(2)));
+    }
+
+    @Test
+    void partialLastHourGetsItsOwnBucketAndOutOfRangeRowsAreDropped() {
+        LocalDateTime end = DAY.plusHours(2).plusMinutes(30);
+        GapHistogram h = GapHistogram.of(DAY, end, List.of(row(0, 1), row(2, 4), row(2, 3), row(3, 99), row(-1, 99)));
+
+        assertEquals(3, h.hours());
+        assertEquals(8, h.total());
+        assertEquals(7, h.missing(DAY.plusHours(2), end));
+    }
+
+    @Test
+    void ofBucketsCopiesTheArray() {
+        int[] buckets = {1, 2, 3};
+        GapHistogram h = GapHistogram.ofBuckets(DAY, buckets);
+        buckets[0] = 1000;
+
+        assertEquals(6, h.total());
+        assertEquals(3, h.missing(DAY, DAY.plusHours(2)));
+    }
+
+    private static HourGapCount row(int hourOffset, int missing) {
+        HourGapCount r = new HourGapCount();
+        r.setHourOffset(hourOffset);
+        r.setMissing(missing);
+        return r;
+    }
+}
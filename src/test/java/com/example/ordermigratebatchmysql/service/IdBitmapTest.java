@@ -0,0 +1,106 @@
+package com.example.ordermigratebatchmysql.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdBitmapTest {
+
+    /** 同一個 container（高 48 bit 相同）裡放偶數 Id，第 4097 筆時從 char[] 換成 bitmap */
+    private static final long BASE = 7L << 16;
+
+    @Test
+    void arrayContainerUpTo4096Entries() {
+        IdBitmap ids = new IdBitmap();
+        for (int i = 0; i < 4096; i++) {
+            ids.add(BASE + 2L * i);
+        }
+
+        assertEquals(4096, ids.cardinality());
+        assertTrue(ids.contains(BASE));
+        assertTrue(ids.contains(BASE + 2L * 4095));
+        assertFalse(ids.contains(BASE + 1));
+        assertFalse(ids.contains(BASE + 2L * 4096));
+        assertEquals(evenIds(4096), toList(ids.iterator()));
+    }
+
+    @Test
+    void switchesToBitmapAfter4096Entries() {
+        IdBitmap ids = new IdBitmap();
+        for (int i = 0; i < 4096; i++) {
+            ids.add(BASE + 2L * i);
+        }
+
+        ids.add(BASE + 2L * 4096);
+        ids.add(BASE + 2L * 4097);
+
+        assertEquals(4098, ids.cardinality());
+        for (int i = 0; i < 4098; i++) {
+            assertTrue(ids.contains(BASE + 2L * i), "missing " + i);
+            assertFalse(ids.contains(BASE + 2L * i + 1), "unexpected odd " + i);
+        }
+        assertEquals(evenIds(4098), toList(ids.iterator()));
+    }
+
+    @Test
+    void duplicatesAreIgnoredInBothContainerKinds() {
+        IdBitmap ids = new IdBitmap();
+        ids.add(BASE + 10);
+        ids.add(BASE + 10);
+        assertEquals(1, ids.cardinality());
+
+        for (int i = 0; i < 5000; i++) {
+            ids.add(BASE + i);
+        }
+        ids.add(BASE + 10);
+        ids.add(BASE + 4999);
+        assertEquals(5000, ids.cardinality());
+    }
+
+    @Test
+    void iteratesInOrderAcrossContainersAddedOutOfOrder() {
+        IdBitmap ids = new IdBitmap();
+        long[] input = {(3L << 16) + 5, 42, (1L << 16), (3L << 16) + 1, 7, (1L << 16) + 65535};
+        for (long id : input) {
+            ids.add(id);
+        }
+
+        assertEquals(List.of(7L, 42L, 1L << 16, (1L << 16) + 65535, (3L << 16) + 1, (3L << 16) + 5),
+                toList(ids.iterator()));
+        assertFalse(ids.contains(2L << 16));
+    }
+
+    @Test
+    void emptyIterator() {
+        IdBitmap ids = new IdBitmap();
+        PrimitiveIterator.OfLong it = ids.iterator();
+
+        assertTrue(ids.isEmpty());
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::nextLong);
+    }
+
+    private static List<Long> evenIds(int count) {
+        List<Long> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(BASE + 2L * i);
+        }
+        return out;
+    }
+
+    private static List<Long> toList(PrimitiveIterator.OfLong it) {
+        List<Long> out = new ArrayList<>();
+        while (it.hasNext()) {
+            out.add(it.nextLong());
+        }
+        return out;
+    }
+}
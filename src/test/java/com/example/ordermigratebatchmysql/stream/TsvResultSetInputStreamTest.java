@@ -0,0 +1,83 @@
+package com.example.ordermigratebatchmysql.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TsvResultSetInputStreamTest {
+
+    @Test
+    void escapesControlBytesAndNull() throws Exception {
+        ResultSet rs = resultSet(Types.VARCHAR, Types.VARBINARY, Types.LONGVARCHAR);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getString(1)).thenReturn("a\tb\nc\\d\re");
+        when(rs.getBytes(2)).thenReturn(new byte[]{1, 0, 2, '\t'});
+        when(rs.getString(3)).thenReturn(null);
+
+        TsvResultSetInputStream tsv = new TsvResultSetInputStream(rs, 100, null);
+        byte[] out = tsv.readAllBytes();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes("a\\tb\\nc\\\\d\\re\t".getBytes(StandardCharsets.US_ASCII));
+        expected.writeBytes(new byte[]{1, '\\', '0', 2, '\\', 't'});
+        expected.writeBytes("\t\\N\n".getBytes(StandardCharsets.US_ASCII));
+        assertArrayEquals(expected.toByteArray(), out);
+        assertEquals(1, tsv.getRows());
+        assertTrue(tsv.isExhausted());
+    }
+
+    @Test
+    void multiByteUtf8PassesThroughAndEmptyStringIsNotNull() throws Exception {
+        ResultSet rs = resultSet(Types.VARCHAR, Types.VARCHAR);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getString(1)).thenReturn("訂單\\1");
+        when(rs.getString(2)).thenReturn("");
+
+        byte[] out = new TsvResultSetInputStream(rs, 100, null).readAllBytes();
+
+        assertEquals("訂單\\\\1\t\n", new String(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void stopsAtMaxRowsAndContinuesOnTheSameResultSet() throws Exception {
+        ResultSet rs = resultSet(Types.VARCHAR);
+        when(rs.next()).thenReturn(true, true, true, false);
+        when(rs.getString(1)).thenReturn("r1", "r2", "r3");
+
+        TsvResultSetInputStream first = new TsvResultSetInputStream(rs, 2, null);
+        assertEquals("r1\nr2\n", new String(first.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(2, first.getRows());
+        assertFalse(first.isExhausted());
+
+        TsvResultSetInputStream second = new TsvResultSetInputStream(rs, 2, null);
+        assertEquals("r3\n", new String(second.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(1, second.getRows());
+        assertTrue(second.isExhausted());
+
+        TsvResultSetInputStream third = new TsvResultSetInputStream(rs, 2, null);
+        assertEquals(-1, third.read());
+        assertEquals(0, third.getRows());
+    }
+
+    private static ResultSet resultSet(int... types) throws Exception {
+        ResultSetMetaData md = mock(ResultSetMetaData.class);
+        when(md.getColumnCount()).thenReturn(types.length);
+        for (int i = 0; i < types.length; i++) {
+            when(md.getColumnType(i + 1)).thenReturn(types[i]);
+        }
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getMetaData()).thenReturn(md);
+        return rs;
+    }
+}
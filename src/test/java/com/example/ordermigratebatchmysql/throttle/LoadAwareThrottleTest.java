@@ -0,0 +1,114 @@
+package com.example.ordermigratebatchmysql.throttle;
+
+import com.example.ordermigratebatchmysql.config.EltProperties;
+import com.example.ordermigratebatchmysql.control.EltRunControl;
+import com.example.ordermigratebatchmysql.metrics.EltMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadAwareThrottleTest {
+
+    private final EltProperties props = new EltProperties();
+    private final EltRunControl control = new EltRunControl(new EltMetrics(new SimpleMeterRegistry()));
+    /** 假探針：依序吐出排好的取樣，吐完就一直回最後一個 */
+    private final Deque<HealthSample> samples = new ArrayDeque<>();
+    private final LoadAwareThrottle throttle = new LoadAwareThrottle(
+            () -> samples.size() > 1 ? samples.poll() : samples.peek(), props, control);
+
+    @BeforeEach
+    void setUp() {
+        props.setPauseMs(1);
+        EltProperties.Throttle cfg = props.getThrottle();
+        cfg.setEnabled(true);
+        cfg.setSampleIntervalMs(0);
+        cfg.setThreadsRunningHigh(32);
+        cfg.setThreadsRunningCritical(64);
+        cfg.setBusyBatchScale(0.5);
+        cfg.setBackoffMs(1);
+        cfg.setMaxBackoffMs(20);
+    }
+
+    @Test
+    void idleBelowHalfOfHigh() {
+        samples.add(threadsRunning(10));
+
+        ThrottleDecision d = throttle.pauseAfterBatch("submit", "t");
+
+        assertEquals(ThrottleDecision.Level.IDLE, d.level());
+        assertEquals(0, d.pauseMs());
+        assertEquals(1000, d.nextBatchSize(1000));
+    }
+
+    @Test
+    void normalBetweenHalfAndHighUsesPauseMs() {
+        samples.add(threadsRunning(20));
+
+        ThrottleDecision d = throttle.pauseAfterBatch("submit", "t");
+
+        assertEquals(ThrottleDecision.Level.NORMAL, d.level());
+        assertEquals(1, d.pauseMs());
+        assertEquals(1000, d.nextBatchSize(1000));
+    }
+
+    @Test
+    void busyAboveHighStretchesPauseAndShrinksBatch() {
+        samples.add(threadsRunning(48));
+
+        ThrottleDecision d = throttle.pauseAfterBatch("submit", "t");
+
+        assertEquals(ThrottleDecision.Level.BUSY, d.level());
+        assertTrue(d.pauseMs() >= 2, "pause grows with pressure: " + d.pauseMs());
+        assertEquals(500, d.nextBatchSize(1000));
+    }
+
+    @Test
+    void backoffAtCriticalWaitsUntilPressureDrops() {
+        samples.add(threadsRunning(64));
+        samples.add(threadsRunning(70));
+        samples.add(threadsRunning(10));
+
+        ThrottleDecision d = throttle.pauseAfterBatch("submit", "t");
+
+        assertEquals(ThrottleDecision.Level.BACKOFF, d.level());
+        assertEquals(2, d.pauseMs());
+        assertEquals(10, d.sample().threadsRunning());
+        assertEquals(500, d.nextBatchSize(1000));
+    }
+
+    @Test
+    void backoffGivesUpAfterMaxBackoff() {
+        samples.add(threadsRunning(100));
+
+        ThrottleDecision d = throttle.pauseAfterBatch("submit", "t");
+
+        assertEquals(ThrottleDecision.Level.BACKOFF, d.level());
+        assertEquals(props.getThrottle().getMaxBackoffMs(), d.pauseMs());
+    }
+
+    @Test
+    void unknownMetricsAreIgnored() {
+        samples.add(HealthSample.UNKNOWN);
+
+        assertEquals(ThrottleDecision.Level.IDLE, throttle.pauseAfterBatch("submit", "t").level());
+    }
+
+    @Test
+    void cancelledRunStopsTheWindow() {
+        samples.add(threadsRunning(10));
+        control.cancel();
+
+        assertNull(throttle.pauseAfterBatch("submit", "t"));
+    }
+
+    private static HealthSample threadsRunning(long n) {
+        return new HealthSample(n, -1, -1, -1);
+    }
+}